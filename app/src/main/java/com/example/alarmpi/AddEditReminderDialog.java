@@ -19,11 +19,16 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.DialogFragment;
+import androidx.lifecycle.ViewModelProvider;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 public class AddEditReminderDialog extends DialogFragment {
 
@@ -31,28 +36,40 @@ public class AddEditReminderDialog extends DialogFragment {
 
     public interface OnReminderSavedListener {
         void onReminderAdded(Reminder reminder);
-        void onReminderUpdated(int position, Reminder reminder);
+        void onReminderUpdated(Reminder previous, Reminder reminder);
     }
 
     private OnReminderSavedListener listener;
     private EditText titleEditText, descriptionEditText;
     private TextView dateTextView, timeTextView;
     private Calendar selectedCalendar;
-    private int editingPosition = -1;
+    // id редактируемого напоминания; null - новое
+    private String reminderId;
     private Reminder existingReminder;
-
-    private static final String ARG_POSITION = "position";
-    private static final String ARG_REMINDER = "reminder";
+    private Button devicesButton;
+    // Выбранные устройства (id из ServerEndpoints); null - маршрут не меняли
+    private Set<String> selectedDevices;
+    private Button repeatButton;
+    // Выбранное правило повторения; null - разовое
+    private RecurrenceRule recurrence;
+    // Выбор восстановлен после поворота - данные напоминания его не перезаписывают
+    private boolean restored;
+
+    private static final String ARG_REMINDER_ID = "reminder_id";
+    // Выбранное в диалоге, но ещё не сохранённое; текст полей сохраняет сам диалог
+    private static final String STATE_DATE_TIME = "date_time";
+    private static final String STATE_RECURRENCE = "recurrence";
+    private static final String STATE_DEVICES = "devices";
 
     public static AddEditReminderDialog newInstance() {
         return new AddEditReminderDialog();
     }
 
-    public static AddEditReminderDialog newInstance(int position, Reminder reminder) {
+    // В аргументах только id: напоминание не сериализуется в Bundle при каждом повороте
+    public static AddEditReminderDialog newInstance(String reminderId) {
         AddEditReminderDialog dialog = new AddEditReminderDialog();
         Bundle args = new Bundle();
-        args.putInt(ARG_POSITION, position);
-        args.putSerializable(ARG_REMINDER, reminder);
+        args.putString(ARG_REMINDER_ID, reminderId);
         dialog.setArguments(args);
         return dialog;
     }
@@ -77,13 +94,18 @@ public class AddEditReminderDialog extends DialogFragment {
             selectedCalendar = Calendar.getInstance();
 
             if (getArguments() != null) {
-                editingPosition = getArguments().getInt(ARG_POSITION, -1);
-                existingReminder = (Reminder) getArguments().getSerializable(ARG_REMINDER);
+                reminderId = getArguments().getString(ARG_REMINDER_ID);
+                // Напоминание берём из загруженных страниц списка, общих с MainActivity
+                existingReminder = new ViewModelProvider(requireActivity())
+                        .get(RemindersViewModel.class).findReminder(reminderId);
                 if (existingReminder != null && existingReminder.getDateTime() != null) {
                     selectedCalendar.setTime(existingReminder.getDateTime());
-                    Log.d(TAG, "Editing existing reminder at position: " + editingPosition);
+                    Log.d(TAG, "Editing existing reminder: " + reminderId);
                 }
             }
+            if (savedInstanceState != null) {
+                restoreState(savedInstanceState);
+            }
 
             AlertDialog.Builder builder = new AlertDialog.Builder(requireActivity());
             LayoutInflater inflater = requireActivity().getLayoutInflater();
@@ -94,6 +116,19 @@ public class AddEditReminderDialog extends DialogFragment {
 
             // Установка данных
             populateData();
+            if (reminderId != null && existingReminder == null) {
+                // Страница с напоминанием выгружена (или процесс перезапускался) - читаем из базы
+                ReminderRepository.getInstance(requireContext()).get(reminderId, reminder -> {
+                    if (reminder == null || !isAdded()) {
+                        return;
+                    }
+                    existingReminder = reminder;
+                    populateData();
+                    if (devicesButton.getVisibility() == View.VISIBLE) {
+                        updateDevicesButton(currentDevices());
+                    }
+                });
+            }
 
             // Установка обработчиков
             setClickListeners(view);
@@ -108,26 +143,54 @@ public class AddEditReminderDialog extends DialogFragment {
         }
     }
 
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (selectedCalendar == null) {
+            return;
+        }
+        outState.putLong(STATE_DATE_TIME, selectedCalendar.getTimeInMillis());
+        outState.putString(STATE_RECURRENCE, recurrence != null ? recurrence.toString() : null);
+        if (selectedDevices != null) {
+            outState.putStringArrayList(STATE_DEVICES, new ArrayList<>(selectedDevices));
+        }
+    }
+
+    private void restoreState(Bundle state) {
+        if (!state.containsKey(STATE_DATE_TIME)) {
+            return;
+        }
+        selectedCalendar.setTimeInMillis(state.getLong(STATE_DATE_TIME));
+        recurrence = ReminderJsonReader.parseRecurrence(state.getString(STATE_RECURRENCE));
+        List<String> devices = state.getStringArrayList(STATE_DEVICES);
+        selectedDevices = devices != null ? new HashSet<>(devices) : null;
+        restored = true;
+    }
+
     private void initViews(View view) {
         titleEditText = view.findViewById(R.id.titleEditText);
         descriptionEditText = view.findViewById(R.id.descriptionEditText);
         dateTextView = view.findViewById(R.id.dateTextView);
         timeTextView = view.findViewById(R.id.timeTextView);
+        devicesButton = view.findViewById(R.id.devicesButton);
+        repeatButton = view.findViewById(R.id.repeatButton);
     }
 
     private void populateData() {
         // Установка текущей даты и времени по умолчанию
         updateDateTimeDisplay();
 
-        // Если редактируем существующее напоминание
-        if (existingReminder != null) {
+        // Если редактируем существующее напоминание (после поворота поля уже восстановлены)
+        if (existingReminder != null && !restored) {
             titleEditText.setText(existingReminder.getTitle());
             descriptionEditText.setText(existingReminder.getDescription());
             if (existingReminder.getDateTime() != null) {
                 selectedCalendar.setTime(existingReminder.getDateTime());
                 updateDateTimeDisplay();
             }
+            recurrence = existingReminder.getRecurrence();
         }
+        updateRepeatButton();
     }
 
     private void setClickListeners(View view) {
@@ -138,8 +201,113 @@ public class AddEditReminderDialog extends DialogFragment {
 
         dateButton.setOnClickListener(v -> showDatePickerDialog());
         timeButton.setOnClickListener(v -> showTimePickerDialog());
+        repeatButton.setOnClickListener(v -> showRepeatDialog());
         cancelButton.setOnClickListener(v -> dismiss());
         saveButton.setOnClickListener(v -> saveReminder());
+
+        // Выбор устройств - только когда их несколько
+        if (!ServerEndpoints.getInstance(requireContext()).getAdditional().isEmpty()) {
+            devicesButton.setVisibility(View.VISIBLE);
+            updateDevicesButton(currentDevices());
+            devicesButton.setOnClickListener(v -> showDevicesDialog());
+        }
+    }
+
+    // Устройства напоминания: выбранные в диалоге или сохранённый маршрут
+    private Set<String> currentDevices() {
+        if (selectedDevices != null) {
+            return selectedDevices;
+        }
+        Set<String> ids = new HashSet<>();
+        if (existingReminder != null) {
+            for (ServerEndpoints.Endpoint endpoint
+                    : ServerEndpoints.getInstance(requireContext()).getTargets(existingReminder.getId())) {
+                ids.add(endpoint.getId());
+            }
+        } else {
+            for (ServerEndpoints.Endpoint endpoint : ServerEndpoints.getInstance(requireContext()).getAll()) {
+                ids.add(endpoint.getId());
+            }
+        }
+        return ids;
+    }
+
+    // В списке только дополнительные устройства: основное получает напоминание всегда
+    private void showDevicesDialog() {
+        final List<ServerEndpoints.Endpoint> additional =
+                ServerEndpoints.getInstance(requireContext()).getAdditional();
+        final Set<String> chosen = new HashSet<>(currentDevices());
+        String[] names = new String[additional.size()];
+        boolean[] checked = new boolean[additional.size()];
+        for (int i = 0; i < additional.size(); i++) {
+            names[i] = additional.get(i).getName();
+            checked[i] = chosen.contains(additional.get(i).getId());
+        }
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Устройства, кроме основного")
+                .setMultiChoiceItems(names, checked, (dialog, which, isChecked) -> {
+                    if (isChecked) {
+                        chosen.add(additional.get(which).getId());
+                    } else {
+                        chosen.remove(additional.get(which).getId());
+                    }
+                })
+                .setPositiveButton("Готово", (dialog, which) -> {
+                    chosen.add(ServerEndpoints.PRIMARY_ID);
+                    selectedDevices = chosen;
+                    updateDevicesButton(chosen);
+                })
+                .setNegativeButton("Отмена", null)
+                .show();
+    }
+
+    private void showRepeatDialog() {
+        // День недели выбранной даты: 0 - понедельник
+        int day = (selectedCalendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+        final RecurrenceRule[] rules = {
+                null,
+                RecurrenceRule.everyHours(1),
+                RecurrenceRule.everyDays(1),
+                RecurrenceRule.weekly(RecurrenceRule.WEEKDAYS, 1),
+                RecurrenceRule.weekly(RecurrenceRule.WEEKEND, 1),
+                RecurrenceRule.weekly(RecurrenceRule.MONDAY << day, 1)
+        };
+        String[] names = {"Не повторять", "Каждый час", "Каждый день", "По будням", "По выходным",
+                "Каждую неделю (" + rules[5].describe().substring(3) + ")"};
+        int checked = 0;
+        for (int i = 1; i < rules.length; i++) {
+            if (rules[i].equals(recurrence)) {
+                checked = i;
+            }
+        }
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Повтор")
+                .setSingleChoiceItems(names, checked, (dialog, which) -> {
+                    recurrence = rules[which];
+                    updateRepeatButton();
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Отмена", null)
+                .show();
+    }
+
+    private void updateRepeatButton() {
+        repeatButton.setText(recurrence != null ? "Повтор: " + recurrence.describe() : "Повтор: нет");
+    }
+
+    private void updateDevicesButton(Set<String> ids) {
+        List<ServerEndpoints.Endpoint> all = ServerEndpoints.getInstance(requireContext()).getAll();
+        if (ids.size() >= all.size()) {
+            devicesButton.setText("Устройства: все");
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (ServerEndpoints.Endpoint endpoint : all) {
+            if (ids.contains(endpoint.getId())) {
+                names.add(endpoint.getName());
+            }
+        }
+        devicesButton.setText("Устройства: " + String.join(", ", names));
     }
 
     private void showDatePickerDialog() {
@@ -219,20 +387,44 @@ public class AddEditReminderDialog extends DialogFragment {
             Date dateTime = selectedCalendar.getTime();
             Date currentTime = new Date();
 
-            // Проверка, что дата не в прошлом (с допуском в 1 минуту)
-            if (dateTime.before(new Date(currentTime.getTime() - 60000))) {
+            // Проверка, что дата не в прошлом (с допуском в 1 минуту);
+            // у повторяющегося это первое срабатывание, следующие ещё впереди
+            if (recurrence == null && dateTime.before(new Date(currentTime.getTime() - 60000))) {
                 Toast.makeText(requireContext(),
                         "Выберите будущую дату и время", Toast.LENGTH_SHORT).show();
                 return;
             }
 
-            Reminder reminder = new Reminder(title, description, dateTime);
+            if (reminderId != null && existingReminder == null) {
+                Toast.makeText(requireContext(), "Напоминание ещё загружается", Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            Reminder reminder;
+            if (existingReminder != null) {
+                // Редактирование сохраняет id, чтобы сервер обновил ту же запись
+                reminder = new Reminder(existingReminder.getId(), title, description, dateTime,
+                        existingReminder.isActive());
+                reminder.setVersion(existingReminder.getVersion());
+            } else {
+                reminder = new Reminder(title, description, dateTime);
+            }
+            reminder.setRecurrence(recurrence);
+
+            if (selectedDevices != null) {
+                if (existingReminder != null) {
+                    // С убранных устройств напоминание удаляется, на добавленные отправляется
+                    new ApiService(requireContext()).setReminderTargets(reminder, selectedDevices);
+                } else {
+                    ServerEndpoints.getInstance(requireContext()).setTargets(reminder.getId(), selectedDevices);
+                }
+            }
 
             if (listener != null) {
-                if (editingPosition == -1) {
+                if (existingReminder == null) {
                     listener.onReminderAdded(reminder);
                 } else {
-                    listener.onReminderUpdated(editingPosition, reminder);
+                    listener.onReminderUpdated(existingReminder, reminder);
                 }
             } else {
                 Log.e(TAG, "Listener is null!");
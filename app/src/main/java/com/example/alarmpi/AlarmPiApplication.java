@@ -0,0 +1,16 @@
+package com.example.alarmpi;
+
+import android.app.Application;
+
+// Работа, которая принадлежит процессу, а не экрану: запускается один раз
+// при старте процесса, а не при каждом пересоздании MainActivity.
+public class AlarmPiApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Досылаем изменения, не отправленные в прошлый раз (в том числе после
+        // перезагрузки, когда процесс запускает ReminderAlarmReceiver)
+        new ApiService(this).resumePendingSends();
+    }
+}
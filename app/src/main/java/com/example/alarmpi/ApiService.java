@@ -2,19 +2,34 @@ package com.example.alarmpi;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonReader;
 import android.util.Log;
-import android.widget.Toast;
 
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.text.SimpleDateFormat;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ApiService {
 
@@ -22,13 +37,81 @@ public class ApiService {
     private static final String PREFERENCES_NAME = "ServerSettings";
     private static final String SERVER_URL_KEY = "server_url";
     private static final String DEFAULT_SERVER_URL = "http://192.168.1.100:5000/api/reminders";
+    private static final String SYNC_CURSOR_KEY = "sync_cursor";
+    // Адрес сервера, который принимает сжатые (gzip) запросы; определяется при проверке соединения
+    private static final String GZIP_SERVER_KEY = "gzip_request_server";
+    private static final String BATCH_PATH = "/batch";
+    private static final String CHANGES_PATH = "/changes";
+    private static final String EVENTS_PATH = "/events";
+    private static final String DIGEST_PATH = "/digest";
+    private static final String DIGEST_LEAVES_PATH = "/digest/leaves";
+    // События потока: изменённое напоминание (JSON) и id удалённого
+    private static final String EVENT_REMINDER = "reminder";
+    private static final String EVENT_DELETED = "deleted";
+    // Пачка событий подряд перестраивает будильники один раз
+    private static final long ALARM_RELOAD_DELAY_MS = 500;
+    private static final String SERVER_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    // Таймауты до первых замеров; дальше их подбирает CircuitBreaker по времени ответа
+    private static final int SEND_TIMEOUT_MS = 5000;
+    private static final int TEST_TIMEOUT_MS = 3000;
+    // Верхний предел таймаута обычных запросов - отступать (удваивать) есть куда
+    private static final int MAX_SEND_TIMEOUT_MS = CircuitBreaker.MAX_TIMEOUT_MS;
+
+    // Пулы сетевых потоков по серверам (host:port), общие для всех экземпляров.
+    // Размер не превышает лимит keep-alive соединений HttpURLConnection на адрес
+    // (http.maxConnections = 5), чтобы каждый поток мог держать своё постоянное
+    // соединение. Медленный или недоступный сервер занимает только свои потоки.
+    private static final int NETWORK_THREADS = 4;
+    private static final Map<String, ExecutorService> NETWORK_EXECUTORS = new ConcurrentHashMap<>();
+
+    // Форматы ответа, которые понимает клиент: двоичный предпочтительнее JSON
+    private static final String ACCEPT_CODECS =
+            BinaryReminderCodec.CONTENT_TYPE + ", " + JsonReminderCodec.CONTENT_TYPE + ";q=0.5";
+    // Понимает ли сервер двоичные запросы: true - ответил в двоичном формате,
+    // false - отклонил двоичный запрос (415); по адресу сервера
+    private static final Map<String, Boolean> BINARY_SUPPORT = new ConcurrentHashMap<>();
+
+    // Предохранители по адресам (без параметров запроса), общие для всех экземпляров
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    // Подписка на события сервера - одна на процесс
+    private static ServerEventStream eventStream;
 
     private Context context;
     private SharedPreferences preferences;
+    private final ReminderRepository repository;
+    private final HttpTransport transport = new HttpTransport();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable reloadAlarms = () -> ReminderAlarmScheduler.getInstance(context).reload();
 
     public ApiService(Context context) {
-        this.context = context;
+        // Колбэки запросов живут дольше экрана - держим только Application, не Activity
+        this.context = context.getApplicationContext();
         this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.repository = ReminderRepository.getInstance(context);
+    }
+
+    private static ExecutorService executorFor(String serverUrl) {
+        int start = serverUrl.indexOf("://");
+        start = start >= 0 ? start + 3 : 0;
+        int end = serverUrl.indexOf('/', start);
+        String authority = end >= 0 ? serverUrl.substring(start, end) : serverUrl.substring(start);
+        return NETWORK_EXECUTORS.computeIfAbsent(authority, key -> createNetworkExecutor());
+    }
+
+    private static ExecutorService createNetworkExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                NETWORK_THREADS, NETWORK_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ApiService-net-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // Простаивающие потоки завершаются, когда синхронизации нет
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     public void setServerUrl(String url) {
@@ -41,133 +124,648 @@ public class ApiService {
         return preferences.getString(SERVER_URL_KEY, DEFAULT_SERVER_URL);
     }
 
-    // Отправка напоминания на сервер
+    // Сменить основной сервер на другой. Курсор синхронизации и Last-Event-ID
+    // относятся к прежнему серверу: с новым список загружается заново, а подписка
+    // открывается без Last-Event-ID.
+    public void switchServer(String url) {
+        if (url.equals(getServerUrl())) {
+            return;
+        }
+        setServerUrl(url);
+        resetSyncCursor();
+        if (isSubscribed()) {
+            subscribeToChanges();
+        }
+        pullChanges(new PullCallback() {
+            @Override
+            public void onComplete(ChangeSet changes) {
+                Log.d(TAG, "Список загружен с нового сервера " + url);
+            }
+
+            @Override
+            public void onError(String message) {
+                Log.w(TAG, "Не удалось загрузить список с нового сервера: " + message);
+            }
+        });
+    }
+
+    // Адрес дополнительного метода API относительно основного URL сервера
+    private String getEndpointUrl(String path) {
+        return endpointUrl(getServerUrl(), path);
+    }
+
+    private static String endpointUrl(String serverUrl, String path) {
+        if (serverUrl.endsWith("/")) {
+            serverUrl = serverUrl.substring(0, serverUrl.length() - 1);
+        }
+        return serverUrl + path;
+    }
+
+    // Формат тела запроса: двоичный, только если сервер уже показал, что понимает его
+    private ReminderCodec requestCodec(String serverUrl) {
+        return Boolean.TRUE.equals(BINARY_SUPPORT.get(serverUrl))
+                ? new BinaryReminderCodec() : new JsonReminderCodec(SERVER_DATE_FORMAT);
+    }
+
+    // Формат ответа - по его Content-Type
+    private ReminderCodec responseCodec(String serverUrl, HttpTransport.ResponseHead head) {
+        String contentType = head.getContentType();
+        if (contentType != null && contentType.startsWith(BinaryReminderCodec.CONTENT_TYPE)) {
+            BINARY_SUPPORT.putIfAbsent(serverUrl, true);
+            return new BinaryReminderCodec();
+        }
+        return new JsonReminderCodec(SERVER_DATE_FORMAT);
+    }
+
+    static CircuitBreaker breakerFor(String url) {
+        int query = url.indexOf('?');
+        String endpoint = query >= 0 ? url.substring(0, query) : url;
+        return BREAKERS.computeIfAbsent(endpoint, key -> new CircuitBreaker(SEND_TIMEOUT_MS));
+    }
+
+    // Принимает ли сервер сжатые запросы (по результату последней проверки соединения)
+    private boolean acceptsGzipRequests(String serverUrl) {
+        return serverUrl.equals(preferences.getString(GZIP_SERVER_KEY, null));
+    }
+
+    // Сервер сообщает допустимые сжатия запроса заголовком Accept-Encoding в ответе (RFC 7694)
+    private static boolean advertisesGzip(HttpTransport.ResponseHead head) {
+        String acceptEncoding = head.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+    }
+
+    // Запрос через предохранитель адреса: при разомкнутом - сразу OpenException,
+    // таймаут - по замерам времени ответа. Ответ 5xx считается отказом сервера.
+    // force - отправить даже при разомкнутом (проверка соединения пользователем).
+    // Тело запроса сжимается, если сервер это поддерживает (см. testConnection).
+    private <T> T execute(String serverUrl, String method, String url, byte[] body, String contentType,
+                          int maxTimeoutMs, boolean force, HttpTransport.BodyHandler<T> handler)
+            throws IOException {
+        CircuitBreaker breaker = breakerFor(url);
+        if (!breaker.tryAcquire() && !force) {
+            throw new CircuitBreaker.OpenException(breaker.getRetryAfterMs());
+        }
+        int timeoutMs = Math.min(maxTimeoutMs, breaker.getTimeoutMs(body != null ? body.length : 0));
+        final boolean gzipBody = body != null && acceptsGzipRequests(serverUrl);
+        final int[] status = new int[1];
+        // Замер - до заголовков ответа: чтение длинного тела не раздувает таймаут
+        final long[] headersAt = new long[1];
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = transport.execute(method, url, body, contentType, gzipBody, ACCEPT_CODECS, timeoutMs,
+                    (head, in) -> {
+                        headersAt[0] = System.nanoTime();
+                        status[0] = head.getCode();
+                        if (head.getCode() == HttpURLConnection.HTTP_UNSUPPORTED_TYPE && gzipBody
+                                && body.length >= HttpTransport.GZIP_MIN_BYTES && !advertisesGzip(head)) {
+                            // Сервер больше не принимает сжатые запросы - до следующей проверки без сжатия
+                            preferences.edit().remove(GZIP_SERVER_KEY).apply();
+                        }
+                        return handler.handle(head, in);
+                    });
+        } catch (IOException | RuntimeException e) {
+            // Любой исход запроса закрывает пробный: иначе после ошибки разбора
+            // ответа полуоткрытый предохранитель не пропустил бы больше ни одного
+            onServerFailure(serverUrl, breaker, e instanceof SocketTimeoutException);
+            throw e;
+        }
+        if (status[0] >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+            onServerFailure(serverUrl, breaker, false);
+        } else {
+            breaker.onSuccess((headersAt[0] - start) / 1_000_000);
+        }
+        return result;
+    }
+
+    private void onServerFailure(String serverUrl, CircuitBreaker breaker, boolean timedOut) {
+        breaker.onFailure(timedOut);
+        if (breaker.getState() == CircuitBreaker.State.OPEN && serverUrl.equals(getServerUrl())) {
+            // Основной сервер перестал отвечать - возможно, сменил адрес; ищем в фоне
+            ServerDiscovery.getInstance(context).refreshIfStale();
+        }
+    }
+
+    // Версия сервера, до которой локальный список уже синхронизирован
+    public long getSyncCursor() {
+        return preferences.getLong(SYNC_CURSOR_KEY, 0);
+    }
+
+    private void setSyncCursor(long cursor) {
+        preferences.edit().putLong(SYNC_CURSOR_KEY, cursor).apply();
+    }
+
+    // Следующая загрузка изменений вернёт полный список
+    public void resetSyncCursor() {
+        preferences.edit().remove(SYNC_CURSOR_KEY).apply();
+    }
+
+    public interface BatchCallback {
+        void onBatchResult(BatchResult result);
+    }
+
+    // Отправка напоминания на серверы из его маршрута (ServerEndpoints).
+    // Операция сначала записывается в журнал каждого сервера, а затем отправляется
+    // в фоне пакетом; при недоступности сервера отправка повторяется позже.
     public void sendReminder(Reminder reminder, String action) {
-        new SendReminderTask().execute(reminder, action);
+        for (ServerEndpoints.Endpoint endpoint : ServerEndpoints.getInstance(context).getTargets(reminder.getId())) {
+            OutboxDrainer.forEndpoint(context, endpoint.getId()).enqueue(new ReminderOperation(reminder, action));
+        }
     }
 
-    // Асинхронная задача для отправки данных
-    private class SendReminderTask extends AsyncTask<Object, Void, Boolean> {
-        private String errorMessage = "";
+    // Отправка многих напоминаний (импорт из файла): на каждый сервер операции
+    // записываются в журнал одной записью и уходят пакетами, как при sendReminder
+    public void sendReminders(List<Reminder> reminders, String action) {
+        ServerEndpoints endpoints = ServerEndpoints.getInstance(context);
+        Map<String, List<ReminderOperation>> byEndpoint = new LinkedHashMap<>();
+        for (Reminder reminder : reminders) {
+            for (ServerEndpoints.Endpoint endpoint : endpoints.getTargets(reminder.getId())) {
+                List<ReminderOperation> operations = byEndpoint.get(endpoint.getId());
+                if (operations == null) {
+                    operations = new ArrayList<>();
+                    byEndpoint.put(endpoint.getId(), operations);
+                }
+                operations.add(new ReminderOperation(reminder, action));
+            }
+        }
+        for (Map.Entry<String, List<ReminderOperation>> entry : byEndpoint.entrySet()) {
+            OutboxDrainer.forEndpoint(context, entry.getKey()).enqueueAll(entry.getValue());
+        }
+    }
 
-        @Override
-        protected Boolean doInBackground(Object... params) {
-            Reminder reminder = (Reminder) params[0];
-            String action = (String) params[1];
+    // Отправка изменения уже известного серверу напоминания: только поля, которыми
+    // updated отличается от previous. Пока правка ждёт отправки, следующие правки
+    // того же напоминания сливаются с ней (KeyedSendScheduler), так что на сервер
+    // уходит разница с последним подтверждённым им состоянием.
+    public void sendReminderChanges(Reminder previous, Reminder updated) {
+        if (previous == null || !previous.getId().equals(updated.getId())) {
+            sendReminder(updated, ReminderOperation.ACTION_UPDATE);
+            return;
+        }
+        int fields = ReminderOperation.changedFields(previous, updated);
+        if (fields == 0) {
+            return;
+        }
+        for (ServerEndpoints.Endpoint endpoint : ServerEndpoints.getInstance(context).getTargets(updated.getId())) {
+            OutboxDrainer.forEndpoint(context, endpoint.getId()).enqueue(
+                    new ReminderOperation(updated, ReminderOperation.ACTION_PATCH, fields));
+        }
+    }
 
-            try {
-                // Формируем JSON объект
-                JSONObject jsonReminder = new JSONObject();
-                jsonReminder.put("id", reminder.getId());
-                jsonReminder.put("title", reminder.getTitle());
-                jsonReminder.put("description", reminder.getDescription());
-
-                // Форматируем дату
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-                jsonReminder.put("dateTime", sdf.format(reminder.getDateTime()));
-
-                jsonReminder.put("isActive", reminder.isActive());
-                jsonReminder.put("action", action); // "add", "update", "delete"
-
-                String serverUrl = getServerUrl();
-                Log.d(TAG, "Отправка на сервер: " + serverUrl);
-                Log.d(TAG, "Данные: " + jsonReminder.toString());
-
-                // Создаем HTTP соединение
-                URL url = new URL(serverUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-                conn.setRequestProperty("Accept", "application/json");
-                conn.setConnectTimeout(5000);
-                conn.setReadTimeout(5000);
-                conn.setDoOutput(true);
-
-                // Отправляем данные
-                OutputStream os = conn.getOutputStream();
-                os.write(jsonReminder.toString().getBytes("UTF-8"));
-                os.close();
-
-                // Получаем ответ
-                int responseCode = conn.getResponseCode();
-                Log.d(TAG, "Код ответа: " + responseCode);
-
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
+    // Сменить серверы, на которые уходит напоминание: с убранных оно удаляется,
+    // на добавленные отправляется целиком. Пустой набор - на все серверы.
+    public void setReminderTargets(Reminder reminder, Collection<String> endpointIds) {
+        ServerEndpoints endpoints = ServerEndpoints.getInstance(context);
+        Set<String> before = new HashSet<>();
+        for (ServerEndpoints.Endpoint endpoint : endpoints.getTargets(reminder.getId())) {
+            before.add(endpoint.getId());
+        }
+        endpoints.setTargets(reminder.getId(), endpointIds);
+        Set<String> after = new HashSet<>();
+        for (ServerEndpoints.Endpoint endpoint : endpoints.getTargets(reminder.getId())) {
+            after.add(endpoint.getId());
+        }
+        for (String id : before) {
+            if (!after.contains(id)) {
+                OutboxDrainer.forEndpoint(context, id).enqueue(
+                        new ReminderOperation(reminder, ReminderOperation.ACTION_DELETE));
+            }
+        }
+        for (String id : after) {
+            if (!before.contains(id)) {
+                OutboxDrainer.forEndpoint(context, id).enqueue(
+                        new ReminderOperation(reminder, ReminderOperation.ACTION_ADD));
+            }
+        }
+    }
+
+    // Досылка операций, оставшихся в журналах с прошлого запуска
+    public void resumePendingSends() {
+        OutboxDrainer.kickAll(context);
+    }
+
+    // Пакетная отправка на основной сервер
+    public Future<BatchResult> sendBatch(List<ReminderOperation> operations, BatchCallback callback) {
+        return sendBatch(getServerUrl(), operations, callback);
+    }
+
+    // Пакетная отправка: все операции уходят одним POST-запросом (JSON-массив
+    // или двоичный формат, если сервер его понимает).
+    // Результат приходит в callback в главном потоке и доступен через Future.
+    public Future<BatchResult> sendBatch(String serverUrl, List<ReminderOperation> operations,
+                                         BatchCallback callback) {
+        return submit(serverUrl, () -> executeBatch(serverUrl, operations), result -> {
+            int failed = result.getFailedCount();
+            if (failed == 0) {
+                Log.d(TAG, "Пакет успешно отправлен на " + serverUrl + ", операций: " + operations.size());
+            } else {
+                Log.e(TAG, "Ошибка отправки на " + serverUrl + ": " + failed + " из " + operations.size()
+                        + ": " + result.getFirstError());
+            }
+
+            if (callback != null) {
+                callback.onBatchResult(result);
+            } else if (failed > 0) {
+                // Одно уведомление о состоянии на все ошибки, а не сообщение на каждый пакет
+                SyncStatusNotifier.getInstance(context).reportFailure(serverUrl, failed, result.getFirstError());
+            }
+        });
+    }
+
+    // Полная синхронизация со сверкой, на все серверы одновременно. С каждым
+    // сервером сначала сравнивается дерево хэшей (ReminderDigest) его напоминаний.
+    // Для расходящихся корзин сервер присылает свои напоминания из них: отправляются
+    // только отличающиеся, а напоминания, которые есть лишь на сервере, основной
+    // сервер отдаёт телефону, а с дополнительных они удаляются - иначе корзина
+    // расходилась бы при каждой синхронизации. Если всё совпадает, синхронизация -
+    // один небольшой запрос на сервер. Сервер без /digest получает весь список,
+    // как раньше. callback получает общий результат по всем серверам.
+    public void syncAll(BatchCallback callback) {
+        repository.getAll(reminders -> {
+            final ReminderTable all = reminders != null ? reminders : new ReminderTable();
+            List<ServerEndpoints.Endpoint> targets = ServerEndpoints.getInstance(context).getAll();
+
+            final BatchResult total = new BatchResult();
+            final int[] remaining = {targets.size()};
+            for (ServerEndpoints.Endpoint endpoint : targets) {
+                final String serverUrl = endpoint.getUrl();
+                final String endpointId = endpoint.getId();
+                submit(serverUrl, () -> executeBatch(serverUrl, reconcile(serverUrl, endpointId, all)), result -> {
+                    for (BatchResult.ItemResult item : result.getItems()) {
+                        total.add(item);
                     }
-                    reader.close();
-                    Log.d(TAG, "Ответ сервера: " + response.toString());
-                    return true;
+                    if (--remaining[0] == 0 && callback != null) {
+                        callback.onBatchResult(total);
+                    }
+                });
+            }
+        });
+    }
+
+    // Операции для напоминаний, которые расходятся с сервером (выполняется в сетевом потоке).
+    // Таблица только читается - её разбирают потоки всех серверов одновременно.
+    private List<ReminderOperation> reconcile(String serverUrl, String endpointId, ReminderTable all) {
+        // Напоминания этого сервера согласно маршрутам
+        ServerEndpoints endpoints = ServerEndpoints.getInstance(context);
+        ReminderDigest digest = new ReminderDigest(all);
+        for (int row = 0; row < all.size(); row++) {
+            if (endpoints.isTarget(all.getId(row), endpointId)) {
+                digest.add(row);
+            }
+        }
+
+        List<ReminderOperation> operations = new ArrayList<>();
+        try {
+            String digestUrl = endpointUrl(serverUrl, DIGEST_PATH);
+            byte[] body = digest.toRequestJson().getBytes(StandardCharsets.UTF_8);
+            Map<Integer, long[]> differingNodes = execute(serverUrl, "POST", digestUrl, body,
+                    JsonReminderCodec.CONTENT_TYPE + "; charset=UTF-8", MAX_SEND_TIMEOUT_MS, false, (head, in) ->
+                            head.getCode() == HttpURLConnection.HTTP_OK
+                                    ? new ReminderJsonReader(SERVER_DATE_FORMAT).readDigestResult(in) : null);
+            if (differingNodes == null) {
+                Log.d(TAG, "Сервер " + serverUrl + " не поддерживает сверку - отправляется весь список");
+                addUpdates(operations, digest.getBuckets(allLeaves()));
+                return operations;
+            }
+            Set<Integer> differingLeaves = new HashSet<>();
+            for (Map.Entry<Integer, long[]> node : differingNodes.entrySet()) {
+                differingLeaves.addAll(digest.differingLeaves(node.getKey(), node.getValue()));
+            }
+            if (differingLeaves.isEmpty()) {
+                return operations;
+            }
+
+            ReminderTable serverReminders = fetchLeaves(serverUrl, differingLeaves);
+            if (serverReminders == null) {
+                // Сервер не отдаёт содержимое корзин - отправляем расходящиеся корзины целиком
+                addUpdates(operations, digest.getBuckets(differingLeaves));
+            } else {
+                addUpdates(operations, digest.differingFrom(differingLeaves, serverReminders));
+                List<Reminder> serverOnly = new ArrayList<>();
+                for (int row : digest.missingRows(serverReminders)) {
+                    serverOnly.add(serverReminders.get(row));
+                }
+                if (ServerEndpoints.PRIMARY_ID.equals(endpointId)) {
+                    mainHandler.post(() -> saveServerOnly(serverOnly));
                 } else {
-                    errorMessage = "Ошибка сервера: " + responseCode;
-                    return false;
+                    for (Reminder reminder : serverOnly) {
+                        operations.add(new ReminderOperation(reminder, ReminderOperation.ACTION_DELETE));
+                    }
                 }
+            }
+            Log.d(TAG, "Сверка с " + serverUrl + ": расходится корзин " + differingLeaves.size()
+                    + ", операций " + operations.size() + " на " + digest.size() + " напоминаний");
+        } catch (Exception e) {
+            // Сервер недоступен: полный пакет получит ту же ошибку и вернёт её в callback
+            Log.w(TAG, "Ошибка сверки с " + serverUrl + ": " + e.getMessage());
+            operations.clear();
+            addUpdates(operations, digest.getBuckets(allLeaves()));
+        }
+        return operations;
+    }
 
-            } catch (Exception e) {
-                errorMessage = "Ошибка соединения: " + e.getMessage();
-                Log.e(TAG, "Ошибка отправки данных", e);
-                return false;
+    // Напоминания расходящихся корзин на сервере; null - сервер их не отдаёт
+    private ReminderTable fetchLeaves(String serverUrl, Set<Integer> leaves) throws IOException {
+        StringBuilder json = new StringBuilder("{\"leaves\":[");
+        for (int leaf : leaves) {
+            if (json.charAt(json.length() - 1) != '[') {
+                json.append(',');
             }
+            json.append(leaf);
         }
+        json.append("]}");
+        return execute(serverUrl, "POST", endpointUrl(serverUrl, DIGEST_LEAVES_PATH),
+                json.toString().getBytes(StandardCharsets.UTF_8), JsonReminderCodec.CONTENT_TYPE + "; charset=UTF-8",
+                MAX_SEND_TIMEOUT_MS, false, (head, in) -> head.getCode() == HttpURLConnection.HTTP_OK
+                        ? new ReminderJsonReader(SERVER_DATE_FORMAT).readReminderTable(in) : null);
+    }
 
-        @Override
-        protected void onPostExecute(Boolean success) {
-            if (success) {
-                Log.d(TAG, "Данные успешно отправлены на сервер");
-            } else {
-                Log.e(TAG, "Ошибка отправки: " + errorMessage);
-                Toast.makeText(context, "Ошибка отправки на сервер: " + errorMessage,
-                        Toast.LENGTH_LONG).show();
+    // Напоминания, которые есть только на основном сервере, записываются на телефон -
+    // кроме тех, удаление которых ещё не дошло до сервера
+    private void saveServerOnly(List<Reminder> serverOnly) {
+        OutboxDrainer drainer = OutboxDrainer.forEndpoint(context, ServerEndpoints.PRIMARY_ID);
+        drainer.whenLoaded(() -> {
+            Set<String> deleting = drainer.getPendingDeletes();
+            List<Reminder> missing = new ArrayList<>(serverOnly.size());
+            for (Reminder reminder : serverOnly) {
+                if (!deleting.contains(reminder.getId())) {
+                    missing.add(reminder);
+                }
+            }
+            if (missing.isEmpty()) {
+                return;
             }
+            Log.d(TAG, "Сверка: загружено с сервера напоминаний " + missing.size());
+            repository.saveFromServer(missing, written -> ReminderAlarmScheduler.getInstance(context).reload());
+        });
+    }
+
+    private static Set<Integer> allLeaves() {
+        Set<Integer> leaves = new HashSet<>(ReminderDigest.LEAF_COUNT * 2);
+        for (int leaf = 0; leaf < ReminderDigest.LEAF_COUNT; leaf++) {
+            leaves.add(leaf);
         }
+        return leaves;
     }
 
-    // Проверка соединения с сервером
-    public void testConnection(ConnectionTestCallback callback) {
-        new TestConnectionTask(callback).execute();
+    private static void addUpdates(List<ReminderOperation> operations, List<Reminder> reminders) {
+        for (Reminder reminder : reminders) {
+            operations.add(new ReminderOperation(reminder, ReminderOperation.ACTION_UPDATE));
+        }
     }
 
-    public interface ConnectionTestCallback {
-        void onConnectionResult(boolean success, String message);
+    // Выполнить запрос в пуле потоков основного сервера и вернуть результат в главный поток
+    private <T> Future<T> submit(Callable<T> request, ResultCallback<T> callback) {
+        return submit(getServerUrl(), request, callback);
     }
 
-    private class TestConnectionTask extends AsyncTask<Void, Void, Boolean> {
-        private ConnectionTestCallback callback;
-        private String message = "";
+    // Выполнить запрос в пуле потоков сервера serverUrl и вернуть результат в главный поток
+    private <T> Future<T> submit(String serverUrl, Callable<T> request, ResultCallback<T> callback) {
+        return executorFor(serverUrl).submit(() -> {
+            T result = request.call();
+            mainHandler.post(() -> callback.onResult(result));
+            return result;
+        });
+    }
 
-        public TestConnectionTask(ConnectionTestCallback callback) {
-            this.callback = callback;
+    private interface ResultCallback<T> {
+        void onResult(T result);
+    }
+
+    private BatchResult executeBatch(String serverUrl, List<ReminderOperation> operations) {
+        if (operations.isEmpty()) {
+            return new BatchResult();
         }
+        try {
+            final ReminderCodec codec = requestCodec(serverUrl);
+            byte[] body = codec.encodeBatch(operations);
+            final boolean gzipped = body.length >= HttpTransport.GZIP_MIN_BYTES && acceptsGzipRequests(serverUrl);
 
-        @Override
-        protected Boolean doInBackground(Void... voids) {
-            try {
-                String serverUrl = getServerUrl();
-                URL url = new URL(serverUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setConnectTimeout(3000);
-                conn.setReadTimeout(3000);
+            String batchUrl = endpointUrl(serverUrl, BATCH_PATH);
+            Log.d(TAG, "Отправка пакета на сервер: " + batchUrl
+                    + ", операций: " + operations.size() + ", " + codec.getContentType()
+                    + ", байт: " + body.length);
 
-                int responseCode = conn.getResponseCode();
-                message = "Сервер доступен. Код ответа: " + responseCode;
-                return responseCode == HttpURLConnection.HTTP_OK;
+            return execute(serverUrl, "POST", batchUrl, body, codec.getContentType(),
+                    MAX_SEND_TIMEOUT_MS, false, (head, in) -> {
+                        int code = head.getCode();
+                        Log.d(TAG, "Код ответа: " + code);
+                        if (code == HttpURLConnection.HTTP_OK) {
+                            return responseCodec(serverUrl, head).decodeBatchResult(in, operations);
+                        }
+                        // 415 на сжатый запрос от сервера, не объявившего gzip, - отказ от сжатия
+                        // (его снимает execute); в остальных случаях - от двоичного формата:
+                        // следующая попытка уйдёт в JSON. Заголовок Accept-Encoding тут ни при чём.
+                        if (code == HttpURLConnection.HTTP_UNSUPPORTED_TYPE && codec instanceof BinaryReminderCodec
+                                && !(gzipped && !advertisesGzip(head))) {
+                            BINARY_SUPPORT.put(serverUrl, false);
+                        }
+                        return BatchResult.failed(operations, "Ошибка сервера: " + code);
+                    });
 
+        } catch (CircuitBreaker.OpenException e) {
+            // Операции остаются в журнале и уйдут, когда сервер ответит на пробный запрос
+            return BatchResult.failed(operations, e.getMessage());
+        } catch (Exception e) {
+            Log.e(TAG, "Ошибка отправки данных", e);
+            return BatchResult.failed(operations, "Ошибка соединения: " + e.getMessage());
+        }
+    }
+
+    public interface PullCallback {
+        // Ответ прочитан и применён целиком
+        void onComplete(ChangeSet changes);
+        void onError(String message);
+    }
+
+    // Загрузка изменений с сервера начиная с сохранённого курсора.
+    // Сервер возвращает только изменённые и удалённые с тех пор напоминания:
+    // {"cursor": 42, "changes": [{...}], "deleted": ["id", ...]}
+    // Ответ разбирается потоково, изменения применяются к хранилищу порциями
+    // по мере чтения. Курсор сохраняется, когда весь ответ записан в базу: если
+    // процесс завершится раньше, изменения загрузятся повторно, а применение
+    // по версии идемпотентно.
+    public Future<ChangeSet> pullChanges(PullCallback callback) {
+        final long cursor = getSyncCursor();
+        final String changesUrl = getEndpointUrl(CHANGES_PATH) + "?since=" + cursor;
+        final String[] error = new String[1];
+        // Какая-то порция не записалась - курсор не двигаем (только главный поток)
+        final boolean[] writeFailed = new boolean[1];
+        return submit(() -> {
+            try {
+                Log.d(TAG, "Загрузка изменений: " + changesUrl);
+                final String serverUrl = getServerUrl();
+                return execute(serverUrl, "GET", changesUrl, null, null, MAX_SEND_TIMEOUT_MS, false, (head, in) -> {
+                    if (head.getCode() != HttpURLConnection.HTTP_OK) {
+                        error[0] = "Ошибка сервера: " + head.getCode();
+                        return null;
+                    }
+                    return responseCodec(serverUrl, head).decodeChangeSet(in, cursor,
+                            chunk -> mainHandler.post(() -> repository.saveFromServer(chunk, written -> {
+                                if (!written) {
+                                    writeFailed[0] = true;
+                                }
+                            })));
+                });
             } catch (Exception e) {
-                message = "Ошибка соединения: " + e.getMessage();
-                return false;
+                Log.e(TAG, "Ошибка загрузки изменений", e);
+                error[0] = "Ошибка соединения: " + e.getMessage();
+                return null;
+            }
+        }, changes -> {
+            if (changes == null) {
+                callback.onError(error[0]);
+                return;
+            }
+            Log.d(TAG, "Изменения загружены, удалений: " + changes.getDeletedIds().size()
+                    + ", курсор: " + changes.getCursor());
+            // Записи выполняются по порядку: когда записаны удаления, записаны и все порции
+            repository.deleteAll(changes.getDeletedIds(), written -> {
+                // Изменения с сервера могли сдвинуть ближайшее срабатывание
+                ReminderAlarmScheduler.getInstance(context).reload();
+                if (!written || writeFailed[0]) {
+                    callback.onError("Ошибка записи в базу");
+                    return;
+                }
+                setSyncCursor(changes.getCursor());
+                callback.onComplete(changes);
+            });
+        });
+    }
+
+    // Подписка на изменения с сервера (Server-Sent Events) вместо периодического опроса.
+    // Поток продолжается с сохранённого курсора; при обрыве переподключается сам
+    // и получает пропущенные события по Last-Event-ID. Повторный вызов с тем же
+    // адресом ничего не делает, смена адреса сервера переоткрывает подписку.
+    public void subscribeToChanges() {
+        final String eventsUrl = getEndpointUrl(EVENTS_PATH);
+        synchronized (ApiService.class) {
+            if (eventStream != null) {
+                if (eventStream.isRunning() && eventStream.getUrl().equals(eventsUrl)) {
+                    return;
+                }
+                eventStream.stop();
             }
+            long cursor = getSyncCursor();
+            eventStream = new ServerEventStream(eventsUrl, cursor > 0 ? String.valueOf(cursor) : null,
+                    new ServerEventStream.Listener() {
+                        @Override
+                        public void onConnected() {
+                            Log.d(TAG, "Подписка на события сервера: " + eventsUrl);
+                        }
+
+                        @Override
+                        public void onEvent(ServerEventStream.Event event) {
+                            applyServerEvent(event);
+                        }
+
+                        @Override
+                        public void onDisconnected(Exception error) {
+                            Log.w(TAG, "Подписка на события прервана"
+                                    + (error != null ? ": " + error.getMessage() : ""));
+                        }
+                    });
+            eventStream.start();
         }
+    }
 
-        @Override
-        protected void onPostExecute(Boolean success) {
-            if (callback != null) {
-                callback.onConnectionResult(success, message);
+    public static boolean isSubscribed() {
+        synchronized (ApiService.class) {
+            return eventStream != null && eventStream.isRunning();
+        }
+    }
+
+    // Закрыть подписку (приложение ушло в фон)
+    public static void unsubscribeFromChanges() {
+        synchronized (ApiService.class) {
+            if (eventStream != null) {
+                eventStream.stop();
+                eventStream = null;
             }
         }
     }
-}
\ No newline at end of file
+
+    // Вызывается из потока подписки; хранилище обновляется в главном потоке в порядке событий
+    private void applyServerEvent(ServerEventStream.Event event) {
+        final long cursor;
+        try {
+            cursor = Long.parseLong(event.getId());
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Событие без курсора: " + event.getId());
+            return;
+        }
+        final Reminder changed;
+        final String deletedId;
+        switch (event.getType()) {
+            case EVENT_REMINDER:
+                try {
+                    changed = new ReminderJsonReader(SERVER_DATE_FORMAT)
+                            .readReminder(new JsonReader(new StringReader(event.getData())));
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Некорректное событие: " + event.getData(), e);
+                    return;
+                }
+                deletedId = null;
+                break;
+            case EVENT_DELETED:
+                changed = null;
+                deletedId = event.getData().trim();
+                break;
+            default:
+                Log.d(TAG, "Пропущено событие " + event.getType());
+                return;
+        }
+        mainHandler.post(() -> {
+            // Курсор сдвигается, только когда событие записано в базу
+            ReminderRepository.Callback<Boolean> onWritten = written -> {
+                // Курсор только растёт: загрузка /changes могла уже уйти дальше
+                if (written && cursor > getSyncCursor()) {
+                    setSyncCursor(cursor);
+                }
+                mainHandler.removeCallbacks(reloadAlarms);
+                mainHandler.postDelayed(reloadAlarms, ALARM_RELOAD_DELAY_MS);
+            };
+            if (changed != null) {
+                // Применение по версии: повтор после переподключения ничего не меняет
+                repository.saveFromServer(Collections.singletonList(changed), onWritten);
+            } else {
+                repository.deleteAll(Collections.singletonList(deletedId), onWritten);
+            }
+        });
+    }
+
+    // Проверка соединения с сервером
+    public Future<Boolean> testConnection(ConnectionTestCallback callback) {
+        return testConnection(getServerUrl(), callback);
+    }
+
+    // Проверка адреса, который ещё не сохранён как адрес сервера (диалог настроек)
+    public Future<Boolean> testConnection(String serverUrl, ConnectionTestCallback callback) {
+        final String[] message = new String[1];
+        return submit(serverUrl, () -> {
+            try {
+                HttpTransport.ResponseHead response = execute(serverUrl, "GET", serverUrl, null, null, TEST_TIMEOUT_MS, true,
+                        (head, in) -> head);
+                message[0] = "Сервер доступен. Код ответа: " + response.getCode();
+                // Запоминаем, можно ли сжимать запросы к этому серверу
+                if (response.isOk() && advertisesGzip(response)) {
+                    preferences.edit().putString(GZIP_SERVER_KEY, serverUrl).apply();
+                } else if (response.isOk() && acceptsGzipRequests(serverUrl)) {
+                    preferences.edit().remove(GZIP_SERVER_KEY).apply();
+                }
+                return response.isOk();
+            } catch (Exception e) {
+                message[0] = "Ошибка соединения: " + e.getMessage();
+                return false;
+            }
+        }, success -> {
+            if (callback != null) {
+                callback.onConnectionResult(success, message[0]);
+            }
+        });
+    }
+
+    public interface ConnectionTestCallback {
+        void onConnectionResult(boolean success, String message);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.alarmpi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Результат пакетной отправки: успех или ошибка по каждой операции
+public class BatchResult {
+
+    public static class ItemResult {
+        private final ReminderOperation operation;
+        private final boolean success;
+        private final String error;
+        // Ошибка связи (повторить позже), а не отказ сервера принять операцию
+        private final boolean retryable;
+
+        public ItemResult(ReminderOperation operation, boolean success, String error) {
+            this(operation, success, error, false);
+        }
+
+        public ItemResult(ReminderOperation operation, boolean success, String error, boolean retryable) {
+            this.operation = operation;
+            this.success = success;
+            this.error = error;
+            this.retryable = retryable;
+        }
+
+        public ReminderOperation getOperation() { return operation; }
+        public boolean isSuccess() { return success; }
+        public String getError() { return error; }
+        public boolean isRetryable() { return retryable; }
+    }
+
+    private final List<ItemResult> items = new ArrayList<>();
+
+    public void add(ItemResult item) {
+        items.add(item);
+    }
+
+    // Все операции пакета завершились одной и той же ошибкой (например, сервер недоступен)
+    public static BatchResult failed(List<ReminderOperation> operations, String error) {
+        BatchResult result = new BatchResult();
+        for (ReminderOperation operation : operations) {
+            result.add(new ItemResult(operation, false, error, true));
+        }
+        return result;
+    }
+
+    public List<ItemResult> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    public int getFailedCount() {
+        int failed = 0;
+        for (ItemResult item : items) {
+            if (!item.isSuccess()) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    public boolean isSuccess() {
+        return getFailedCount() == 0;
+    }
+
+    // Первая ошибка пакета - для краткого сообщения пользователю
+    public String getFirstError() {
+        for (ItemResult item : items) {
+            if (!item.isSuccess()) {
+                return item.getError();
+            }
+        }
+        return null;
+    }
+}
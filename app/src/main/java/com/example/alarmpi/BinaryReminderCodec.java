@@ -0,0 +1,338 @@
+package com.example.alarmpi;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Компактный двоичный формат для больших синхронизаций.
+// Числа - varint (7 бит на байт, младшие первыми), строки - varint (длина + 1)
+// и байты UTF-8 (0 - null), дата - миллисекунды UTC varint'ом, без
+// форматирования и разбора строк. Каждое сообщение начинается с байта версии.
+//
+//   запрос /batch:   версия, число операций, операции:
+//                    действие (0 add, 1 update, 2 delete), id, title, description,
+//                    dateTime, isActive (0/1), recurrence, version;
+//                    3 patch: id, маска полей (ReminderOperation.FIELD_*), поля из
+//                    маски в том же порядке, version;
+//                    если в маске есть dateTime или recurrence, перед version -
+//                    ближайшее срабатывание (0 - напоминание разовое)
+//   ответ /batch:    версия, число результатов, результаты: 1 | 0 error
+//   ответ /changes:  версия, cursor, записи до тега 0:
+//                    1 напоминание (id, title, description, dateTime, isActive,
+//                    recurrence, version, updatedAt) | 2 удалённый id
+//
+// recurrence (с версии 2) - строка правила (RecurrenceRule, 0 - разовое). Ближайшее
+// срабатывание в запросе (с версии 3) идёт при любой смене даты или правила, как
+// nextDateTime в JSON; в версии 2 оно шло только за непустым правилом. Сообщения
+// версий 1 (без recurrence) и 2 по-прежнему читаются.
+//
+// Методы encode/decode есть для обеих сторон: сервер реализует тот же формат.
+public class BinaryReminderCodec implements ReminderCodec {
+
+    public static final String CONTENT_TYPE = "application/x-alarmpi-binary";
+
+    private static final int FORMAT_VERSION = 3;
+    private static final int FIRST_RECURRENCE_VERSION = 2;
+    private static final int FIRST_NEXT_OCCURRENCE_VERSION = 3;
+    private static final int TAG_END = 0;
+    private static final int TAG_REMINDER = 1;
+    private static final int TAG_DELETED = 2;
+    private static final int ACTION_CODE_PATCH = 3;
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encodeBatch(List<ReminderOperation> operations) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(operations.size() * 64 + 8);
+        out.write(FORMAT_VERSION);
+        long now = System.currentTimeMillis();
+        writeVarLong(out, operations.size());
+        for (ReminderOperation operation : operations) {
+            Reminder reminder = operation.getReminder();
+            int code = actionCode(operation.getAction());
+            out.write(code);
+            writeString(out, reminder.getId());
+            if (code == ACTION_CODE_PATCH) {
+                out.write(operation.getFields());
+            }
+            if (operation.hasField(ReminderOperation.FIELD_TITLE)) {
+                writeString(out, reminder.getTitle());
+            }
+            if (operation.hasField(ReminderOperation.FIELD_DESCRIPTION)) {
+                writeString(out, reminder.getDescription());
+            }
+            if (operation.hasField(ReminderOperation.FIELD_DATE_TIME)) {
+                writeVarLong(out, timeOf(reminder));
+            }
+            if (operation.hasField(ReminderOperation.FIELD_ACTIVE)) {
+                out.write(reminder.isActive() ? 1 : 0);
+            }
+            if (operation.hasField(ReminderOperation.FIELD_RECURRENCE)) {
+                writeRecurrence(out, reminder);
+            }
+            if (hasSchedule(operation.getFields())) {
+                writeVarLong(out, reminder.isRecurring() ? reminder.nextOccurrence(now) : 0);
+            }
+            writeVarLong(out, reminder.getVersion());
+        }
+        return out.toByteArray();
+    }
+
+    // Разбор запроса /batch (сторона сервера)
+    public List<ReminderOperation> decodeBatch(InputStream in) throws IOException {
+        in = buffered(in);
+        int version = readVersion(in);
+        int count = (int) readVarLong(in);
+        List<ReminderOperation> operations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int code = readByte(in);
+            String action = actionName(code);
+            String id = readString(in);
+            int fields = code == ACTION_CODE_PATCH ? readByte(in) : ReminderOperation.ALL_FIELDS;
+            if (version < FIRST_RECURRENCE_VERSION) {
+                fields &= ~ReminderOperation.FIELD_RECURRENCE;
+            }
+            // Поля, которых нет в частичном обновлении, остаются пустыми - их задаёт маска
+            String title = (fields & ReminderOperation.FIELD_TITLE) != 0 ? readString(in) : null;
+            String description = (fields & ReminderOperation.FIELD_DESCRIPTION) != 0 ? readString(in) : null;
+            Date dateTime = (fields & ReminderOperation.FIELD_DATE_TIME) != 0 ? new Date(readVarLong(in)) : null;
+            boolean isActive = (fields & ReminderOperation.FIELD_ACTIVE) == 0 || readByte(in) != 0;
+            Reminder reminder = new Reminder(id, title, description, dateTime, isActive);
+            if ((fields & ReminderOperation.FIELD_RECURRENCE) != 0) {
+                reminder.setRecurrence(readRecurrence(in));
+            }
+            // Ближайшее срабатывание - для сервера без своего расчёта
+            if (version >= FIRST_NEXT_OCCURRENCE_VERSION ? hasSchedule(fields) : reminder.isRecurring()) {
+                readVarLong(in);
+            }
+            reminder.setVersion(readVarLong(in));
+            operations.add(new ReminderOperation(reminder, action, fields));
+        }
+        return operations;
+    }
+
+    // Ответ /batch (сторона сервера)
+    public byte[] encodeBatchResult(BatchResult result) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(FORMAT_VERSION);
+        writeVarLong(out, result.getItems().size());
+        for (BatchResult.ItemResult item : result.getItems()) {
+            out.write(item.isSuccess() ? 1 : 0);
+            if (!item.isSuccess()) {
+                writeString(out, item.getError());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public BatchResult decodeBatchResult(InputStream in, List<ReminderOperation> operations) throws IOException {
+        in = buffered(in);
+        readVersion(in);
+        int count = (int) readVarLong(in);
+        BatchResult result = new BatchResult();
+        for (int i = 0; i < count; i++) {
+            boolean success = readByte(in) != 0;
+            String error = success ? null : readString(in);
+            if (i < operations.size()) {
+                result.add(new BatchResult.ItemResult(operations.get(i), success,
+                        success ? null : (error != null ? error : "Ошибка сервера")));
+            }
+        }
+        // Сервер ответил не на все операции
+        for (int i = count; i < operations.size(); i++) {
+            result.add(new BatchResult.ItemResult(operations.get(i), false, "Нет ответа сервера", true));
+        }
+        return result;
+    }
+
+    // Ответ /changes (сторона сервера)
+    public byte[] encodeChangeSet(long cursor, List<Reminder> changed, List<String> deletedIds) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(changed.size() * 64 + 16);
+        out.write(FORMAT_VERSION);
+        writeVarLong(out, cursor);
+        for (Reminder reminder : changed) {
+            out.write(TAG_REMINDER);
+            writeString(out, reminder.getId());
+            writeString(out, reminder.getTitle());
+            writeString(out, reminder.getDescription());
+            writeVarLong(out, timeOf(reminder));
+            out.write(reminder.isActive() ? 1 : 0);
+            writeRecurrence(out, reminder);
+            writeVarLong(out, reminder.getVersion());
+            writeVarLong(out, reminder.getUpdatedAt());
+        }
+        for (String id : deletedIds) {
+            out.write(TAG_DELETED);
+            writeString(out, id);
+        }
+        out.write(TAG_END);
+        return out.toByteArray();
+    }
+
+    @Override
+    public ChangeSet decodeChangeSet(InputStream in, long previousCursor,
+                                     ReminderJsonReader.ChunkListener listener) throws IOException {
+        in = buffered(in);
+        int version = readVersion(in);
+        ChangeSet changes = new ChangeSet(readVarLong(in));
+        List<Reminder> chunk = new ArrayList<>(ReminderJsonReader.CHUNK_SIZE);
+        int tag;
+        while ((tag = readByte(in)) != TAG_END) {
+            if (tag == TAG_REMINDER) {
+                String id = readString(in);
+                String title = readString(in);
+                String description = readString(in);
+                Date dateTime = new Date(readVarLong(in));
+                boolean isActive = readByte(in) != 0;
+                RecurrenceRule recurrence = version >= FIRST_RECURRENCE_VERSION ? readRecurrence(in) : null;
+                if (id == null) {
+                    throw new IOException("Напоминание без id");
+                }
+                Reminder reminder = new Reminder(id, title != null ? title : "",
+                        description != null ? description : "", dateTime, isActive);
+                reminder.setRecurrence(recurrence);
+                reminder.setVersion(readVarLong(in));
+                reminder.setUpdatedAt(readVarLong(in));
+                chunk.add(reminder);
+                if (chunk.size() == ReminderJsonReader.CHUNK_SIZE) {
+                    listener.onChunk(chunk);
+                    chunk = new ArrayList<>(ReminderJsonReader.CHUNK_SIZE);
+                }
+            } else if (tag == TAG_DELETED) {
+                changes.getDeletedIds().add(readString(in));
+            } else {
+                throw new IOException("Неизвестная запись: " + tag);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            listener.onChunk(chunk);
+        }
+        return changes;
+    }
+
+    private static int actionCode(String action) {
+        switch (action) {
+            case ReminderOperation.ACTION_ADD:
+                return 0;
+            case ReminderOperation.ACTION_DELETE:
+                return 2;
+            case ReminderOperation.ACTION_PATCH:
+                return ACTION_CODE_PATCH;
+            default:
+                return 1;
+        }
+    }
+
+    private static String actionName(int code) throws IOException {
+        switch (code) {
+            case 0:
+                return ReminderOperation.ACTION_ADD;
+            case 1:
+                return ReminderOperation.ACTION_UPDATE;
+            case 2:
+                return ReminderOperation.ACTION_DELETE;
+            case ACTION_CODE_PATCH:
+                return ReminderOperation.ACTION_PATCH;
+            default:
+                throw new IOException("Неизвестное действие: " + code);
+        }
+    }
+
+    // Меняет ли операция расписание (дату или правило повторения)
+    private static boolean hasSchedule(int fields) {
+        return (fields & (ReminderOperation.FIELD_DATE_TIME | ReminderOperation.FIELD_RECURRENCE)) != 0;
+    }
+
+    private static long timeOf(Reminder reminder) {
+        return reminder.getDateTime() != null ? reminder.getDateTime().getTime() : 0;
+    }
+
+    private static InputStream buffered(InputStream in) {
+        return in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+    }
+
+    private static int readVersion(InputStream in) throws IOException {
+        int version = readByte(in);
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Неподдерживаемая версия формата: " + version);
+        }
+        return version;
+    }
+
+    private static void writeRecurrence(OutputStream out, Reminder reminder) throws IOException {
+        writeString(out, reminder.isRecurring() ? reminder.getRecurrence().toString() : null);
+    }
+
+    private static RecurrenceRule readRecurrence(InputStream in) throws IOException {
+        return ReminderJsonReader.parseRecurrence(readString(in));
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException();
+        }
+        return value;
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Слишком длинное число");
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.write(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > Integer.MAX_VALUE) {
+            throw new IOException("Слишком длинная строка");
+        }
+        byte[] bytes = new byte[(int) (length - 1)];
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
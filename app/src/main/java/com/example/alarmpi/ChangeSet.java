@@ -0,0 +1,26 @@
+package com.example.alarmpi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Изменения на сервере с момента последней синхронизации
+public class ChangeSet {
+    private final List<Reminder> changed = new ArrayList<>();
+    private final List<String> deletedIds = new ArrayList<>();
+    private long cursor;
+
+    public ChangeSet(long cursor) {
+        this.cursor = cursor;
+    }
+
+    public List<Reminder> getChanged() { return changed; }
+    public List<String> getDeletedIds() { return deletedIds; }
+
+    // Версия сервера, до которой включительно получены изменения
+    public long getCursor() { return cursor; }
+    public void setCursor(long cursor) { this.cursor = cursor; }
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && deletedIds.isEmpty();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.alarmpi;
+
+import java.io.IOException;
+import java.util.function.LongSupplier;
+
+// Предохранитель для одного адреса сервера.
+// После FAILURE_THRESHOLD ошибок подряд размыкается: запросы сразу получают
+// OpenException, не занимая сетевой поток на время таймаута. По истечении паузы
+// пропускается один пробный запрос (полуоткрытое состояние): успех замыкает
+// предохранитель, ошибка размыкает его снова с удвоенной паузой.
+// Таймаут запроса считается по сглаженному времени до заголовков ответа (EWMA,
+// как RTO в TCP): srtt + 4 * rttvar, плюс запас на размер тела запроса, в пределах
+// [MIN_TIMEOUT_MS, MAX_TIMEOUT_MS]. Каждый таймаут подряд удваивает его
+// (RFC 6298, 5.5), успешный ответ сбрасывает: иначе после серии быстрых мелких
+// запросов большой пакет не уложился бы в таймаут ни разу.
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // Запрос не отправлен: предохранитель разомкнут
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(long retryAfterMs) {
+            super("Сервер недоступен, повтор через " + (retryAfterMs + 999) / 1000 + " с");
+        }
+    }
+
+    static final int FAILURE_THRESHOLD = 3;
+    static final long INITIAL_OPEN_MS = 5000;
+    static final long MAX_OPEN_MS = 5 * 60 * 1000;
+    static final int MIN_TIMEOUT_MS = 1000;
+    static final int MAX_TIMEOUT_MS = 10000;
+    // Запас на передачу и обработку тела запроса сервером
+    static final int BODY_ALLOWANCE_MS_PER_KB = 10;
+
+    private final int initialTimeoutMs;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openUntil = 0;
+    private long openDurationMs = INITIAL_OPEN_MS;
+    private boolean probeInFlight = false;
+
+    // Сглаженное время ответа и его разброс; srtt < 0 - замеров ещё не было
+    private double srtt = -1;
+    private double rttvar = 0;
+    // Множитель таймаута после таймаутов подряд (1, 2, 4, ...)
+    private int backoff = 1;
+
+    public CircuitBreaker(int initialTimeoutMs) {
+        this(initialTimeoutMs, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int initialTimeoutMs, LongSupplier clock) {
+        this.initialTimeoutMs = initialTimeoutMs;
+        this.clock = clock;
+    }
+
+    // Можно ли отправить запрос сейчас. В полуоткрытом состоянии - только один пробный.
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() < openUntil) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess(long rttMs) {
+        updateRtt(rttMs);
+        backoff = 1;
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+        openDurationMs = INITIAL_OPEN_MS;
+        probeInFlight = false;
+    }
+
+    public void onFailure() {
+        onFailure(false);
+    }
+
+    // timedOut - запрос не дождался ответа: следующий получит вдвое больший таймаут
+    public synchronized void onFailure(boolean timedOut) {
+        if (timedOut && backoff < MAX_TIMEOUT_MS / MIN_TIMEOUT_MS) {
+            backoff *= 2;
+        }
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            state = State.OPEN;
+            openUntil = clock.getAsLong() + openDurationMs;
+            openDurationMs = Math.min(MAX_OPEN_MS, openDurationMs * 2);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // Сколько ещё ждать пробного запроса (0, если можно отправлять)
+    public synchronized long getRetryAfterMs() {
+        return state == State.OPEN ? Math.max(0, openUntil - clock.getAsLong()) : 0;
+    }
+
+    public int getTimeoutMs() {
+        return getTimeoutMs(0);
+    }
+
+    // Таймаут запроса с телом bodyBytes байт
+    public synchronized int getTimeoutMs(int bodyBytes) {
+        long timeout = srtt < 0 ? initialTimeoutMs : Math.round(srtt + 4 * rttvar);
+        timeout = (Math.max(MIN_TIMEOUT_MS, timeout) + (long) bodyBytes / 1024 * BODY_ALLOWANCE_MS_PER_KB) * backoff;
+        return (int) Math.min(MAX_TIMEOUT_MS, timeout);
+    }
+
+    // RFC 6298: alpha = 1/8, beta = 1/4
+    private void updateRtt(long rttMs) {
+        if (srtt < 0) {
+            srtt = rttMs;
+            rttvar = rttMs / 2.0;
+        } else {
+            rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rttMs);
+            srtt = 0.875 * srtt + 0.125 * rttMs;
+        }
+    }
+}
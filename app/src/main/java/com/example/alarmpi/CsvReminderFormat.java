@@ -0,0 +1,281 @@
+package com.example.alarmpi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+// Таблица CSV (RFC 4180): первая строка - названия столбцов, дальше по напоминанию в строке.
+//   id,title,description,dateTime,isActive,recurrence
+//   1760000000000,Полить цветы,"Фикус, кактусы",2026-01-05T07:00:00+01:00,true,FREQ=DAILY
+// Столбцы ищутся по названию (есть русские и календарные синонимы), порядок любой;
+// обязательны только заголовок и дата. Разделитель - запятая или точка с запятой
+// (так сохраняет русский Excel), определяется по первой строке. Поля в кавычках
+// могут содержать разделитель, кавычки ("") и переносы строк.
+// Экспорт пишется с BOM, чтобы Excel открыл UTF-8 с кириллицей.
+public class CsvReminderFormat implements ReminderFileFormat {
+
+    private static final String[] COLUMNS = {"id", "title", "description", "dateTime", "isActive", "recurrence"};
+    private static final Map<String, String> ALIASES = new HashMap<>();
+    // Форматы даты при импорте, по очереди; первый - формат экспорта
+    private static final String[] DATE_PATTERNS = {
+            "yyyy-MM-dd'T'HH:mm:ssXXX", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd'T'HH:mm",
+            "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm", "dd.MM.yyyy HH:mm:ss", "dd.MM.yyyy HH:mm",
+            "yyyy-MM-dd", "dd.MM.yyyy"
+    };
+
+    static {
+        for (String column : COLUMNS) {
+            ALIASES.put(column.toLowerCase(Locale.ROOT), column);
+        }
+        ALIASES.put("summary", "title");
+        ALIASES.put("subject", "title");
+        ALIASES.put("заголовок", "title");
+        ALIASES.put("название", "title");
+        ALIASES.put("описание", "description");
+        ALIASES.put("notes", "description");
+        ALIASES.put("date", "dateTime");
+        ALIASES.put("start", "dateTime");
+        ALIASES.put("dtstart", "dateTime");
+        ALIASES.put("дата", "dateTime");
+        ALIASES.put("active", "isActive");
+        ALIASES.put("активно", "isActive");
+        ALIASES.put("rrule", "recurrence");
+        ALIASES.put("повтор", "recurrence");
+    }
+
+    private final SimpleDateFormat[] dateFormats = new SimpleDateFormat[DATE_PATTERNS.length];
+    private char delimiter = ',';
+
+    public CsvReminderFormat() {
+        this(TimeZone.getDefault());
+    }
+
+    // zone - часовой пояс дат без смещения и экспорта
+    public CsvReminderFormat(TimeZone zone) {
+        for (int i = 0; i < DATE_PATTERNS.length; i++) {
+            dateFormats[i] = new SimpleDateFormat(DATE_PATTERNS[i], Locale.ROOT);
+            dateFormats[i].setTimeZone(zone);
+            dateFormats[i].setLenient(false);
+        }
+    }
+
+    @Override
+    public String getMimeType() {
+        return "text/csv";
+    }
+
+    @Override
+    public String getExtension() {
+        return "csv";
+    }
+
+    @Override
+    public int read(Reader in, ReminderJsonReader.ChunkListener listener) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        skipBom(reader);
+        delimiter = detectDelimiter(reader);
+
+        List<String> header = readRecord(reader);
+        if (header == null) {
+            return 0;
+        }
+        // Номер столбца по каноническому названию
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String column = ALIASES.get(header.get(i).trim().toLowerCase(Locale.ROOT));
+            if (column != null && !columns.containsKey(column)) {
+                columns.put(column, i);
+            }
+        }
+        if (!columns.containsKey("title") || !columns.containsKey("dateTime")) {
+            throw new IOException("В CSV нет столбцов заголовка и даты");
+        }
+
+        List<Reminder> chunk = new ArrayList<>(ReminderJsonReader.CHUNK_SIZE);
+        int skipped = 0;
+        List<String> record;
+        while ((record = readRecord(reader)) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                continue; // пустая строка
+            }
+            Reminder reminder = toReminder(record, columns);
+            if (reminder == null) {
+                skipped++;
+                continue;
+            }
+            chunk.add(reminder);
+            if (chunk.size() == ReminderJsonReader.CHUNK_SIZE) {
+                listener.onChunk(chunk);
+                chunk = new ArrayList<>(ReminderJsonReader.CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            listener.onChunk(chunk);
+        }
+        return skipped;
+    }
+
+    private Reminder toReminder(List<String> record, Map<String, Integer> columns) {
+        String title = field(record, columns, "title");
+        long time = parseDate(field(record, columns, "dateTime"));
+        if (title == null || time < 0) {
+            return null;
+        }
+        String description = field(record, columns, "description");
+        String id = field(record, columns, "id");
+        String active = field(record, columns, "isActive");
+        boolean isActive = active == null || !(active.equalsIgnoreCase("false") || active.equals("0")
+                || active.equalsIgnoreCase("нет") || active.equalsIgnoreCase("no"));
+        Reminder reminder = id != null
+                ? new Reminder(id, title, description, new Date(time), isActive)
+                : new Reminder(title, description, new Date(time));
+        reminder.setActive(isActive);
+        reminder.setRecurrence(ReminderJsonReader.parseRecurrence(field(record, columns, "recurrence")));
+        return reminder;
+    }
+
+    // Значение столбца без пробелов по краям; null - столбца нет или он пуст
+    private static String field(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        for (SimpleDateFormat format : dateFormats) {
+            ParsePosition position = new ParsePosition(0);
+            Date date = format.parse(value, position);
+            if (date != null && position.getIndex() == value.length()) {
+                return date.getTime();
+            }
+        }
+        return -1;
+    }
+
+    // Одна запись; переносы строк внутри кавычек - часть поля. null - конец файла.
+    private List<String> readRecord(BufferedReader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == delimiter) {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        record.add(field.toString());
+        return record;
+    }
+
+    private static void skipBom(BufferedReader reader) throws IOException {
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+    }
+
+    // По первой строке: точка с запятой, если её там больше, чем запятых
+    private static char detectDelimiter(BufferedReader reader) throws IOException {
+        reader.mark(8192);
+        int commas = 0;
+        int semicolons = 0;
+        int c;
+        int read = 0;
+        while ((c = reader.read()) != -1 && c != '\n' && ++read < 8192) {
+            if (c == ',') {
+                commas++;
+            } else if (c == ';') {
+                semicolons++;
+            }
+        }
+        reader.reset();
+        return semicolons > commas ? ';' : ',';
+    }
+
+    @Override
+    public void writeHeader(Writer out) throws IOException {
+        out.write('\uFEFF');
+        out.write(String.join(",", COLUMNS));
+        out.write("\r\n");
+    }
+
+    @Override
+    public void write(Writer out, Reminder reminder) throws IOException {
+        Date dateTime = reminder.getDateTime();
+        writeField(out, reminder.getId());
+        out.write(',');
+        writeField(out, reminder.getTitle());
+        out.write(',');
+        writeField(out, reminder.getDescription());
+        out.write(',');
+        writeField(out, dateTime != null ? dateFormats[0].format(dateTime) : null);
+        out.write(',');
+        out.write(reminder.isActive() ? "true" : "false");
+        out.write(',');
+        writeField(out, reminder.isRecurring() ? reminder.getRecurrence().toString() : null);
+        out.write("\r\n");
+    }
+
+    @Override
+    public void writeFooter(Writer out) {
+        // У CSV нет окончания
+    }
+
+    private static void writeField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == ';' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
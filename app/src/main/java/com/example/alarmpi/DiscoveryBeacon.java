@@ -0,0 +1,96 @@
+package com.example.alarmpi;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+// Поиск сервера широковещательным UDP-запросом в локальной сети.
+// Телефон рассылает "ALARMPI_DISCOVER" на порт PORT, сервер отвечает на адрес
+// отправителя строкой "ALARMPI <порт HTTP> [путь API]", например
+// "ALARMPI 5000 /api/reminders". Адрес сервера берётся из ответного пакета.
+// Запрос повторяется в середине окна на случай потери пакета.
+public class DiscoveryBeacon {
+
+    public static final int PORT = 5001;
+    static final String REQUEST = "ALARMPI_DISCOVER";
+    static final String REPLY_PREFIX = "ALARMPI";
+    static final String DEFAULT_PATH = "/api/reminders";
+
+    public interface Listener {
+        // Вызывается из потока поиска для каждого ответа
+        void onFound(String url);
+    }
+
+    private DiscoveryBeacon() {
+    }
+
+    // Разослать запрос на target:port и собирать ответы windowMs миллисекунд
+    public static void search(InetAddress target, int port, long windowMs, Listener listener) throws IOException {
+        byte[] request = REQUEST.getBytes(StandardCharsets.US_ASCII);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setBroadcast(true);
+            DatagramPacket packet = new DatagramPacket(request, request.length, target, port);
+            socket.send(packet);
+
+            long start = System.nanoTime();
+            long resendAt = windowMs / 2;
+            boolean resent = false;
+            byte[] buffer = new byte[512];
+            while (true) {
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                if (elapsed >= windowMs) {
+                    return;
+                }
+                if (!resent && elapsed >= resendAt) {
+                    socket.send(packet);
+                    resent = true;
+                }
+                long wait = (resent ? windowMs : resendAt) - elapsed;
+                socket.setSoTimeout((int) Math.max(1, wait));
+                DatagramPacket reply = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(reply);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                String url = parseReply(reply.getAddress(),
+                        new String(reply.getData(), reply.getOffset(), reply.getLength(), StandardCharsets.UTF_8));
+                if (url != null) {
+                    listener.onFound(url);
+                }
+            }
+        }
+    }
+
+    // Адрес API по ответу сервера; null - пакет не от сервера alarmPi
+    static String parseReply(InetAddress sender, String reply) {
+        String[] parts = reply.trim().split("\\s+");
+        if (parts.length < 2 || !REPLY_PREFIX.equals(parts[0])) {
+            return null;
+        }
+        int port;
+        try {
+            port = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (port <= 0 || port > 65535) {
+            return null;
+        }
+        String path = parts.length > 2 && parts[2].startsWith("/") ? parts[2] : DEFAULT_PATH;
+        return httpUrl(sender, port, path);
+    }
+
+    // http://host:port/path; IPv6-адрес - в квадратных скобках и без зоны
+    static String httpUrl(InetAddress address, int port, String path) {
+        String host = address.getHostAddress();
+        if (host.indexOf(':') >= 0) {
+            int zone = host.indexOf('%');
+            host = "[" + (zone >= 0 ? host.substring(0, zone) : host) + "]";
+        }
+        return "http://" + host + ":" + port + path;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.alarmpi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Параллельная проверка адресов-кандидатов сервера.
+// Каждый адрес опрашивается сразу, как только найден; время ответа - лучшее из
+// PROBES_PER_ENDPOINT запросов HEAD (первый включает установку соединения).
+// Результат - доступные адреса по возрастанию времени ответа.
+public class EndpointProber {
+
+    // Доступный адрес и измеренное время ответа
+    public static class Result {
+        private final String url;
+        private final long rttMs;
+
+        Result(String url, long rttMs) {
+            this.url = url;
+            this.rttMs = rttMs;
+        }
+
+        public String getUrl() { return url; }
+        public long getRttMs() { return rttMs; }
+    }
+
+    static final int PROBES_PER_ENDPOINT = 2;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final int timeoutMs;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "EndpointProber-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Адрес -> проверка; порядок добавления сохраняется для равных RTT
+    private final Map<String, Future<Long>> probes = new LinkedHashMap<>();
+
+    public EndpointProber(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    // Начать проверку адреса (повторно один и тот же адрес не проверяется)
+    public synchronized void probe(String url) {
+        if (url == null || probes.containsKey(url) || executor.isShutdown()) {
+            return;
+        }
+        probes.put(url, executor.submit(() -> measure(url)));
+    }
+
+    // Дождаться начатых проверок (не дольше waitMs) и вернуть доступные адреса,
+    // быстрые первыми. Не успевшие ответить считаются недоступными.
+    public List<Result> awaitRanked(long waitMs) {
+        Map<String, Future<Long>> started;
+        synchronized (this) {
+            started = new LinkedHashMap<>(probes);
+            executor.shutdown();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+        List<Result> results = new ArrayList<>();
+        for (Map.Entry<String, Future<Long>> probe : started.entrySet()) {
+            long left = Math.max(0, deadline - System.nanoTime());
+            try {
+                Long rtt = probe.getValue().get(left, TimeUnit.NANOSECONDS);
+                if (rtt != null) {
+                    results.add(new Result(probe.getKey(), rtt));
+                }
+            } catch (TimeoutException e) {
+                probe.getValue().cancel(true);
+            } catch (Exception e) {
+                // адрес недоступен
+            }
+        }
+        executor.shutdownNow();
+        Collections.sort(results, (a, b) -> Long.compare(a.getRttMs(), b.getRttMs()));
+        return results;
+    }
+
+    // Лучшее время ответа адреса; null - сервер не ответил успешно.
+    // Запрос HEAD: время не зависит от размера списка напоминаний на сервере.
+    // Сервер без HEAD отвечает 405 - он доступен, и время ответа тоже годится.
+    private Long measure(String url) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < PROBES_PER_ENDPOINT; i++) {
+            long start = System.nanoTime();
+            try {
+                HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+                conn.setRequestMethod("HEAD");
+                conn.setConnectTimeout(timeoutMs);
+                conn.setReadTimeout(timeoutMs);
+                int code = conn.getResponseCode();
+                // Дочитываем тело ответа об ошибке, чтобы соединение вернулось в keep-alive кэш
+                InputStream body = code < 400 ? conn.getInputStream() : conn.getErrorStream();
+                if (body != null) {
+                    try (InputStream in = body) {
+                        byte[] buffer = new byte[1024];
+                        while (in.read(buffer) != -1) {
+                            // пропускаем
+                        }
+                    }
+                }
+                if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_BAD_METHOD) {
+                    return null;
+                }
+            } catch (IOException e) {
+                return null;
+            }
+            best = Math.min(best, (System.nanoTime() - start) / 1_000_000);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.alarmpi;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// HTTP-запросы к серверу с переиспользованием соединений (HTTP/1.1 keep-alive).
+// Соединение возвращается в пул HttpURLConnection только если тело ответа
+// (или потока ошибки) прочитано до конца и поток закрыт, поэтому ответ
+// всегда дочитывается полностью. disconnect() вызывается только при сбое,
+// когда соединение в неизвестном состоянии и переиспользовать его нельзя.
+// Ответы принимаются сжатыми (Accept-Encoding: gzip) и распаковываются потоково;
+// тело запроса сжимается, если вызывающий знает, что сервер это понимает.
+public class HttpTransport {
+
+    // Меньшие тела не сжимаем: выигрыш меньше заголовка gzip и затрат CPU
+    public static final int GZIP_MIN_BYTES = 1024;
+
+    // Код и заголовки ответа
+    public static class ResponseHead {
+        private final int code;
+        private final Map<String, String> headers;
+
+        ResponseHead(int code, Map<String, String> headers) {
+            this.code = code;
+            this.headers = headers;
+        }
+
+        public int getCode() { return code; }
+        public boolean isOk() { return code == HttpURLConnection.HTTP_OK; }
+        public String getHeader(String name) { return headers.get(name); }
+        public String getContentType() { return headers.get("Content-Type"); }
+    }
+
+    public static class Response extends ResponseHead {
+        private final byte[] body;
+
+        Response(ResponseHead head, byte[] body) {
+            super(head.code, head.headers);
+            this.body = body;
+        }
+
+        public byte[] getBody() { return body; }
+        public String getBodyAsString() { return new String(body, StandardCharsets.UTF_8); }
+    }
+
+    public Response get(String url, int timeoutMs) throws IOException {
+        return execute("GET", url, null, null, timeoutMs);
+    }
+
+    public Response post(String url, byte[] body, String contentType, int timeoutMs) throws IOException {
+        return execute("POST", url, body, contentType, timeoutMs);
+    }
+
+    // Обработчик тела ответа, читающий его потоково, без буферизации целиком.
+    // Тело уже распаковано, если сервер прислал его сжатым.
+    public interface BodyHandler<T> {
+        T handle(ResponseHead head, InputStream body) throws IOException;
+    }
+
+    public Response execute(String method, String url, byte[] body, String contentType, int timeoutMs)
+            throws IOException {
+        return execute(method, url, body, contentType, timeoutMs,
+                (head, stream) -> new Response(head, readFully(stream)));
+    }
+
+    public <T> T execute(String method, String url, byte[] body, String contentType, int timeoutMs,
+                         BodyHandler<T> handler) throws IOException {
+        return execute(method, url, body, contentType, false, "application/json", timeoutMs, handler);
+    }
+
+    // gzipBody - сервер принимает сжатые запросы: тело от GZIP_MIN_BYTES уходит в gzip.
+    // accept - форматы ответа, которые понимает клиент (заголовок Accept).
+    public <T> T execute(String method, String url, byte[] body, String contentType, boolean gzipBody,
+                         String accept, int timeoutMs, BodyHandler<T> handler) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            conn.setRequestMethod(method);
+            conn.setRequestProperty("Connection", "keep-alive");
+            conn.setRequestProperty("Accept", accept);
+            // Заданный явно заголовок отключает прозрачную распаковку на Android -
+            // распаковываем сами, одинаково на всех версиях
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            conn.setConnectTimeout(timeoutMs);
+            conn.setReadTimeout(timeoutMs);
+            conn.setUseCaches(false);
+
+            if (body != null) {
+                conn.setDoOutput(true);
+                conn.setRequestProperty("Content-Type", contentType);
+                if (gzipBody && body.length >= GZIP_MIN_BYTES) {
+                    body = gzip(body);
+                    conn.setRequestProperty("Content-Encoding", "gzip");
+                }
+                try (OutputStream os = conn.getOutputStream()) {
+                    os.write(body);
+                }
+            }
+
+            int code = conn.getResponseCode();
+            InputStream stream = code >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? conn.getErrorStream() : conn.getInputStream();
+            ResponseHead head = new ResponseHead(code, readHeaders(conn));
+            if (stream == null) {
+                return handler.handle(head, new ByteArrayInputStream(new byte[0]));
+            }
+            try (InputStream raw = stream.markSupported() ? stream : new BufferedInputStream(stream)) {
+                // Пустое тело с Content-Encoding: gzip (204, ответ без данных) - не gzip-поток:
+                // GZIPInputStream бросил бы EOFException на отсутствующем заголовке
+                boolean gzipped = "gzip".equalsIgnoreCase(head.getHeader("Content-Encoding"))
+                        && !"0".equals(head.getHeader("Content-Length")) && !isEmpty(raw);
+                InputStream in = gzipped ? new GZIPInputStream(raw, 8192) : raw;
+                T result = handler.handle(head, in);
+                // Обработчик мог остановиться раньше конца тела - дочитываем остаток
+                drain(in);
+                if (gzipped) {
+                    drain(raw);
+                }
+                return result;
+            }
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    private static Map<String, String> readHeaders(HttpURLConnection conn) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> entry : conn.getHeaderFields().entrySet()) {
+            List<String> values = entry.getValue();
+            if (entry.getKey() != null && values != null && !values.isEmpty()) {
+                headers.put(entry.getKey(), values.get(values.size() - 1));
+            }
+        }
+        return headers;
+    }
+
+    public static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    // Нет ни одного байта; поток должен поддерживать mark
+    private static boolean isEmpty(InputStream in) throws IOException {
+        in.mark(1);
+        int first = in.read();
+        in.reset();
+        return first == -1;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) != -1) {
+            // пропускаем
+        }
+    }
+
+    public static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
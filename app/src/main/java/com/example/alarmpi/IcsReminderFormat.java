@@ -0,0 +1,367 @@
+package com.example.alarmpi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+// Календарь iCalendar (RFC 5545). Каждое событие VEVENT - напоминание:
+//   SUMMARY     - заголовок, DESCRIPTION - описание
+//   DTSTART     - время (UTC "...Z", с TZID или местное; дата без времени - ALL_DAY_HOUR утра)
+//   RRULE       - повтор, если он укладывается в RecurrenceRule, иначе событие разовое
+//   UID         - у экспортированных приложением "<id>@alarmpi": повторный импорт обновляет их
+//   X-ALARMPI-ACTIVE:FALSE - выключенное напоминание
+// Вложенные компоненты (VALARM) и отменённые события (STATUS:CANCELLED) пропускаются.
+// Строки читаются по одной с учётом переносов (строка с пробела продолжает предыдущую).
+public class IcsReminderFormat implements ReminderFileFormat {
+
+    static final String UID_SUFFIX = "@alarmpi";
+    private static final int ALL_DAY_HOUR = 9;
+    // Длина строки в октетах, после которой она переносится
+    private static final int FOLD_OCTETS = 75;
+    private static final String[] DAY_CODES = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+
+    private final TimeZone zone;
+    // Календари по поясам для разбора дат: у файла обычно один-два пояса на все события
+    private final Map<String, Calendar> calendars = new HashMap<>();
+
+    public IcsReminderFormat() {
+        this(TimeZone.getDefault());
+    }
+
+    // zone - часовой пояс для местного времени без TZID и для экспорта повторяющихся
+    public IcsReminderFormat(TimeZone zone) {
+        this.zone = zone;
+    }
+
+    @Override
+    public String getMimeType() {
+        return "text/calendar";
+    }
+
+    @Override
+    public String getExtension() {
+        return "ics";
+    }
+
+    // Поля текущего события
+    private static class Event {
+        String uid;
+        String title;
+        String description;
+        long time = -1;
+        String rule;
+        boolean active = true;
+        boolean cancelled = false;
+    }
+
+    @Override
+    public int read(Reader in, ReminderJsonReader.ChunkListener listener) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        List<Reminder> chunk = new ArrayList<>(ReminderJsonReader.CHUNK_SIZE);
+        int skipped = 0;
+        Event event = null;
+        int nested = 0;
+        String line = reader.readLine();
+        while (line != null) {
+            // Строки, начинающиеся с пробела или табуляции, - продолжение этой
+            StringBuilder unfolded = new StringBuilder(line);
+            String next = reader.readLine();
+            while (next != null && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+                unfolded.append(next, 1, next.length());
+                next = reader.readLine();
+            }
+            line = next;
+
+            String content = unfolded.toString();
+            int colon = valueSeparator(content);
+            if (colon < 0) {
+                continue;
+            }
+            String head = content.substring(0, colon);
+            String value = content.substring(colon + 1);
+            int semicolon = head.indexOf(';');
+            String name = (semicolon < 0 ? head : head.substring(0, semicolon)).trim().toUpperCase(Locale.ROOT);
+            String params = semicolon < 0 ? "" : head.substring(semicolon + 1);
+
+            if ("BEGIN".equals(name)) {
+                if (event != null) {
+                    nested++;
+                } else if ("VEVENT".equalsIgnoreCase(value.trim())) {
+                    event = new Event();
+                }
+            } else if ("END".equals(name)) {
+                if (event != null && nested > 0) {
+                    nested--;
+                } else if (event != null && "VEVENT".equalsIgnoreCase(value.trim())) {
+                    Reminder reminder = toReminder(event);
+                    event = null;
+                    if (reminder == null) {
+                        skipped++;
+                        continue;
+                    }
+                    chunk.add(reminder);
+                    if (chunk.size() == ReminderJsonReader.CHUNK_SIZE) {
+                        listener.onChunk(chunk);
+                        chunk = new ArrayList<>(ReminderJsonReader.CHUNK_SIZE);
+                    }
+                }
+            } else if (event != null && nested == 0) {
+                readProperty(event, name, params, value);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            listener.onChunk(chunk);
+        }
+        return skipped;
+    }
+
+    private void readProperty(Event event, String name, String params, String value) {
+        switch (name) {
+            case "UID":
+                event.uid = value.trim();
+                break;
+            case "SUMMARY":
+                event.title = unescape(value);
+                break;
+            case "DESCRIPTION":
+                event.description = unescape(value);
+                break;
+            case "DTSTART":
+                event.time = parseDateTime(params, value.trim());
+                break;
+            case "RRULE":
+                event.rule = value.trim();
+                break;
+            case "STATUS":
+                event.cancelled = "CANCELLED".equalsIgnoreCase(value.trim());
+                break;
+            case "X-ALARMPI-ACTIVE":
+                event.active = !"FALSE".equalsIgnoreCase(value.trim());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Reminder toReminder(Event event) {
+        if (event.cancelled || event.time < 0 || event.title == null || event.title.trim().isEmpty()) {
+            return null;
+        }
+        String description = event.description != null && !event.description.isEmpty() ? event.description : null;
+        Reminder reminder;
+        if (event.uid != null && event.uid.endsWith(UID_SUFFIX)) {
+            // Экспортированное приложением - с прежним id, чтобы не появилось копии
+            String id = event.uid.substring(0, event.uid.length() - UID_SUFFIX.length());
+            reminder = new Reminder(id, event.title, description, new Date(event.time), event.active);
+        } else {
+            reminder = new Reminder(event.title, description, new Date(event.time));
+            reminder.setActive(event.active);
+        }
+        reminder.setRecurrence(parseRule(event.rule, event.time));
+        return reminder;
+    }
+
+    // Правило в пределах RecurrenceRule; COUNT, UNTIL, BYMONTHDAY и т.п. не поддерживаются -
+    // такое событие импортируется разовым, а не повторяется бесконечно или не так
+    private RecurrenceRule parseRule(String rule, long start) {
+        if (rule == null) {
+            return null;
+        }
+        rule = rule.toUpperCase(Locale.ROOT);
+        boolean hasDays = false;
+        boolean hasInterval = false;
+        for (String part : rule.split(";")) {
+            String key = part.contains("=") ? part.substring(0, part.indexOf('=')).trim() : part.trim();
+            if ("BYDAY".equals(key)) {
+                hasDays = true;
+            } else if ("INTERVAL".equals(key)) {
+                hasInterval = !part.trim().equals("INTERVAL=1");
+            } else if (!"FREQ".equals(key) && !"WKST".equals(key)) {
+                return null;
+            }
+        }
+        if (hasDays && !rule.contains("FREQ=WEEKLY")) {
+            // "Каждый день по будням" (FREQ=DAILY;BYDAY=MO,...) - то же, что еженедельно по этим дням
+            if (!rule.contains("FREQ=DAILY") || hasInterval) {
+                return null;
+            }
+            rule = rule.replace("FREQ=DAILY", "FREQ=WEEKLY");
+        }
+        if (!hasDays && rule.contains("FREQ=WEEKLY")) {
+            // Без BYDAY - в день недели первого срабатывания
+            Calendar calendar = Calendar.getInstance(zone, Locale.ROOT);
+            calendar.setTimeInMillis(start);
+            rule = rule + ";BYDAY=" + DAY_CODES[(calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7];
+        }
+        return ReminderJsonReader.parseRecurrence(rule);
+    }
+
+    // 20260105T070000Z, 20260105T070000 (TZID из параметров или местное), 20260105
+    long parseDateTime(String params, String value) {
+        TimeZone timeZone = zone;
+        int tzid = params.toUpperCase(Locale.ROOT).indexOf("TZID=");
+        if (tzid >= 0) {
+            String id = params.substring(tzid + 5);
+            int end = id.indexOf(';');
+            id = (end >= 0 ? id.substring(0, end) : id).replace("\"", "");
+            // Неизвестный пояс (например, "Russian Standard Time" из Outlook) - местное время
+            TimeZone named = TimeZone.getTimeZone(id);
+            if (!"GMT".equals(named.getID()) || "GMT".equalsIgnoreCase(id)) {
+                timeZone = named;
+            }
+        }
+        if (value.endsWith("Z")) {
+            timeZone = TimeZone.getTimeZone("UTC");
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            if (value.length() < 8) {
+                return -1;
+            }
+            Calendar calendar = calendars.get(timeZone.getID());
+            if (calendar == null) {
+                calendar = Calendar.getInstance(timeZone, Locale.ROOT);
+                calendar.setLenient(false);
+                calendars.put(timeZone.getID(), calendar);
+            }
+            calendar.clear();
+            int year = Integer.parseInt(value.substring(0, 4));
+            int month = Integer.parseInt(value.substring(4, 6)) - 1;
+            int day = Integer.parseInt(value.substring(6, 8));
+            if (value.length() >= 15 && value.charAt(8) == 'T') {
+                calendar.set(year, month, day, Integer.parseInt(value.substring(9, 11)),
+                        Integer.parseInt(value.substring(11, 13)), Integer.parseInt(value.substring(13, 15)));
+            } else {
+                calendar.set(year, month, day, ALL_DAY_HOUR, 0, 0);
+            }
+            return calendar.getTimeInMillis();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void writeHeader(Writer out) throws IOException {
+        writeLine(out, "BEGIN:VCALENDAR");
+        writeLine(out, "VERSION:2.0");
+        writeLine(out, "PRODID:-//alarmPi//Reminders//RU");
+        writeLine(out, "CALSCALE:GREGORIAN");
+    }
+
+    @Override
+    public void write(Writer out, Reminder reminder) throws IOException {
+        long time = ReminderDueQueue.timeOf(reminder);
+        writeLine(out, "BEGIN:VEVENT");
+        writeLine(out, "UID:" + reminder.getId() + UID_SUFFIX);
+        writeLine(out, "DTSTAMP:" + formatUtc(System.currentTimeMillis()));
+        if (reminder.isRecurring()) {
+            // Повтор считается по местному времени - пояс нужен, чтобы не сдвигался при переходе на летнее
+            writeLine(out, "DTSTART;TZID=" + zone.getID() + ":" + format(time, zone, false));
+            writeLine(out, "RRULE:" + reminder.getRecurrence());
+        } else {
+            writeLine(out, "DTSTART:" + formatUtc(time));
+        }
+        writeLine(out, "SUMMARY:" + escape(reminder.getTitle()));
+        if (reminder.getDescription() != null && !reminder.getDescription().isEmpty()) {
+            writeLine(out, "DESCRIPTION:" + escape(reminder.getDescription()));
+        }
+        if (!reminder.isActive()) {
+            writeLine(out, "X-ALARMPI-ACTIVE:FALSE");
+        }
+        writeLine(out, "END:VEVENT");
+    }
+
+    @Override
+    public void writeFooter(Writer out) throws IOException {
+        writeLine(out, "END:VCALENDAR");
+    }
+
+    // Строки длиннее FOLD_OCTETS байт UTF-8 переносятся, продолжение - с пробела
+    private static void writeLine(Writer out, String line) throws IOException {
+        int octets = 0;
+        int start = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            int size = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate(c) ? 2 : 3;
+            // Суррогатную пару не разрываем
+            if (octets + size > FOLD_OCTETS && !Character.isLowSurrogate(c)) {
+                out.write(line, start, i - start);
+                out.write("\r\n ");
+                start = i;
+                octets = 1;
+            }
+            octets += size;
+        }
+        out.write(line, start, line.length() - start);
+        out.write("\r\n");
+    }
+
+    private String formatUtc(long time) {
+        return format(time, TimeZone.getTimeZone("UTC"), true);
+    }
+
+    private static String format(long time, TimeZone timeZone, boolean utc) {
+        Calendar calendar = Calendar.getInstance(timeZone, Locale.ROOT);
+        calendar.setTimeInMillis(time);
+        return String.format(Locale.ROOT, "%04d%02d%02dT%02d%02d%02d%s",
+                calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND),
+                utc ? "Z" : "");
+    }
+
+    static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case ';': escaped.append("\\;"); break;
+                case ',': escaped.append("\\,"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static String unescape(String text) {
+        StringBuilder plain = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                plain.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                plain.append(c);
+            }
+        }
+        return plain.toString();
+    }
+
+    // Двоеточие между именем с параметрами и значением (в кавычках параметра его нет)
+    private static int valueSeparator(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ':' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.alarmpi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// Исходный формат: JSON, дата строкой в локальном времени сервера.
+// Запрос собирается одним StringBuilder без промежуточных JSONObject,
+// ответ читается потоково через ReminderJsonReader.
+public class JsonReminderCodec implements ReminderCodec {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    private final String datePattern;
+
+    public JsonReminderCodec(String datePattern) {
+        this.datePattern = datePattern;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE + "; charset=UTF-8";
+    }
+
+    // [{"id": ..., "title": ..., "description": ..., "dateTime": ..., "isActive": ...,
+    //   "recurrence": ..., "action": ...}, ...]
+    // Для "patch": {"id": ..., <только изменённые поля>, "action": "patch"}
+    // У повторяющегося напоминания dateTime - первое срабатывание, recurrence - правило
+    // (RecurrenceRule), nextDateTime - ближайшее срабатывание на момент отправки; оно
+    // идёт при любой смене даты или правила, в том числе в "patch" (как в двоичном формате).
+    @Override
+    public byte[] encodeBatch(List<ReminderOperation> operations) {
+        // Один форматтер на весь пакет
+        SimpleDateFormat sdf = new SimpleDateFormat(datePattern, Locale.getDefault());
+        long now = System.currentTimeMillis();
+        StringBuilder json = new StringBuilder(operations.size() * 160 + 2);
+        json.append('[');
+        for (int i = 0; i < operations.size(); i++) {
+            ReminderOperation operation = operations.get(i);
+            Reminder reminder = operation.getReminder();
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":");
+            appendString(json, reminder.getId());
+            // У частичного обновления только изменённые поля
+            if (operation.hasField(ReminderOperation.FIELD_TITLE)) {
+                json.append(",\"title\":");
+                appendString(json, reminder.getTitle());
+            }
+            if (operation.hasField(ReminderOperation.FIELD_DESCRIPTION)) {
+                json.append(",\"description\":");
+                appendString(json, reminder.getDescription());
+            }
+            if (operation.hasField(ReminderOperation.FIELD_DATE_TIME)) {
+                json.append(",\"dateTime\":");
+                appendString(json, reminder.getDateTime() != null ? sdf.format(reminder.getDateTime()) : null);
+            }
+            if (operation.hasField(ReminderOperation.FIELD_ACTIVE)) {
+                json.append(",\"isActive\":").append(reminder.isActive());
+            }
+            if (operation.hasField(ReminderOperation.FIELD_RECURRENCE)) {
+                json.append(",\"recurrence\":");
+                appendString(json, reminder.isRecurring() ? reminder.getRecurrence().toString() : null);
+            }
+            if (reminder.isRecurring() && (operation.hasField(ReminderOperation.FIELD_RECURRENCE)
+                    || operation.hasField(ReminderOperation.FIELD_DATE_TIME))) {
+                json.append(",\"nextDateTime\":");
+                appendString(json, sdf.format(new Date(reminder.nextOccurrence(now))));
+            }
+            json.append(",\"action\":");
+            appendString(json, operation.getAction()); // "add", "update", "patch", "delete"
+            json.append('}');
+        }
+        json.append(']');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public BatchResult decodeBatchResult(InputStream in, List<ReminderOperation> operations) throws IOException {
+        return new ReminderJsonReader(datePattern).readBatchResult(in, operations);
+    }
+
+    @Override
+    public ChangeSet decodeChangeSet(InputStream in, long previousCursor,
+                                     ReminderJsonReader.ChunkListener listener) throws IOException {
+        return new ReminderJsonReader(datePattern).readChangeSet(in, previousCursor, listener);
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
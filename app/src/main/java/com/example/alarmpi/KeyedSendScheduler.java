@@ -0,0 +1,177 @@
+package com.example.alarmpi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Планировщик отправки с очередью на каждое напоминание (ключ - Reminder.getId()).
+// Для одного напоминания в полёте не больше одной операции, поэтому изменения
+// доходят до сервера строго по порядку. Разные напоминания независимы и могут
+// отправляться параллельно. Пока операция ждёт отправки, новые изменения того же
+// напоминания схлопываются в неё (остаётся только последнее состояние,
+// частичные обновления объединяют списки изменённых полей).
+public class KeyedSendScheduler {
+
+    // Операция, готовая к отправке, и записи журнала, которые она закрывает
+    public static class Dispatch {
+        private final String key;
+        private final ReminderOperation operation;
+        private final List<Long> seqs;
+
+        Dispatch(String key, ReminderOperation operation, List<Long> seqs) {
+            this.key = key;
+            this.operation = operation;
+            this.seqs = seqs;
+        }
+
+        public String getKey() { return key; }
+        public ReminderOperation getOperation() { return operation; }
+        public List<Long> getSeqs() { return seqs; }
+    }
+
+    // Очередь одного напоминания: не больше одной операции в полёте и одной ожидающей.
+    // Блокировка - монитор самой очереди, так что разные ключи не мешают друг другу.
+    private static class Lane {
+        ReminderOperation pending;
+        List<Long> pendingSeqs = new ArrayList<>();
+        Dispatch inFlight;
+        boolean removed;
+    }
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    // Поставить операцию в очередь её напоминания.
+    // Возвращает записи журнала, которые больше не нужно отправлять
+    // (добавление и удаление, взаимно уничтожившиеся до отправки).
+    public List<Long> submit(long seq, ReminderOperation operation) {
+        String key = operation.getReminderId();
+        List<Long> cancelled = new ArrayList<>();
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(key, k -> new Lane());
+            synchronized (lane) {
+                if (lane.removed) {
+                    // Очередь только что освободили и убрали - берём новую
+                    continue;
+                }
+                lane.pendingSeqs.add(seq);
+                // Схлопываем только с ожидающей операцией: операция в полёте уже ушла на сервер
+                lane.pending = lane.pending == null ? operation : coalesce(lane.pending, operation);
+                if (lane.pending == null) {
+                    cancelled.addAll(lane.pendingSeqs);
+                    lane.pendingSeqs = new ArrayList<>();
+                    removeIfIdle(key, lane);
+                }
+                return cancelled;
+            }
+        }
+    }
+
+    // Забрать по одной ожидающей операции из каждой свободной очереди (не больше limit)
+    public List<Dispatch> takeReady(int limit) {
+        List<Dispatch> ready = new ArrayList<>();
+        for (Map.Entry<String, Lane> entry : lanes.entrySet()) {
+            if (ready.size() >= limit) {
+                break;
+            }
+            Lane lane = entry.getValue();
+            synchronized (lane) {
+                if (lane.inFlight == null && lane.pending != null) {
+                    lane.inFlight = new Dispatch(entry.getKey(), lane.pending, lane.pendingSeqs);
+                    lane.pending = null;
+                    lane.pendingSeqs = new ArrayList<>();
+                    ready.add(lane.inFlight);
+                }
+            }
+        }
+        return ready;
+    }
+
+    // Операция доставлена (или окончательно отклонена сервером) - очередь свободна
+    public void complete(Dispatch dispatch) {
+        Lane lane = lanes.get(dispatch.getKey());
+        if (lane == null) {
+            return;
+        }
+        synchronized (lane) {
+            if (lane.inFlight == dispatch) {
+                lane.inFlight = null;
+            }
+            removeIfIdle(dispatch.getKey(), lane);
+        }
+    }
+
+    // Операция не доставлена - возвращаем её в начало очереди,
+    // объединяя с изменениями, пришедшими за время отправки
+    public void retry(Dispatch dispatch) {
+        Lane lane = lanes.get(dispatch.getKey());
+        if (lane == null) {
+            return;
+        }
+        synchronized (lane) {
+            if (lane.inFlight != dispatch) {
+                return;
+            }
+            lane.inFlight = null;
+            List<Long> seqs = new ArrayList<>(dispatch.getSeqs());
+            seqs.addAll(lane.pendingSeqs);
+            lane.pendingSeqs = seqs;
+            if (lane.pending == null) {
+                lane.pending = dispatch.getOperation();
+            } else {
+                // Сервер мог успеть принять неудавшийся add, поэтому последующий
+                // delete не отменяем, а отправляем как есть
+                ReminderOperation merged = coalesce(dispatch.getOperation(), lane.pending);
+                if (merged != null) {
+                    lane.pending = merged;
+                }
+            }
+        }
+    }
+
+    // Вызывается под монитором очереди
+    private void removeIfIdle(String key, Lane lane) {
+        if (lane.inFlight == null && lane.pending == null) {
+            lane.removed = true;
+            lanes.remove(key, lane);
+        }
+    }
+
+    public boolean hasPending() {
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                if (lane.pending != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Объединение ещё не отправленной операции с новой для того же напоминания.
+    // null - обе операции взаимно уничтожились (добавили и сразу удалили).
+    static ReminderOperation coalesce(ReminderOperation previous, ReminderOperation next) {
+        String previousAction = previous.getAction();
+        String nextAction = next.getAction();
+
+        if (ReminderOperation.ACTION_ADD.equals(previousAction)) {
+            if (ReminderOperation.ACTION_DELETE.equals(nextAction)) {
+                return null;
+            }
+            // Сервер ещё не знает о напоминании - отправляем add с последним состоянием
+            return new ReminderOperation(next.getReminder(), ReminderOperation.ACTION_ADD);
+        }
+        if (ReminderOperation.ACTION_PATCH.equals(nextAction)) {
+            if (ReminderOperation.ACTION_PATCH.equals(previousAction)) {
+                // Каждая правка - разница с предыдущим состоянием, поэтому объединение
+                // полей с последними значениями - разница с последним принятым сервером
+                return new ReminderOperation(next.getReminder(), ReminderOperation.ACTION_PATCH,
+                        previous.getFields() | next.getFields());
+            }
+            if (ReminderOperation.ACTION_UPDATE.equals(previousAction)) {
+                return new ReminderOperation(next.getReminder(), ReminderOperation.ACTION_UPDATE);
+            }
+        }
+        return next;
+    }
+}
@@ -1,43 +1,105 @@
 package com.example.alarmpi;
 
+import android.Manifest;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
 import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.List;
-
 public class MainActivity extends AppCompatActivity
         implements AddEditReminderDialog.OnReminderSavedListener {
 
+    private static final String TAG = "MainActivity";
+    private static final String PREFERENCES_NAME = "MainActivity";
+    // Разрешение на уведомления уже запрашивалось - повторно не спрашиваем
+    private static final String NOTIFICATIONS_ASKED_KEY = "notifications_asked";
+
     private RecyclerView recyclerView;
     private ReminderAdapter adapter;
-    private List<Reminder> reminderList;
+    private ReminderRepository repository;
+    private RemindersViewModel viewModel;
     private Button deleteButton, addButton, editButton;
     private Button settingsButton; // Новая кнопка настроек
     private ApiService apiService;
+    private ReminderAlarmScheduler alarmScheduler;
+    private View transferLayout;
+    private TextView transferStatusTextView;
+    private ProgressBar transferProgressBar;
+
+    // Выбор файла системным диалогом (Storage Access Framework) - без разрешений на память
+    private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(), this::startImport);
+    private final ActivityResultLauncher<String> exportIcsLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("text/calendar"),
+            uri -> startExport(uri, new IcsReminderFormat()));
+    private final ActivityResultLauncher<String> exportCsvLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("text/csv"),
+            uri -> startExport(uri, new CsvReminderFormat()));
+    private final ActivityResultLauncher<String> notificationPermissionLauncher = registerForActivityResult(
+            new ActivityResultContracts.RequestPermission(), granted -> {
+                if (!granted) {
+                    Toast.makeText(this, "Без уведомлений ошибки синхронизации видны только в приложении. "
+                            + "Разрешение можно включить в настройках телефона", Toast.LENGTH_LONG).show();
+                }
+            });
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Инициализация ApiService
+        // Инициализация ApiService (досылку неотправленного запускает AlarmPiApplication)
         apiService = new ApiService(this);
+        // Список, выделение и загрузка с сервера переживают поворот экрана
+        viewModel = new ViewModelProvider(this).get(RemindersViewModel.class);
 
         // Инициализация RecyclerView
         recyclerView = findViewById(R.id.remindersRecyclerView);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
 
-        // Инициализация списка
-        reminderList = new ArrayList<>();
-        adapter = new ReminderAdapter(reminderList, this);
+        // Напоминания хранятся на устройстве и загружаются в фоне
+        repository = viewModel.getRepository();
+        // Ближайшее напоминание срабатывает и на телефоне
+        alarmScheduler = ReminderAlarmScheduler.getInstance(this);
+        adapter = new ReminderAdapter(repository, viewModel.getPager(), this);
+        adapter.restoreSelection(viewModel.getSelectedId());
         recyclerView.setAdapter(adapter);
+        // Новый экземпляр Activity сразу получает уже загруженное окно
+        viewModel.getWindow().observe(this, adapter::submitSnapshot);
+
+        // Поиск идёт в фоне по индексу; каждое нажатие отменяет предыдущий запрос
+        EditText searchEditText = findViewById(R.id.searchEditText);
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                viewModel.search(s.toString());
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
 
         // Кнопки
         deleteButton = findViewById(R.id.deleteButton);
@@ -53,33 +115,78 @@ public class MainActivity extends AppCompatActivity
         // Обработчик для кнопки настроек сервера
         settingsButton.setOnClickListener(v -> showServerSettingsDialog());
 
+        // Импорт и экспорт идут в RemindersViewModel и переживают поворот экрана
+        findViewById(R.id.transferButton).setOnClickListener(v -> showTransferDialog());
+        transferLayout = findViewById(R.id.transferLayout);
+        transferStatusTextView = findViewById(R.id.transferStatusTextView);
+        transferProgressBar = findViewById(R.id.transferProgressBar);
+        transferLayout.setOnClickListener(v -> confirmCancelTransfer());
+        viewModel.getTransferProgress().observe(this, this::showTransferProgress);
+
         // Слушатель выбора элемента
         adapter.setOnItemClickListener(new ReminderAdapter.OnItemClickListener() {
             @Override
             public void onItemClick(int position) {
+                viewModel.setSelectedId(adapter.getReminderAt(position).getId());
                 updateButtonStates(true);
             }
 
             @Override
             public void onSwitchChanged(int position, boolean isChecked) {
-                reminderList.get(position).setActive(isChecked);
+                // Хранилище не меняет объекты на месте - сохраняем изменённую копию
+                Reminder previous = adapter.getReminderAt(position);
+                Reminder reminder = new Reminder(previous);
+                reminder.setActive(isChecked);
+                repository.save(reminder);
+                alarmScheduler.schedule(reminder);
                 String state = isChecked ? "включено" : "выключено";
                 Toast.makeText(MainActivity.this,
                         "Напоминание " + state,
                         Toast.LENGTH_SHORT).show();
 
-                // Отправляем изменение статуса на сервер
-                if (position >= 0 && position < reminderList.size()) {
-                    apiService.sendReminder(reminderList.get(position), "update");
-                }
+                // Отправляем на сервер только изменение статуса
+                apiService.sendReminderChanges(previous, reminder);
             }
         });
 
-        // Добавляем тестовые данные
-        addTestData();
+        // С сервера - только изменения, и только при первом создании экрана
+        viewModel.startInitialSync();
+
+        // Кнопки удаления и редактирования доступны, только если что-то выбрано
+        updateButtonStates(viewModel.getSelectedId() != null);
+
+        requestNotificationPermissionOnce();
+    }
+
+    // Ошибки синхронизации показываются уведомлением - с Android 13 на него нужно разрешение.
+    // Спрашиваем один раз: после отказа оно включается в настройках, а не запросом при каждом запуске.
+    private void requestNotificationPermissionOnce() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU
+                || checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        SharedPreferences preferences = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+        if (preferences.getBoolean(NOTIFICATIONS_ASKED_KEY, false)) {
+            return;
+        }
+        preferences.edit().putBoolean(NOTIFICATIONS_ASKED_KEY, true).apply();
+        notificationPermissionLauncher.launch(Manifest.permission.POST_NOTIFICATIONS);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Пока список на экране, изменения с сервера приходят сами, без опроса
+        apiService.subscribeToChanges();
+    }
 
-        // Изначально кнопки удаления и редактирования выключены
-        updateButtonStates(false);
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // При повороте экрана подписка остаётся - onStart нового экземпляра её подхватит
+        if (!isChangingConfigurations()) {
+            ApiService.unsubscribeFromChanges();
+        }
     }
 
     // Метод для отображения диалога настроек сервера
@@ -88,13 +195,86 @@ public class MainActivity extends AppCompatActivity
         dialog.show(getSupportFragmentManager(), "server_settings_dialog");
     }
 
+    private void showTransferDialog() {
+        String[] items = {"Импорт из файла (.ics, .csv)", "Экспорт в календарь (.ics)", "Экспорт в таблицу (.csv)"};
+        new AlertDialog.Builder(this)
+                .setTitle("Файл")
+                .setItems(items, (dialog, which) -> {
+                    if (which == 0) {
+                        importLauncher.launch(new String[]{"text/calendar", "text/csv",
+                                "text/comma-separated-values", "text/plain", "application/octet-stream"});
+                    } else if (which == 1) {
+                        exportIcsLauncher.launch("alarmpi.ics");
+                    } else {
+                        exportCsvLauncher.launch("alarmpi.csv");
+                    }
+                })
+                .show();
+    }
+
+    private void startImport(Uri uri) {
+        if (uri != null && !viewModel.importFrom(uri)) {
+            Toast.makeText(this, "Дождитесь окончания предыдущей операции", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void startExport(Uri uri, ReminderFileFormat format) {
+        if (uri != null && !viewModel.exportTo(uri, format)) {
+            Toast.makeText(this, "Дождитесь окончания предыдущей операции", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void confirmCancelTransfer() {
+        new AlertDialog.Builder(this)
+                .setTitle("Остановить?")
+                .setPositiveButton("Остановить", (dialog, which) -> viewModel.cancelTransfer())
+                .setNegativeButton("Продолжить", null)
+                .show();
+    }
+
+    // Одно обновление на порцию: прогресс приходит вместе с записью порции в базу
+    private void showTransferProgress(ReminderTransfer.Progress progress) {
+        if (progress == null) {
+            return;
+        }
+        String action = progress.isExport() ? "Экспорт" : "Импорт";
+        if (!progress.isFinished()) {
+            transferLayout.setVisibility(View.VISIBLE);
+            transferStatusTextView.setText(action + ": " + progress.getProcessed() + " напоминаний");
+            transferProgressBar.setIndeterminate(progress.getPercent() < 0);
+            if (progress.getPercent() >= 0) {
+                transferProgressBar.setProgress(progress.getPercent());
+            }
+            return;
+        }
+        transferLayout.setVisibility(View.GONE);
+        if (!progress.markReported()) {
+            return; // итог уже показан до пересоздания экрана
+        }
+        String message;
+        if (progress.getError() != null) {
+            message = action + ": " + progress.getError() + " (обработано " + progress.getProcessed() + ")";
+        } else if (progress.isExport()) {
+            message = "Экспортировано напоминаний: " + progress.getProcessed();
+        } else {
+            message = "Импортировано напоминаний: " + progress.getProcessed()
+                    + (progress.getSkipped() > 0 ? ", пропущено: " + progress.getSkipped() : "");
+        }
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+    }
+
     // Метод для синхронизации всех напоминаний
     private void syncAllReminders() {
         Toast.makeText(this, "Синхронизация всех напоминаний...", Toast.LENGTH_SHORT).show();
-        for (Reminder reminder : reminderList) {
-            apiService.sendReminder(reminder, "update");
-        }
-        Toast.makeText(this, "Синхронизация завершена", Toast.LENGTH_SHORT).show();
+        apiService.syncAll(result -> {
+            if (result.isSuccess()) {
+                Toast.makeText(this, "Синхронизация завершена", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "Не синхронизировано " + result.getFailedCount()
+                                + " из " + result.getItems().size() + ": " + result.getFirstError(),
+                        Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     private void updateButtonStates(boolean hasSelection) {
@@ -103,16 +283,15 @@ public class MainActivity extends AppCompatActivity
     }
 
     private void deleteSelectedReminder() {
-        int position = adapter.getSelectedPosition();
-        if (position != -1 && position < reminderList.size()) {
-            Reminder reminderToDelete = reminderList.get(position);
-
+        Reminder reminderToDelete = adapter.getSelectedReminder();
+        if (reminderToDelete != null) {
             // Отправляем на сервер перед удалением
-            apiService.sendReminder(reminderToDelete, "delete");
+            apiService.sendReminder(reminderToDelete, ReminderOperation.ACTION_DELETE);
 
-            reminderList.remove(position);
-            adapter.notifyItemRemoved(position);
+            repository.delete(reminderToDelete.getId());
+            alarmScheduler.cancel(reminderToDelete.getId());
             adapter.setSelectedPosition(-1);
+            viewModel.setSelectedId(null);
             updateButtonStates(false);
             Toast.makeText(this, "Напоминание удалено", Toast.LENGTH_SHORT).show();
         }
@@ -124,10 +303,10 @@ public class MainActivity extends AppCompatActivity
     }
 
     private void showEditDialog() {
-        int position = adapter.getSelectedPosition();
-        if (position != -1 && position < reminderList.size()) {
-            Reminder reminder = reminderList.get(position);
-            AddEditReminderDialog dialog = AddEditReminderDialog.newInstance(position, reminder);
+        Reminder reminder = adapter.getSelectedReminder();
+        if (reminder != null) {
+            // В аргументы диалога - только id: само напоминание он берёт из RemindersViewModel
+            AddEditReminderDialog dialog = AddEditReminderDialog.newInstance(reminder.getId());
             dialog.show(getSupportFragmentManager(), "edit_reminder_dialog");
         } else {
             Toast.makeText(this, "Сначала выберите напоминание", Toast.LENGTH_SHORT).show();
@@ -136,53 +315,23 @@ public class MainActivity extends AppCompatActivity
 
     @Override
     public void onReminderAdded(Reminder reminder) {
-        reminderList.add(reminder);
-        adapter.notifyItemInserted(reminderList.size() - 1);
+        repository.save(reminder);
+        alarmScheduler.schedule(reminder);
         Toast.makeText(this, "Напоминание добавлено", Toast.LENGTH_SHORT).show();
 
         // Отправляем на сервер Raspberry Pi
-        apiService.sendReminder(reminder, "add");
+        apiService.sendReminder(reminder, ReminderOperation.ACTION_ADD);
     }
 
     @Override
-    public void onReminderUpdated(int position, Reminder reminder) {
-        if (position >= 0 && position < reminderList.size()) {
-            // Сохраняем состояние активности
-            boolean wasActive = reminderList.get(position).isActive();
-            reminder.setActive(wasActive);
-
-            reminderList.set(position, reminder);
-            adapter.notifyItemChanged(position);
-            Toast.makeText(this, "Напоминание обновлено", Toast.LENGTH_SHORT).show();
-
-            // Отправляем обновление на сервер
-            apiService.sendReminder(reminder, "update");
-        }
-    }
-
-    private void addTestData() {
-        Calendar cal1 = Calendar.getInstance();
-        cal1.add(Calendar.DAY_OF_YEAR, 1);
-        cal1.set(Calendar.HOUR_OF_DAY, 10);
-        cal1.set(Calendar.MINUTE, 30);
-
-        reminderList.add(new Reminder(
-                "Вынести мусор",
-                "Скоро приедут родители, нужно сделать уборку",
-                cal1.getTime()
-        ));
-
-        Calendar cal2 = Calendar.getInstance();
-        cal2.add(Calendar.DAY_OF_YEAR, 2);
-        cal2.set(Calendar.HOUR_OF_DAY, 15);
-        cal2.set(Calendar.MINUTE, 0);
-
-        reminderList.add(new Reminder(
-                "Погулять с собакой",
-                "Она очень хочет погулять",
-                cal2.getTime()
-        ));
-
-        adapter.notifyDataSetChanged();
+    public void onReminderUpdated(Reminder previous, Reminder reminder) {
+        // Сохраняем по id. Состояние активности и версию диалог уже перенёс
+        // из редактируемого напоминания; прежнее состояние нужно для частичной отправки
+        repository.save(reminder);
+        alarmScheduler.schedule(reminder);
+        Toast.makeText(this, "Напоминание обновлено", Toast.LENGTH_SHORT).show();
+
+        // Отправляем на сервер только изменённые поля
+        apiService.sendReminderChanges(previous, reminder);
     }
-}
\ No newline at end of file
+}
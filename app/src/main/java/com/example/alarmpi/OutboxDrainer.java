@@ -0,0 +1,317 @@
+package com.example.alarmpi;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Фоновая отправка операций из журнала (outbox) на сервер.
+// Операции раскладываются по очередям напоминаний (KeyedSendScheduler) и
+// отправляются пакетами; при ошибке связи попытка повторяется с экспоненциальной
+// задержкой и случайным разбросом (jitter), пока сервер не подтвердит приём.
+// У каждого сервера (ServerEndpoints) свой экземпляр со своим журналом, очередями
+// и задержкой повтора, так что недоступный сервер не задерживает остальные.
+// Журналы читаются и пишутся на диск в общем фоновом потоке записи, а не в главном;
+// пока журнал читается, новые операции ждут в очереди (whenLoaded).
+// В очередях отправки одновременно не больше MAX_LIVE_OPERATIONS операций: остальные
+// (импорт тысяч напоминаний, пока сервер недоступен) ждут в файле журнала и
+// дочитываются порциями по мере подтверждения отправленных.
+public class OutboxDrainer {
+
+    private static final String TAG = "OutboxDrainer";
+
+    // Окно, в течение которого одиночные изменения собираются в один пакет
+    private static final long BATCH_WINDOW_MS = 300;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final int MAX_BATCHES_IN_FLIGHT = 4;
+    // Хватает на все пакеты в полёте
+    private static final int MAX_LIVE_OPERATIONS = MAX_BATCH_SIZE * MAX_BATCHES_IN_FLIGHT;
+
+    private static final Map<String, OutboxDrainer> INSTANCES = new HashMap<>();
+    // Запись журналов на диск (с fsync) - по порядку, вне главного потока
+    private static final ExecutorService DISK_EXECUTOR = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "OutboxDrainer-disk"));
+
+    private final Context context;
+    private final String endpointId;
+    // null, пока журнал читается с диска
+    private ReminderOutbox outbox;
+    private final ApiService apiService;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final Runnable drainRunnable = this::drain;
+
+    private final KeyedSendScheduler scheduler = new KeyedSendScheduler();
+
+    private boolean scheduled = false;
+    private boolean removed = false;
+    private int batchesInFlight = 0;
+    private int failedAttempts = 0;
+    // Операции журнала до этого номера уже в очередях (или подтверждены)
+    private long loadedSeq = 0;
+    // Операций в очередях, ещё не подтверждённых
+    private int liveOperations = 0;
+    // Идёт чтение следующей порции из журнала
+    private boolean reading = false;
+    // Действия, отложенные до чтения журнала; null - журнал прочитан
+    private List<Runnable> waiting = new ArrayList<>();
+
+    public static synchronized OutboxDrainer forEndpoint(Context context, String endpointId) {
+        OutboxDrainer drainer = INSTANCES.get(endpointId);
+        if (drainer == null) {
+            drainer = new OutboxDrainer(context.getApplicationContext(), endpointId);
+            INSTANCES.put(endpointId, drainer);
+        }
+        return drainer;
+    }
+
+    // Досылка того, что осталось в журналах всех серверов
+    public static void kickAll(Context context) {
+        for (ServerEndpoints.Endpoint endpoint : ServerEndpoints.getInstance(context).getAll()) {
+            forEndpoint(context, endpoint.getId()).kick();
+        }
+    }
+
+    // Сервер удалён из настроек: отправка прекращается, журнал удаляется
+    public static void removeEndpoint(Context context, String endpointId) {
+        OutboxDrainer drainer;
+        synchronized (OutboxDrainer.class) {
+            drainer = INSTANCES.remove(endpointId);
+        }
+        if (drainer != null) {
+            drainer.handler.post(() -> {
+                drainer.removed = true;
+                drainer.handler.removeCallbacks(drainer.drainRunnable);
+                SyncStatusNotifier.getInstance(context).reportSuccess(endpointId);
+            });
+        }
+        // После чтения журнала, если оно ещё идёт, иначе оно создало бы журнал заново
+        DISK_EXECUTOR.execute(() -> ReminderOutbox.delete(context, endpointId));
+    }
+
+    private OutboxDrainer(Context context, String endpointId) {
+        this.context = context;
+        this.endpointId = endpointId;
+        this.apiService = new ApiService(context);
+
+        // Журнал читается при старте приложения (kickAll) - не в главном потоке
+        DISK_EXECUTOR.execute(() -> {
+            ReminderOutbox loaded = ReminderOutbox.forEndpoint(context, endpointId, DISK_EXECUTOR);
+            handler.post(() -> onLoaded(loaded));
+        });
+    }
+
+    private void onLoaded(ReminderOutbox loaded) {
+        outbox = loaded;
+        List<Runnable> actions = waiting;
+        waiting = null;
+        for (Runnable action : actions) {
+            action.run();
+        }
+        // Операции, оставшиеся в журнале с прошлого запуска, дочитываются порциями
+        fill();
+    }
+
+    // Выполнить action в главном потоке, когда журнал прочитан: сразу или после
+    // чтения, в порядке вызовов
+    public void whenLoaded(Runnable action) {
+        if (waiting != null) {
+            waiting.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    // Записать операцию в журнал и запланировать отправку
+    public void enqueue(ReminderOperation operation) {
+        whenLoaded(() -> {
+            boolean direct = canSubmitDirectly();
+            long seq = outbox.append(operation);
+            if (direct) {
+                submit(seq, operation);
+            }
+            fill();
+            schedule(BATCH_WINDOW_MS);
+        });
+    }
+
+    // Записать несколько операций в журнал одной записью на диск (импорт порцией)
+    public void enqueueAll(List<ReminderOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        whenLoaded(() -> {
+            boolean direct = canSubmitDirectly();
+            for (ReminderOutbox.Entry entry : outbox.appendAll(operations)) {
+                // Не поместившиеся в очереди остаются только в журнале
+                if (!direct || liveOperations >= MAX_LIVE_OPERATIONS) {
+                    break;
+                }
+                submit(entry.getSeq(), entry.getOperation());
+            }
+            fill();
+            schedule(BATCH_WINDOW_MS);
+        });
+    }
+
+    // Новую операцию можно сразу поставить в очередь, минуя журнал: место есть,
+    // и все более ранние операции журнала уже в очередях
+    private boolean canSubmitDirectly() {
+        return !reading && liveOperations < MAX_LIVE_OPERATIONS && !outbox.hasPendingAfter(loadedSeq);
+    }
+
+    private void submit(long seq, ReminderOperation operation) {
+        liveOperations++;
+        loadedSeq = seq;
+        ack(scheduler.submit(seq, operation));
+    }
+
+    private void ack(List<Long> seqs) {
+        outbox.ack(seqs);
+        liveOperations -= seqs.size();
+    }
+
+    // Дочитать из журнала следующую порцию операций, если в очередях есть место
+    private void fill() {
+        if (reading || removed || liveOperations >= MAX_LIVE_OPERATIONS || !outbox.hasPendingAfter(loadedSeq)) {
+            return;
+        }
+        reading = true;
+        final long after = loadedSeq;
+        final long upTo = outbox.getLastSeq();
+        final int limit = MAX_LIVE_OPERATIONS - liveOperations;
+        DISK_EXECUTOR.execute(() -> {
+            List<ReminderOutbox.Entry> entries = outbox.readPending(after, upTo, limit);
+            handler.post(() -> onRead(entries, entries.size() < limit ? upTo : -1));
+        });
+    }
+
+    // scannedUpTo - журнал прочитан до этого номера целиком; -1 - нет
+    private void onRead(List<ReminderOutbox.Entry> entries, long scannedUpTo) {
+        reading = false;
+        if (removed) {
+            return;
+        }
+        for (ReminderOutbox.Entry entry : entries) {
+            submit(entry.getSeq(), entry.getOperation());
+        }
+        loadedSeq = Math.max(loadedSeq, scannedUpTo);
+        if (!entries.isEmpty()) {
+            schedule(0);
+        }
+        fill();
+    }
+
+    // Напоминания, удаление которых ещё не подтверждено сервером.
+    // Только после чтения журнала (whenLoaded).
+    public Set<String> getPendingDeletes() {
+        return outbox.getPendingDeletes();
+    }
+
+    // Запустить отправку того, что осталось в журнале (например, после перезапуска)
+    public void kick() {
+        whenLoaded(() -> {
+            fill();
+            if (scheduler.hasPending()) {
+                schedule(0);
+            }
+        });
+    }
+
+    private void schedule(long delayMs) {
+        // Уже запланировано - новые операции уйдут вместе с остальными
+        if (scheduled || removed) {
+            return;
+        }
+        scheduled = true;
+        handler.postDelayed(drainRunnable, delayMs);
+    }
+
+    // Отправка всех готовых операций. Пакеты уходят параллельно (до MAX_BATCHES_IN_FLIGHT),
+    // при этом одно напоминание никогда не попадает в два пакета одновременно.
+    private void drain() {
+        scheduled = false;
+        ServerEndpoints.Endpoint endpoint = ServerEndpoints.getInstance(context).get(endpointId);
+        if (removed || endpoint == null) {
+            return;
+        }
+        while (batchesInFlight < MAX_BATCHES_IN_FLIGHT) {
+            final List<KeyedSendScheduler.Dispatch> dispatches = scheduler.takeReady(MAX_BATCH_SIZE);
+            if (dispatches.isEmpty()) {
+                return;
+            }
+            List<ReminderOperation> operations = new ArrayList<>();
+            for (KeyedSendScheduler.Dispatch dispatch : dispatches) {
+                operations.add(dispatch.getOperation());
+            }
+
+            batchesInFlight++;
+            apiService.sendBatch(endpoint.getUrl(), operations, result -> onBatchResult(result, dispatches));
+        }
+    }
+
+    private void onBatchResult(BatchResult result, List<KeyedSendScheduler.Dispatch> dispatches) {
+        batchesInFlight--;
+        if (removed) {
+            return;
+        }
+
+        List<Long> acked = new ArrayList<>();
+        boolean retry = false;
+        List<BatchResult.ItemResult> items = result.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            BatchResult.ItemResult item = items.get(i);
+            KeyedSendScheduler.Dispatch dispatch = dispatches.get(i);
+            if (item.isSuccess()) {
+                acked.addAll(dispatch.getSeqs());
+                scheduler.complete(dispatch);
+            } else if (!item.isRetryable()) {
+                // Сервер отказался принять операцию - повтор не поможет
+                Log.e(TAG, "Сервер " + endpointId + " отклонил операцию " + item.getOperation().getAction()
+                        + " для " + item.getOperation().getReminderId() + ": " + item.getError());
+                acked.addAll(dispatch.getSeqs());
+                scheduler.complete(dispatch);
+            } else {
+                scheduler.retry(dispatch);
+                retry = true;
+            }
+        }
+        ack(acked);
+
+        if (retry) {
+            failedAttempts++;
+            long delay = nextBackoff();
+            Log.w(TAG, "Повтор отправки на " + endpointId + " через " + delay
+                    + " мс (попытка " + failedAttempts + ")");
+            // Одно обновляемое уведомление на серию неудач, а не сообщение на каждый повтор
+            SyncStatusNotifier.getInstance(context).reportFailure(endpointId, outbox.getPendingCount(),
+                    result.getFirstError());
+            handler.removeCallbacks(drainRunnable);
+            scheduled = false;
+            schedule(delay);
+        } else {
+            failedAttempts = 0;
+            SyncStatusNotifier.getInstance(context).reportSuccess(endpointId);
+            kick();
+        }
+    }
+
+    // Экспоненциальная задержка с разбросом: половина фиксирована, половина случайна
+    private long nextBackoff() {
+        int shift = Math.min(failedAttempts - 1, 20);
+        long backoff = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << shift);
+        long half = backoff / 2;
+        return half + (long) (random.nextDouble() * (half + 1));
+    }
+}
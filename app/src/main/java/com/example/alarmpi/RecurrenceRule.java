@@ -0,0 +1,269 @@
+package com.example.alarmpi;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+// Правило повторения напоминания. Повторяющееся напоминание - одна запись:
+// её dateTime - первое срабатывание, остальные не хранятся, а вычисляются по
+// правилу, когда нужны (ближайшее для списка, очереди будильников и сервера).
+// Поиск следующего срабатывания не перебирает прошедшие: для "каждые N часов"
+// это арифметика, для дней - разница дат в календаре (с учётом перехода на
+// летнее время), для дней недели - не больше 7 * interval шагов.
+// Текстовая форма - подмножество RRULE из RFC 5545:
+//   FREQ=HOURLY;INTERVAL=3
+//   FREQ=DAILY;INTERVAL=2
+//   FREQ=WEEKLY;BYDAY=MO,TU,WE,TH,FR        (INTERVAL=2 - раз в две недели)
+// Неизменяемый.
+public final class RecurrenceRule implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Frequency { HOURLY, DAILY, WEEKLY }
+
+    // Дни недели маской: бит 0 - понедельник ... бит 6 - воскресенье
+    public static final int MONDAY = 1;
+    public static final int WEEKDAYS = 0x1F;
+    public static final int WEEKEND = 0x60;
+    public static final int ALL_DAYS = 0x7F;
+
+    private static final String[] DAY_CODES = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+    private static final String[] DAY_NAMES = {"пн", "вт", "ср", "чт", "пт", "сб", "вс"};
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    private final Frequency frequency;
+    private final int interval;
+    private final int weekdays; // только для WEEKLY
+
+    private RecurrenceRule(Frequency frequency, int interval, int weekdays) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval " + interval);
+        }
+        if (frequency == Frequency.WEEKLY && (weekdays & ALL_DAYS) == 0) {
+            throw new IllegalArgumentException("Не выбраны дни недели");
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.weekdays = frequency == Frequency.WEEKLY ? weekdays & ALL_DAYS : 0;
+    }
+
+    public static RecurrenceRule everyHours(int hours) {
+        return new RecurrenceRule(Frequency.HOURLY, hours, 0);
+    }
+
+    public static RecurrenceRule everyDays(int days) {
+        return new RecurrenceRule(Frequency.DAILY, days, 0);
+    }
+
+    // По дням недели из маски, каждую interval-ю неделю (считая от недели первого срабатывания)
+    public static RecurrenceRule weekly(int weekdays, int interval) {
+        return new RecurrenceRule(Frequency.WEEKLY, interval, weekdays);
+    }
+
+    public Frequency getFrequency() { return frequency; }
+    public int getInterval() { return interval; }
+    public int getWeekdays() { return weekdays; }
+
+    // Первое срабатывание не раньше from; start - первое срабатывание вообще
+    public long nextFrom(long start, long from, TimeZone zone) {
+        if (from <= start) {
+            return start;
+        }
+        switch (frequency) {
+            case HOURLY: {
+                long period = interval * HOUR_MS;
+                long steps = (from - start + period - 1) / period;
+                return start + steps * period;
+            }
+            case DAILY: {
+                Calendar calendar = calendarAt(start, zone);
+                // Разница по UTC может ошибаться на день из-за летнего времени - поправляем
+                long days = (from - start) / DAY_MS;
+                long steps = days / interval;
+                calendar.add(Calendar.DAY_OF_MONTH, (int) (steps * interval));
+                while (calendar.getTimeInMillis() < from) {
+                    calendar.add(Calendar.DAY_OF_MONTH, interval);
+                }
+                return calendar.getTimeInMillis();
+            }
+            default: {
+                Calendar calendar = calendarAt(start, zone);
+                int startDay = dayIndex(calendar);
+                long startDayNumber = dayNumber(calendar);
+                long startWeek = Math.floorDiv(startDayNumber - startDay, 7);
+                // Переходим сразу к дню, в который попадает from, и идём по дням
+                long days = Math.max(0, (from - start) / DAY_MS - 1);
+                calendar.add(Calendar.DAY_OF_MONTH, (int) days);
+                for (int i = 0; i <= 7 * interval + 7; i++) {
+                    if (calendar.getTimeInMillis() >= from) {
+                        int day = dayIndex(calendar);
+                        long week = Math.floorDiv(dayNumber(calendar) - day, 7);
+                        if ((weekdays & (1 << day)) != 0 && (week - startWeek) % interval == 0) {
+                            return calendar.getTimeInMillis();
+                        }
+                    }
+                    calendar.add(Calendar.DAY_OF_MONTH, 1);
+                }
+                throw new IllegalStateException("Нет срабатывания для " + this);
+            }
+        }
+    }
+
+    public long nextFrom(long start, long from) {
+        return nextFrom(start, from, TimeZone.getDefault());
+    }
+
+    // Несколько ближайших срабатываний не раньше from (для показа)
+    public List<Long> upcoming(long start, long from, int count, TimeZone zone) {
+        List<Long> times = new ArrayList<>(count);
+        long time = nextFrom(start, from, zone);
+        for (int i = 0; i < count; i++) {
+            times.add(time);
+            time = nextFrom(start, time + 1, zone);
+        }
+        return times;
+    }
+
+    // Описание для списка: "каждый день", "по будням", "каждые 3 ч"
+    public String describe() {
+        switch (frequency) {
+            case HOURLY:
+                return interval == 1 ? "каждый час" : "каждые " + interval + " ч";
+            case DAILY:
+                return interval == 1 ? "каждый день" : "каждые " + interval + " дн.";
+            default:
+                String days;
+                if (weekdays == ALL_DAYS) {
+                    days = "каждый день";
+                } else if (weekdays == WEEKDAYS) {
+                    days = "по будням";
+                } else if (weekdays == WEEKEND) {
+                    days = "по выходным";
+                } else {
+                    StringBuilder names = new StringBuilder("по ");
+                    for (int day = 0; day < 7; day++) {
+                        if ((weekdays & (1 << day)) != 0) {
+                            if (names.length() > 3) {
+                                names.append(", ");
+                            }
+                            names.append(DAY_NAMES[day]);
+                        }
+                    }
+                    days = names.toString();
+                }
+                return interval == 1 ? days : days + " раз в " + interval + " нед.";
+        }
+    }
+
+    // Текстовая форма для базы, журнала и сервера
+    @Override
+    public String toString() {
+        StringBuilder rule = new StringBuilder("FREQ=").append(frequency.name());
+        if (interval != 1) {
+            rule.append(";INTERVAL=").append(interval);
+        }
+        if (frequency == Frequency.WEEKLY) {
+            rule.append(";BYDAY=");
+            boolean first = true;
+            for (int day = 0; day < 7; day++) {
+                if ((weekdays & (1 << day)) != 0) {
+                    if (!first) {
+                        rule.append(',');
+                    }
+                    rule.append(DAY_CODES[day]);
+                    first = false;
+                }
+            }
+        }
+        return rule.toString();
+    }
+
+    // Разбор текстовой формы; null для пустой строки. Неизвестные части игнорируются.
+    public static RecurrenceRule parse(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return null;
+        }
+        Frequency frequency = null;
+        int interval = 1;
+        int weekdays = 0;
+        for (String part : text.trim().toUpperCase(Locale.ROOT).split(";")) {
+            int equals = part.indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            String key = part.substring(0, equals).trim();
+            String value = part.substring(equals + 1).trim();
+            switch (key) {
+                case "FREQ":
+                    try {
+                        frequency = Frequency.valueOf(value);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Неподдерживаемая частота: " + value);
+                    }
+                    break;
+                case "INTERVAL":
+                    interval = Integer.parseInt(value);
+                    break;
+                case "BYDAY":
+                    for (String code : value.split(",")) {
+                        int day = indexOf(DAY_CODES, code.trim());
+                        if (day < 0) {
+                            throw new IllegalArgumentException("Неизвестный день: " + code);
+                        }
+                        weekdays |= 1 << day;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (frequency == null) {
+            throw new IllegalArgumentException("Нет FREQ: " + text);
+        }
+        return new RecurrenceRule(frequency, interval, weekdays);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof RecurrenceRule)) {
+            return false;
+        }
+        RecurrenceRule rule = (RecurrenceRule) other;
+        return frequency == rule.frequency && interval == rule.interval && weekdays == rule.weekdays;
+    }
+
+    @Override
+    public int hashCode() {
+        return (frequency.hashCode() * 31 + interval) * 31 + weekdays;
+    }
+
+    private static Calendar calendarAt(long time, TimeZone zone) {
+        Calendar calendar = Calendar.getInstance(zone, Locale.ROOT);
+        calendar.setTimeInMillis(time);
+        return calendar;
+    }
+
+    // 0 - понедельник ... 6 - воскресенье
+    private static int dayIndex(Calendar calendar) {
+        return (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+    }
+
+    // Номер календарного дня (по местной дате), чтобы считать недели без учёта часов
+    private static long dayNumber(Calendar calendar) {
+        long local = calendar.getTimeInMillis() + calendar.get(Calendar.ZONE_OFFSET) + calendar.get(Calendar.DST_OFFSET);
+        return Math.floorDiv(local, DAY_MS);
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,23 +1,61 @@
 package com.example.alarmpi;
 
 import java.io.Serializable;
+import java.text.DateFormat;
 import java.util.Date;
+import java.util.Locale;
 
 public class Reminder implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private String id;
     private String title;
     private String description;
     private Date dateTime;
     private boolean isActive;
+    // Правило повторения; null - разовое. dateTime - первое срабатывание
+    private RecurrenceRule recurrence;
+    // Версия записи на сервере (0 - сервер о ней ещё не сообщал) и время её изменения
+    private long version;
+    private long updatedAt;
+
+    // Кэш строки даты для списка: пересчитывается только при смене даты или локали
+    private transient String displayDateTime;
+    private transient long displayDateTimeSource;
+    private transient Locale displayLocale;
 
     public Reminder(String title, String description, Date dateTime) {
-        this.id = String.valueOf(System.currentTimeMillis());
+        this.id = String.valueOf(ReminderIds.next());
         this.title = title;
         this.description = description;
         this.dateTime = dateTime;
         this.isActive = true;
     }
 
+    // Восстановление напоминания с известным id (например, из журнала отправки)
+    public Reminder(String id, String title, String description, Date dateTime, boolean isActive) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.dateTime = dateTime;
+        this.isActive = isActive;
+    }
+
+    // Копия напоминания (снимок состояния для отправки на сервер)
+    public Reminder(Reminder other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.description = other.description;
+        this.dateTime = other.dateTime != null ? new Date(other.dateTime.getTime()) : null;
+        this.isActive = other.isActive;
+        this.recurrence = other.recurrence;
+        this.version = other.version;
+        this.updatedAt = other.updatedAt;
+        this.displayDateTime = other.displayDateTime;
+        this.displayDateTimeSource = other.displayDateTimeSource;
+        this.displayLocale = other.displayLocale;
+    }
+
     // Геттеры и сеттеры
     public String getId() { return id; }
     public String getTitle() { return title; }
@@ -25,7 +63,54 @@ public class Reminder implements Serializable {
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
     public Date getDateTime() { return dateTime; }
-    public void setDateTime(Date dateTime) { this.dateTime = dateTime; }
+    public void setDateTime(Date dateTime) {
+        this.dateTime = dateTime;
+        displayDateTime = null;
+    }
     public boolean isActive() { return isActive; }
     public void setActive(boolean active) { isActive = active; }
-}
\ No newline at end of file
+    public RecurrenceRule getRecurrence() { return recurrence; }
+    public void setRecurrence(RecurrenceRule recurrence) {
+        this.recurrence = recurrence;
+        displayDateTime = null;
+    }
+    public boolean isRecurring() { return recurrence != null; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+    public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+
+    // Ближайшее срабатывание не раньше from; -1 - разовое напоминание уже прошло.
+    // Для повторяющегося вычисляется по правилу, прошлые срабатывания не хранятся.
+    public long nextOccurrence(long from) {
+        long start = dateTime != null ? dateTime.getTime() : 0;
+        if (recurrence == null) {
+            return start >= from ? start : -1;
+        }
+        return recurrence.nextFrom(start, from);
+    }
+
+    // Дата в формате списка. Повторный вызов с той же датой и локалью
+    // возвращает сохранённую строку без форматирования и выделения памяти.
+    // У повторяющегося - ближайшее срабатывание и правило; строка годится,
+    // пока это срабатывание не прошло.
+    public String getDisplayDateTime(DateFormat format, Locale locale) {
+        if (recurrence != null) {
+            long now = System.currentTimeMillis();
+            if (displayDateTime == null || displayDateTimeSource < now || !locale.equals(displayLocale)) {
+                long next = nextOccurrence(now);
+                displayDateTime = format.format(new Date(next)) + " · " + recurrence.describe();
+                displayDateTimeSource = next;
+                displayLocale = locale;
+            }
+            return displayDateTime;
+        }
+        long time = dateTime != null ? dateTime.getTime() : 0;
+        if (displayDateTime == null || displayDateTimeSource != time || !locale.equals(displayLocale)) {
+            displayDateTime = dateTime != null ? format.format(dateTime) : "";
+            displayDateTimeSource = time;
+            displayLocale = locale;
+        }
+        return displayDateTime;
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.alarmpi;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,17 +12,90 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
 import androidx.core.content.ContextCompat;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class ReminderAdapter extends RecyclerView.Adapter<ReminderAdapter.ViewHolder> {
+// Адаптер получает неизменяемые снимки окна списка от ReminderPager (через
+// RemindersViewModel, так что при повороте экрана страницы не перечитываются): в памяти
+// только страницы рядом с видимой частью, на остальных позициях null
+// (карточка-заглушка до загрузки страницы). Разница между снимками считается
+// DiffUtil в фоновом потоке (ListAdapter/AsyncListDiffer), поэтому загрузка
+// с сервера или пересортировка перерисовывают только изменившиеся карточки.
+// Разметка длинных описаний (измерение, переносы строк) тоже считается в фоне
+// до показа снимка, при прокрутке карточка получает готовый PrecomputedTextCompat.
+public class ReminderAdapter extends ListAdapter<Reminder, ReminderAdapter.ViewHolder> {
+
+    // Частичное обновление карточки: поменялось только выделение
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    // Короткие описания дешевле разметить сразу при привязке
+    private static final int MIN_PRECOMPUTE_LENGTH = 40;
+
+    // Один фоновый поток на все адаптеры: снимки обрабатываются по порядку
+    private static final ExecutorService TEXT_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ReminderAdapter-text");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final DiffUtil.ItemCallback<Reminder> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<Reminder>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull Reminder oldItem, @NonNull Reminder newItem) {
+                    return oldItem.getId().equals(newItem.getId());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull Reminder oldItem, @NonNull Reminder newItem) {
+                    return oldItem.isActive() == newItem.isActive()
+                            && oldItem.getVersion() == newItem.getVersion()
+                            && Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                            && Objects.equals(oldItem.getDescription(), newItem.getDescription())
+                            && Objects.equals(oldItem.getDateTime(), newItem.getDateTime())
+                            && Objects.equals(oldItem.getRecurrence(), newItem.getRecurrence());
+                }
+            };
 
-    private List<Reminder> reminders;
     private Context context;
     private OnItemClickListener listener;
-    private int selectedPosition = -1; // -1 означает "ничего не выбрано"
+    private final ReminderRepository repository;
+    private final ReminderPager pager;
+    // Показанное окно: то, что сейчас отдаёт getItem
+    private ReminderPager.Window shownWindow;
+    private ReminderPager.Window submittedWindow;
+
+    // Выделение хранится по id: позиции сдвигаются при вставках и сортировке,
+    // а страница с выбранным напоминанием может быть выгружена
+    private String selectedId = null; // null означает "ничего не выбрано"
+    private Reminder selectedReminder;
+
+    // Цвета карточек получаем один раз, а не при каждой привязке
+    private final int selectedColor;
+    private final int cardBackgroundColor;
+
+    // Форматтер даты создаётся заново только при смене локали
+    private SimpleDateFormat dateFormat;
+    private Locale dateFormatLocale;
+
+    // Готовая разметка описаний по тексту описания. Карта заменяется целиком
+    // и после публикации не меняется, поэтому фоновый поток читает её без блокировок.
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private PrecomputedTextCompat.Params descriptionParams; // известны после создания первой карточки
+    private Map<String, PrecomputedTextCompat> precomputedDescriptions = Collections.emptyMap();
+    private int snapshotGeneration = 0;
+    private ReminderPager.Window pendingSnapshot; // снимок ждёт разметки описаний
 
     // Интерфейс для обработки кликов
     public interface OnItemClickListener {
@@ -32,53 +107,142 @@ public class ReminderAdapter extends RecyclerView.Adapter<ReminderAdapter.ViewHo
         this.listener = listener;
     }
 
-    // Конструктор адаптера
-    public ReminderAdapter(List<Reminder> reminders, Context context) {
-        this.reminders = reminders;
+    // Конструктор адаптера: окна списка приходят в submitSnapshot от владельца пейджера
+    public ReminderAdapter(ReminderRepository repository, ReminderPager pager, Context context) {
+        super(DIFF_CALLBACK);
         this.context = context;
+        this.selectedColor = ContextCompat.getColor(context, R.color.selected_color);
+        this.cardBackgroundColor = ContextCompat.getColor(context, R.color.card_background);
+        setHasStableIds(true);
+        this.repository = repository;
+        this.pager = pager;
     }
 
-    // Создание ViewHolder (вызывается для каждой новой карточки)
-    @NonNull
-    @Override
-    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.item_reminder, parent, false);
-        return new ViewHolder(view);
+    // Новый снимок из хранилища: сначала размечаем описания, затем показываем
+    public void submitSnapshot(ReminderPager.Window snapshot) {
+        if (descriptionParams == null) {
+            // Параметров текста ещё нет - карточки не созданы, размечать не для чего
+            submitWindow(snapshot);
+            return;
+        }
+        pendingSnapshot = snapshot;
+        precomputeDescriptions();
+    }
+
+    // Разметка описаний в фоне для ожидающего снимка, а если его нет - для показанного.
+    // Уже размеченные тексты переиспользуются, результат устаревшего запуска
+    // (пришёл новый снимок или поменялись параметры) отбрасывается.
+    private void precomputeDescriptions() {
+        final int generation = ++snapshotGeneration;
+        final ReminderPager.Window snapshot = pendingSnapshot != null ? pendingSnapshot : shownWindow;
+        if (snapshot == null) {
+            return;
+        }
+        final PrecomputedTextCompat.Params params = descriptionParams;
+        final Map<String, PrecomputedTextCompat> previous = precomputedDescriptions;
+        TEXT_EXECUTOR.execute(() -> {
+            Map<String, PrecomputedTextCompat> next = new HashMap<>();
+            for (Reminder reminder : snapshot.getLoaded()) {
+                String description = reminder.getDescription();
+                if (description == null || description.length() < MIN_PRECOMPUTE_LENGTH
+                        || next.containsKey(description)) {
+                    continue;
+                }
+                PrecomputedTextCompat text = previous.get(description);
+                next.put(description, text != null ? text : PrecomputedTextCompat.create(description, params));
+            }
+            mainHandler.post(() -> {
+                if (generation != snapshotGeneration) {
+                    return;
+                }
+                precomputedDescriptions = next;
+                if (snapshot == pendingSnapshot) {
+                    pendingSnapshot = null;
+                    submitWindow(snapshot);
+                } else {
+                    // Снимок уже показан с обычным текстом - перепривязываем описания
+                    notifyItemRangeChanged(0, getItemCount());
+                }
+            });
+        });
+    }
+
+    private void submitWindow(ReminderPager.Window window) {
+        submittedWindow = window;
+        submitList(window);
     }
 
-    // Наполнение данными (самая важная часть!)
     @Override
-    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Reminder reminder = reminders.get(position);
+    public long getItemId(int position) {
+        Reminder reminder = getItem(position);
+        // У заглушки нет id напоминания - берём id по позиции
+        return reminder != null ? stableIdOf(reminder.getId()) : Long.MIN_VALUE + position;
+    }
 
-        // 1. Устанавливаем текст в элементы
-        holder.titleTextView.setText(reminder.getTitle());
-        holder.descriptionTextView.setText(reminder.getDescription());
+    // Числовой id для RecyclerView: id напоминаний - строки из цифр (время создания)
+    private static long stableIdOf(String id) {
+        long value = ReminderIds.parse(id);
+        if (value >= 0) {
+            return value;
+        }
+        // FNV-1a по строке для id другого формата
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
 
-        // 2. Форматируем дату и время
-        SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault());
-        String formattedDate = sdf.format(reminder.getDateTime());
-        holder.dateTimeTextView.setText(formattedDate);
+    @Override
+    public void onCurrentListChanged(@NonNull List<Reminder> previousList, @NonNull List<Reminder> currentList) {
+        // Показан последний отправленный снимок (более ранние AsyncListDiffer отбрасывает)
+        shownWindow = submittedWindow;
+        if (selectedId == null) {
+            return;
+        }
+        int position = shownWindow.positionOf(selectedId);
+        if (position != -1) {
+            selectedReminder = shownWindow.get(position);
+            return;
+        }
+        // Выбранного нет в загруженных страницах: проверяем, не удалили ли его
+        final String id = selectedId;
+        repository.get(id, reminder -> {
+            if (!id.equals(selectedId)) {
+                return;
+            }
+            if (reminder != null) {
+                selectedReminder = reminder;
+            } else {
+                selectedId = null;
+                selectedReminder = null;
+            }
+        });
+    }
 
-        // 3. Устанавливаем состояние переключателя
-        holder.reminderSwitch.setChecked(reminder.isActive());
+    // Создание ViewHolder (вызывается для каждой новой карточки).
+    // Обработчики назначаются здесь один раз, позицию они берут в момент события.
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_reminder, parent, false);
+        ViewHolder holder = new ViewHolder(view);
 
-        // 4. Выделяем выбранный элемент
-        if (position == selectedPosition) {
-            // Зеленый фон для выбранного
-            holder.cardView.setCardBackgroundColor(
-                    ContextCompat.getColor(context, R.color.selected_color)
-            );
-        } else {
-            // Обычный фон
-            holder.cardView.setCardBackgroundColor(
-                    ContextCompat.getColor(context, R.color.card_background)
-            );
+        if (descriptionParams == null) {
+            // Первая карточка: теперь известны шрифт и переносы описания,
+            // размечаем уже показанный снимок
+            descriptionParams = TextViewCompat.getTextMetricsParams(holder.descriptionTextView);
+            precomputeDescriptions();
         }
 
-        // 5. Обработчик клика по карточке
+        // Обработчик клика по карточке
         holder.cardView.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || getItem(position) == null) {
+                return;
+            }
             if (listener != null) {
                 listener.onItemClick(position);
             }
@@ -86,66 +250,145 @@ public class ReminderAdapter extends RecyclerView.Adapter<ReminderAdapter.ViewHo
             setSelectedPosition(position);
         });
 
-        // 6. Обработчик изменения Switch
+        // Обработчик изменения Switch. setChecked при привязке тоже вызывает его,
+        // но тогда состояние совпадает с напоминанием и событие пропускается
         holder.reminderSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            reminder.setActive(isChecked);
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            Reminder reminder = getItem(position);
+            if (reminder == null || reminder.isActive() == isChecked) {
+                return;
+            }
             if (listener != null) {
                 listener.onSwitchChanged(position, isChecked);
             }
         });
+        return holder;
     }
 
     @Override
-    public int getItemCount() {
-        return reminders.size();
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.size() == 1 && payloads.get(0) == PAYLOAD_SELECTION && getItem(position) != null) {
+            bindSelection(holder, getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    // Наполнение данными (самая важная часть!).
+    // В установившемся режиме привязка ничего не выделяет: дата берётся из кэша
+    // напоминания, цвета и обработчики подготовлены заранее.
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        // Подгружаем страницу этой позиции и соседнюю по ходу прокрутки
+        pager.loadAround(position);
+        Reminder reminder = getItem(position);
+        if (reminder == null) {
+            bindPlaceholder(holder);
+            return;
+        }
+
+        // 1. Устанавливаем текст в элементы
+        holder.titleTextView.setText(reminder.getTitle());
+        bindDescription(holder, reminder.getDescription());
+
+        // 2. Форматируем дату и время
+        Locale locale = Locale.getDefault();
+        holder.dateTimeTextView.setText(reminder.getDisplayDateTime(getDateFormat(locale), locale));
+
+        // 3. Устанавливаем состояние переключателя
+        holder.reminderSwitch.setChecked(reminder.isActive());
+
+        // 4. Выделяем выбранный элемент
+        bindSelection(holder, reminder);
+    }
+
+    // Страница ещё загружается - пустая карточка того же вида
+    private void bindPlaceholder(ViewHolder holder) {
+        holder.titleTextView.setText(null);
+        holder.descriptionTextView.setText(null);
+        holder.dateTimeTextView.setText(null);
+        holder.reminderSwitch.setChecked(false);
+        holder.cardView.setCardBackgroundColor(cardBackgroundColor);
+    }
+
+    private void bindDescription(ViewHolder holder, String description) {
+        PrecomputedTextCompat text = precomputedDescriptions.get(description);
+        if (text == null) {
+            holder.descriptionTextView.setText(description);
+            return;
+        }
+        try {
+            TextViewCompat.setPrecomputedText(holder.descriptionTextView, text);
+        } catch (IllegalArgumentException e) {
+            // Параметры текста поменялись (например, направление текста после
+            // прикрепления к окну) - показываем как есть и размечаем заново
+            holder.descriptionTextView.setText(description);
+            descriptionParams = TextViewCompat.getTextMetricsParams(holder.descriptionTextView);
+            precomputedDescriptions = Collections.emptyMap();
+            precomputeDescriptions();
+        }
+    }
+
+    private SimpleDateFormat getDateFormat(Locale locale) {
+        if (dateFormat == null || !locale.equals(dateFormatLocale)) {
+            dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm", locale);
+            dateFormatLocale = locale;
+        }
+        return dateFormat;
+    }
+
+    private void bindSelection(ViewHolder holder, Reminder reminder) {
+        // Зеленый фон для выбранного, обычный - для остальных
+        holder.cardView.setCardBackgroundColor(
+                reminder.getId().equals(selectedId) ? selectedColor : cardBackgroundColor);
+    }
+
+    // Напоминание в текущем отображаемом снимке (null, если страница не загружена)
+    public Reminder getReminderAt(int position) {
+        return getItem(position);
     }
 
     // Метод для обновления выделенной позиции
     public void setSelectedPosition(int position) {
-        int previousSelected = selectedPosition;
-        selectedPosition = position;
+        Reminder reminder = position != -1 ? getItem(position) : null;
+        if (position != -1 && reminder == null) {
+            return; // заглушку выбрать нельзя
+        }
+        int previousSelected = getSelectedPosition();
+        selectedId = reminder != null ? reminder.getId() : null;
+        selectedReminder = reminder;
 
         // Обновляем только изменившиеся элементы (оптимизация)
         if (previousSelected != -1) {
-            notifyItemChanged(previousSelected);
+            notifyItemChanged(previousSelected, PAYLOAD_SELECTION);
         }
-        if (selectedPosition != -1) {
-            notifyItemChanged(selectedPosition);
+        if (position != -1) {
+            notifyItemChanged(position, PAYLOAD_SELECTION);
         }
     }
 
-    // Получить выбранную позицию
-    public int getSelectedPosition() {
-        return selectedPosition;
+    // Выделение, сохранённое до пересоздания Activity; применяется с первым снимком
+    public void restoreSelection(String id) {
+        selectedId = id;
+        selectedReminder = null;
     }
 
-    // Получить выбранное напоминание
-    public Reminder getSelectedReminder() {
-        if (selectedPosition != -1 && selectedPosition < reminders.size()) {
-            return reminders.get(selectedPosition);
-        }
-        return null;
+    public String getSelectedId() {
+        return selectedId;
     }
 
-    // Добавить новое напоминание
-    public void addReminder(Reminder reminder) {
-        reminders.add(reminder);
-        notifyItemInserted(reminders.size() - 1);
-    }
-
-    // Удалить напоминание
-    public void removeReminder(int position) {
-        reminders.remove(position);
-        notifyItemRemoved(position);
-        if (position == selectedPosition) {
-            selectedPosition = -1;
-        }
+    // Получить выбранную позицию (-1, если страница с ним сейчас не загружена)
+    public int getSelectedPosition() {
+        return selectedId != null && shownWindow != null ? shownWindow.positionOf(selectedId) : -1;
     }
 
-    // Обновить напоминание
-    public void updateReminder(int position, Reminder reminder) {
-        reminders.set(position, reminder);
-        notifyItemChanged(position);
+    // Получить выбранное напоминание - в том числе с выгруженной страницы
+    public Reminder getSelectedReminder() {
+        int position = getSelectedPosition();
+        return position != -1 ? getItem(position) : selectedReminder;
     }
 
     // Класс ViewHolder - хранит ссылки на элементы одной карточки
@@ -166,4 +409,4 @@ public class ReminderAdapter extends RecyclerView.Adapter<ReminderAdapter.ViewHo
             reminderSwitch = itemView.findViewById(R.id.reminderSwitch);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,24 @@
+package com.example.alarmpi;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+// Будильник ближайшего напоминания и перезагрузка телефона
+// (будильники AlarmManager после неё сбрасываются)
+public class ReminderAlarmReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        ReminderAlarmScheduler scheduler = ReminderAlarmScheduler.getInstance(context);
+        // Очередь может ещё загружаться из базы - держим приёмник до конца,
+        // иначе процесс могут завершить раньше, чем будильник поставлен
+        PendingResult result = goAsync();
+        if (ReminderAlarmScheduler.ACTION_REMINDER_DUE.equals(intent.getAction())) {
+            scheduler.onAlarm(result::finish);
+        } else {
+            // BOOT_COMPLETED: getInstance начал загрузку очереди, будильник ставится по её окончании
+            scheduler.onBoot(result::finish);
+        }
+    }
+}
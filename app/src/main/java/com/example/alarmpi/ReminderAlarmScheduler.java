@@ -0,0 +1,161 @@
+package com.example.alarmpi;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Планировщик срабатываний на телефоне.
+// Активные будущие напоминания лежат в ReminderDueQueue (min-куча по времени),
+// в AlarmManager зарегистрирован один будильник - на ближайшее из них.
+// Будильник переставляется, только когда меняется голова очереди.
+// Все методы вызываются из главного потока.
+public class ReminderAlarmScheduler {
+
+    private static final String TAG = "ReminderAlarmScheduler";
+
+    public static final String ACTION_REMINDER_DUE = "com.example.alarmpi.action.REMINDER_DUE";
+
+    private static ReminderAlarmScheduler instance;
+
+    private final Context context;
+    private final AlarmManager alarmManager;
+    private final ReminderRepository repository;
+    private final ReminderDueQueue queue = new ReminderDueQueue();
+
+    private boolean loaded = false;
+    private boolean loading = false;
+    private int loadGeneration = 0; // применяется только последняя загрузка
+    // Изменения, сделанные во время загрузки: повторяются поверх загруженного
+    private final List<Runnable> changesDuringLoad = new ArrayList<>();
+    private final List<Runnable> loadCallbacks = new ArrayList<>();
+
+    // Время, на которое стоит будильник; -1 - будильника нет
+    private long armedTime = -1;
+
+    public static synchronized ReminderAlarmScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReminderAlarmScheduler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ReminderAlarmScheduler(Context context) {
+        this.context = context;
+        this.alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        this.repository = ReminderRepository.getInstance(context);
+        reload();
+    }
+
+    // Перечитать активные будущие напоминания из базы (после загрузки с сервера, перезагрузки)
+    public void reload() {
+        final int generation = ++loadGeneration;
+        loading = true;
+        changesDuringLoad.clear();
+        repository.getActiveFrom(System.currentTimeMillis(), reminders -> {
+            if (generation != loadGeneration) {
+                return;
+            }
+            queue.clear();
+            if (reminders != null) {
+                queue.putAll(reminders);
+            }
+            for (Runnable change : changesDuringLoad) {
+                change.run();
+            }
+            changesDuringLoad.clear();
+            loading = false;
+            loaded = true;
+            Log.d(TAG, "Запланировано напоминаний: " + queue.size());
+            rearm();
+
+            List<Runnable> callbacks = new ArrayList<>(loadCallbacks);
+            loadCallbacks.clear();
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        });
+    }
+
+    // Добавить или обновить напоминание: неактивное или прошедшее снимается с очереди
+    public void schedule(Reminder reminder) {
+        apply(() -> {
+            if (reminder.isActive() && reminder.nextOccurrence(System.currentTimeMillis() + 1) != -1) {
+                queue.put(reminder);
+            } else {
+                queue.remove(reminder.getId());
+            }
+        });
+    }
+
+    public void cancel(String id) {
+        apply(() -> queue.remove(id));
+    }
+
+    // Ближайшее запланированное напоминание (null, если нет или ещё не загружено)
+    public Reminder getNextDue() {
+        return queue.peek();
+    }
+
+    private void apply(Runnable change) {
+        change.run();
+        if (loading) {
+            changesDuringLoad.add(change);
+        } else {
+            rearm();
+        }
+    }
+
+    // Будильник сработал: снимаем наступившие напоминания и ставим следующий
+    void onAlarm(Runnable done) {
+        whenLoaded(() -> {
+            armedTime = -1; // сработавший будильник уже не стоит
+            for (Reminder reminder : queue.pollDue(System.currentTimeMillis())) {
+                Log.i(TAG, "Сработало напоминание: " + reminder.getTitle());
+            }
+            rearm();
+            done.run();
+        });
+    }
+
+    // Телефон перезагружен: будильник ставится после загрузки очереди (её начал getInstance)
+    void onBoot(Runnable done) {
+        whenLoaded(done);
+    }
+
+    private void whenLoaded(Runnable callback) {
+        if (loaded && !loading) {
+            callback.run();
+        } else {
+            loadCallbacks.add(callback);
+        }
+    }
+
+    private void rearm() {
+        Reminder next = queue.peek();
+        long time = next != null ? queue.getDueTime(next.getId()) : -1;
+        if (time == armedTime || alarmManager == null) {
+            return;
+        }
+        armedTime = time;
+        PendingIntent alarmIntent = PendingIntent.getBroadcast(context, 0,
+                new Intent(context, ReminderAlarmReceiver.class).setAction(ACTION_REMINDER_DUE),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        if (next == null) {
+            alarmManager.cancel(alarmIntent);
+            return;
+        }
+        // Точные будильники с Android 12 требуют разрешения - без него ставим неточный
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, time, alarmIntent);
+        } else {
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, time, alarmIntent);
+        }
+        Log.d(TAG, "Будильник на ближайшее напоминание: " + next.getTitle());
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.alarmpi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+// Формат обмена с сервером. Ответ разбирается форматом из его Content-Type,
+// запросы кодируются форматом, который сервер уже показал, что понимает
+// (см. ApiService: согласование через Accept/Content-Type).
+public interface ReminderCodec {
+
+    String getContentType();
+
+    // Тело POST /batch
+    byte[] encodeBatch(List<ReminderOperation> operations) throws IOException;
+
+    // Ответ на /batch: результаты в порядке операций запроса
+    BatchResult decodeBatchResult(InputStream in, List<ReminderOperation> operations) throws IOException;
+
+    // Ответ на /changes: изменённые напоминания уходят в listener порциями
+    ChangeSet decodeChangeSet(InputStream in, long previousCursor,
+                              ReminderJsonReader.ChunkListener listener) throws IOException;
+}
@@ -0,0 +1,101 @@
+package com.example.alarmpi;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.Map;
+
+// Хранилище напоминаний на устройстве (SQLite).
+// Первичный ключ - id, вторичный индекс - время срабатывания.
+public class ReminderDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "reminders.db";
+    // 2 - правило повторения (recurrence), 3 - маршрут по серверам (routes)
+    private static final int DATABASE_VERSION = 3;
+    // Где маршруты лежали до версии 3
+    private static final String LEGACY_ROUTES_PREFERENCES = "ReminderRoutes";
+
+    public static final String TABLE_REMINDERS = "reminders";
+    public static final String COLUMN_ID = "id";
+    public static final String COLUMN_TITLE = "title";
+    public static final String COLUMN_DESCRIPTION = "description";
+    public static final String COLUMN_DATE_TIME = "date_time";
+    public static final String COLUMN_IS_ACTIVE = "is_active";
+    public static final String COLUMN_VERSION = "version";
+    public static final String COLUMN_UPDATED_AT = "updated_at";
+    // Текст RecurrenceRule; NULL - разовое напоминание
+    public static final String COLUMN_RECURRENCE = "recurrence";
+    // id серверов через запятую (ServerEndpoints); NULL - на все серверы.
+    // Удаляется вместе с напоминанием.
+    public static final String COLUMN_ROUTES = "routes";
+
+    private final Context context;
+
+    public ReminderDatabase(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_REMINDERS + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_TITLE + " TEXT NOT NULL, "
+                + COLUMN_DESCRIPTION + " TEXT, "
+                + COLUMN_DATE_TIME + " INTEGER NOT NULL, "
+                + COLUMN_IS_ACTIVE + " INTEGER NOT NULL, "
+                + COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_RECURRENCE + " TEXT, "
+                + COLUMN_ROUTES + " TEXT)");
+        db.execSQL("CREATE INDEX idx_reminders_date_time ON " + TABLE_REMINDERS
+                + " (" + COLUMN_DATE_TIME + ", " + COLUMN_ID + ")");
+    }
+
+    // Новые id не должны совпасть с уже записанными (ReminderIds): отсчёт - от наибольшего
+    // числового id. Нечисловые и с ведущими нулями (не от этого приложения) не учитываются.
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        ReminderIds.seed(DatabaseUtils.longForQuery(db, "SELECT MAX(CAST(" + COLUMN_ID + " AS INTEGER)) FROM "
+                + TABLE_REMINDERS + " WHERE " + COLUMN_ID + " NOT GLOB '*[^0-9]*' AND " + COLUMN_ID
+                + " NOT GLOB '0*' AND length(" + COLUMN_ID + ") BETWEEN 1 AND 18", null));
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_REMINDERS + " ADD COLUMN " + COLUMN_RECURRENCE + " TEXT");
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + TABLE_REMINDERS + " ADD COLUMN " + COLUMN_ROUTES + " TEXT");
+            migrateRoutes(db);
+        }
+    }
+
+    // Маршруты из SharedPreferences переносятся в столбец; маршруты уже удалённых
+    // напоминаний при этом отбрасываются
+    private void migrateRoutes(SQLiteDatabase db) {
+        SharedPreferences legacy = context.getSharedPreferences(LEGACY_ROUTES_PREFERENCES, Context.MODE_PRIVATE);
+        ContentValues values = new ContentValues();
+        for (Map.Entry<String, ?> entry : legacy.getAll().entrySet()) {
+            if (!(entry.getValue() instanceof Iterable)) {
+                continue;
+            }
+            StringBuilder route = new StringBuilder();
+            for (Object id : (Iterable<?>) entry.getValue()) {
+                if (route.length() > 0) {
+                    route.append(',');
+                }
+                route.append(id);
+            }
+            values.put(COLUMN_ROUTES, route.toString());
+            db.update(TABLE_REMINDERS, values, COLUMN_ID + " = ?", new String[]{entry.getKey()});
+        }
+        context.deleteSharedPreferences(LEGACY_ROUTES_PREFERENCES);
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.alarmpi;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Дерево хэшей (Merkle) над набором напоминаний для сверки с сервером.
+// Напоминания раскладываются по LEAF_COUNT корзинам по хэшу id; над корзинами
+// FANOUT узлов, над узлами корень. Хэш корзины - сумма (mod 2^64) хэшей её
+// напоминаний, хэш узла - сумма хэшей его корзин, корня - сумма узлов: порядок
+// напоминаний не важен, и сервер считает то же самое своим обходом базы.
+// Хэш напоминания - первые 8 байт SHA-256 от строки
+//   id \n title \n description \n dateTime (секунды UTC) \n isActive (1/0)
+// и у повторяющихся ещё \n правило (RecurrenceRule.toString) - хэши разовых
+// не меняются.
+// Корзина - первый байт SHA-256 от id.
+// Дерево строится прямо по столбцам ReminderTable: объект Reminder собирается
+// только для напоминаний, которые уходят на сервер.
+public class ReminderDigest {
+
+    static final int FANOUT = 16;
+    static final int LEAF_COUNT = FANOUT * FANOUT;
+
+    private final ReminderTable table;
+    private final long[] leaves = new long[LEAF_COUNT];
+    // Добавленные строки таблицы и их корзины, в порядке добавления
+    private int[] rows = new int[16];
+    private int[] rowLeaves = new int[16];
+    private int count = 0;
+    private final MessageDigest sha256;
+
+    public ReminderDigest(ReminderTable table) {
+        this.table = table;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 есть на любой платформе
+        }
+    }
+
+    // Дерево по всем строкам таблицы
+    public static ReminderDigest of(ReminderTable table) {
+        ReminderDigest digest = new ReminderDigest(table);
+        for (int row = 0; row < table.size(); row++) {
+            digest.add(row);
+        }
+        return digest;
+    }
+
+    public void add(int row) {
+        int leaf = leafOf(table.getId(row));
+        leaves[leaf] += hashOf(table, row);
+        if (count == rows.length) {
+            rows = Arrays.copyOf(rows, count * 2);
+            rowLeaves = Arrays.copyOf(rowLeaves, count * 2);
+        }
+        rows[count] = row;
+        rowLeaves[count] = leaf;
+        count++;
+    }
+
+    // Число добавленных напоминаний
+    public int size() {
+        return count;
+    }
+
+    public long getRoot() {
+        long root = 0;
+        for (long leaf : leaves) {
+            root += leaf;
+        }
+        return root;
+    }
+
+    public long getNode(int node) {
+        long sum = 0;
+        for (int i = node * FANOUT; i < (node + 1) * FANOUT; i++) {
+            sum += leaves[i];
+        }
+        return sum;
+    }
+
+    public long getLeaf(int leaf) {
+        return leaves[leaf];
+    }
+
+    // Напоминания корзин - то, что уходит на сервер, если корзины расходятся
+    // и сервер не прислал своих напоминаний из них
+    public List<Reminder> getBuckets(Set<Integer> leafSet) {
+        List<Reminder> reminders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (leafSet.contains(rowLeaves[i])) {
+                reminders.add(table.get(rows[i]));
+            }
+        }
+        return reminders;
+    }
+
+    // Напоминания корзин leafSet, которые отличаются от серверных или которых нет
+    // на сервере; server - все напоминания этих корзин на сервере
+    public List<Reminder> differingFrom(Set<Integer> leafSet, ReminderTable server) {
+        Map<String, Long> serverHashes = new HashMap<>(server.size() * 2);
+        for (int row = 0; row < server.size(); row++) {
+            serverHashes.put(server.getId(row), hashOf(server, row));
+        }
+        List<Reminder> changed = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (leafSet.contains(rowLeaves[i])) {
+                Long serverHash = serverHashes.get(table.getId(rows[i]));
+                if (serverHash == null || serverHash != hashOf(table, rows[i])) {
+                    changed.add(table.get(rows[i]));
+                }
+            }
+        }
+        return changed;
+    }
+
+    // Строки server (напоминания расходящихся корзин на сервере), которых нет в этом наборе
+    public List<Integer> missingRows(ReminderTable server) {
+        Set<String> own = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            own.add(table.getId(rows[i]));
+        }
+        List<Integer> missing = new ArrayList<>();
+        for (int row = 0; row < server.size(); row++) {
+            if (!own.contains(server.getId(row))) {
+                missing.add(row);
+            }
+        }
+        return missing;
+    }
+
+    // Тело первого запроса сверки: {"root": "...", "nodes": ["...", ... FANOUT]}
+    public String toRequestJson() {
+        StringBuilder json = new StringBuilder(32 + FANOUT * 20);
+        json.append("{\"root\":\"").append(toHex(getRoot())).append("\",\"nodes\":[");
+        for (int node = 0; node < FANOUT; node++) {
+            if (node > 0) {
+                json.append(',');
+            }
+            json.append('"').append(toHex(getNode(node))).append('"');
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    // Корзины узла, хэши которых не совпали с хэшами сервера
+    public List<Integer> differingLeaves(int node, long[] serverLeaves) {
+        List<Integer> differing = new ArrayList<>();
+        for (int i = 0; i < FANOUT; i++) {
+            int leaf = node * FANOUT + i;
+            if (i >= serverLeaves.length || serverLeaves[i] != leaves[leaf]) {
+                differing.add(leaf);
+            }
+        }
+        return differing;
+    }
+
+    int leafOf(String id) {
+        byte[] hash = sha256.digest(id.getBytes(StandardCharsets.UTF_8));
+        return hash[0] & 0xFF;
+    }
+
+    long hashOf(ReminderTable source, int row) {
+        String title = source.getTitle(row);
+        String description = source.getDescription(row);
+        String recurrence = source.getRecurrenceText(row);
+        String canonical = source.getId(row) + '\n'
+                + (title != null ? title : "") + '\n'
+                + (description != null ? description : "") + '\n'
+                + Math.floorDiv(source.getTime(row), 1000) + '\n'
+                + (source.isActive(row) ? '1' : '0')
+                + (recurrence != null ? "\n" + recurrence : "");
+        byte[] hash = sha256.digest(canonical.getBytes(StandardCharsets.UTF_8));
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (hash[i] & 0xFF);
+        }
+        return value;
+    }
+
+    // 16 шестнадцатеричных цифр без знака
+    static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    static long parseHex(String hex) {
+        return Long.parseUnsignedLong(hex, 16);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.alarmpi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+// Очередь напоминаний по времени срабатывания: двоичная min-куча с индексом
+// id -> позиция в куче. Добавление, изменение и удаление по id - O(log n),
+// ближайшее напоминание - O(1). Не потокобезопасна.
+// Сами напоминания лежат в ReminderTable по столбцам, куча - массив номеров
+// строк: десятки тысяч запланированных напоминаний не держат по объекту
+// Reminder и Date на каждое. peek/poll собирают Reminder из строки.
+// Повторяющееся напоминание стоит в очереди одной строкой со временем
+// ближайшего срабатывания; pollDue переставляет его на следующее.
+public class ReminderDueQueue {
+
+    private final ReminderTable table = new ReminderTable();
+    // Номера строк таблицы в порядке кучи
+    private int[] heap = new int[16];
+    // Позиция в куче по номеру строки
+    private int[] positions = new int[16];
+    // Время ближайшего срабатывания по номеру строки (у разового - его время)
+    private long[] dueTimes = new long[16];
+    // Размер кучи; совпадает с числом строк таблицы, кроме середины удаления
+    private int count = 0;
+
+    public int size() {
+        return table.size();
+    }
+
+    public boolean isEmpty() {
+        return table.isEmpty();
+    }
+
+    public boolean contains(String id) {
+        return table.rowOf(id) != -1;
+    }
+
+    // Ближайшее напоминание или null
+    public Reminder peek() {
+        return isEmpty() ? null : table.get(heap[0]);
+    }
+
+    // Добавить напоминание или заменить сохранённое с тем же id
+    public void put(Reminder reminder) {
+        put(reminder, System.currentTimeMillis());
+    }
+
+    // now - момент, от которого ищется ближайшее срабатывание повторяющегося
+    void put(Reminder reminder, long now) {
+        long due = dueTimeOf(reminder.nextOccurrence(now), timeOf(reminder));
+        int row = table.rowOf(reminder.getId());
+        if (row == -1) {
+            append(table.addRow(reminder), due);
+            return;
+        }
+        table.setRow(row, reminder);
+        reschedule(row, due);
+    }
+
+    // Добавить строки таблицы (например, результат запроса к базе) без сборки объектов
+    public void putAll(ReminderTable source) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < source.size(); i++) {
+            if (table.rowOf(source.getId(i)) == -1) {
+                append(table.addRow(source, i), dueTimeOf(source.nextOccurrence(i, now), source.getTime(i)));
+            } else {
+                put(source.get(i), now);
+            }
+        }
+    }
+
+    public boolean remove(String id) {
+        int row = table.rowOf(id);
+        if (row == -1) {
+            return false;
+        }
+        int position = positions[row];
+        int last = --count;
+        if (position < last) {
+            // На место удалённого ставим последний и восстанавливаем порядок
+            int lastRow = heap[last];
+            place(lastRow, position);
+            siftDown(position);
+            siftUp(positions[lastRow]);
+        }
+        // Последняя строка таблицы переезжает на место удалённой - переносим её позицию
+        int moved = table.removeRow(row);
+        if (moved != -1) {
+            dueTimes[row] = dueTimes[moved];
+            place(row, positions[moved]);
+        }
+        return true;
+    }
+
+    public Reminder poll() {
+        Reminder first = peek();
+        if (first != null) {
+            remove(first.getId());
+        }
+        return first;
+    }
+
+    // Извлечь все напоминания со временем срабатывания не позже time.
+    // Повторяющиеся остаются в очереди со следующим срабатыванием после time.
+    public List<Reminder> pollDue(long time) {
+        List<Reminder> due = new ArrayList<>();
+        while (!isEmpty() && dueTimes[heap[0]] <= time) {
+            int row = heap[0];
+            Reminder reminder = table.get(row);
+            due.add(reminder);
+            if (reminder.isRecurring()) {
+                reschedule(row, reminder.nextOccurrence(time + 1));
+            } else {
+                remove(reminder.getId());
+            }
+        }
+        return due;
+    }
+
+    // Время ближайшего срабатывания строки в очереди
+    public long getDueTime(String id) {
+        int row = table.rowOf(id);
+        return row != -1 ? dueTimes[row] : -1;
+    }
+
+    public void clear() {
+        table.clear();
+        count = 0;
+    }
+
+    private void append(int row, long due) {
+        if (row >= heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+            positions = Arrays.copyOf(positions, positions.length * 2);
+            dueTimes = Arrays.copyOf(dueTimes, dueTimes.length * 2);
+        }
+        dueTimes[row] = due;
+        place(row, count);
+        siftUp(count++);
+    }
+
+    private void reschedule(int row, long due) {
+        long previous = dueTimes[row];
+        dueTimes[row] = due;
+        if (due < previous) {
+            siftUp(positions[row]);
+        } else {
+            siftDown(positions[row]);
+        }
+    }
+
+    // Разовое прошедшее напоминание остаётся в очереди со своим временем
+    private static long dueTimeOf(long next, long time) {
+        return next != -1 ? next : time;
+    }
+
+    private void siftUp(int position) {
+        int row = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (compare(row, heap[parent]) >= 0) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(row, position);
+    }
+
+    private void siftDown(int position) {
+        int row = heap[position];
+        int size = count;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && compare(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (compare(row, heap[child]) <= 0) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(row, position);
+    }
+
+    private void place(int row, int position) {
+        heap[position] = row;
+        positions[row] = position;
+    }
+
+    // По времени срабатывания, при равенстве - по id (как в списке)
+    private int compare(int a, int b) {
+        int result = Long.compare(dueTimes[a], dueTimes[b]);
+        return result != 0 ? result : table.getId(a).compareTo(table.getId(b));
+    }
+
+    static long timeOf(Reminder reminder) {
+        Date dateTime = reminder.getDateTime();
+        return dateTime != null ? dateTime.getTime() : 0;
+    }
+}
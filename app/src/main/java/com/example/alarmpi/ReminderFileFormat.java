@@ -0,0 +1,26 @@
+package com.example.alarmpi;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+// Формат файла для импорта и экспорта напоминаний (календарь .ics, таблица .csv).
+// Чтение потоковое: записи разбираются по одной и отдаются порциями по
+// ReminderJsonReader.CHUNK_SIZE, файл целиком в память не читается.
+// Запись тоже по одному напоминанию между заголовком и окончанием файла.
+public interface ReminderFileFormat {
+
+    String getMimeType();
+
+    // Расширение имени файла без точки
+    String getExtension();
+
+    // Прочитать файл; возвращает число пропущенных записей (без заголовка или даты)
+    int read(Reader in, ReminderJsonReader.ChunkListener listener) throws IOException;
+
+    void writeHeader(Writer out) throws IOException;
+
+    void write(Writer out, Reminder reminder) throws IOException;
+
+    void writeFooter(Writer out) throws IOException;
+}
@@ -0,0 +1,50 @@
+package com.example.alarmpi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Идентификаторы напоминаний. Новый id - время создания в миллисекундах, но
+// строго больше предыдущего: два напоминания, созданные в одну миллисекунду
+// (импорт, быстрые нажатия), больше не получают одинаковый id.
+// На сервер и в базу id уходит прежней десятичной строкой. После перезапуска
+// процесса (или перевода часов назад) отсчёт продолжается от наибольшего id
+// в базе (seed), а не от нуля.
+public final class ReminderIds {
+
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private ReminderIds() {
+    }
+
+    // Следующие id будут больше existing; вызывается при открытии базы
+    public static void seed(long existing) {
+        LAST.accumulateAndGet(existing, Math::max);
+    }
+
+    public static long next() {
+        while (true) {
+            long last = LAST.get();
+            long next = Math.max(System.currentTimeMillis(), last + 1);
+            if (LAST.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    // Числовое значение id в канонической десятичной записи; -1 для других строк
+    // (id, созданные не этим приложением, или с ведущими нулями)
+    public static long parse(String id) {
+        int length = id.length();
+        if (length == 0 || length > 18 || (id.charAt(0) == '0' && length > 1)) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
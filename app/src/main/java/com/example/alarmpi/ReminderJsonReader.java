@@ -0,0 +1,245 @@
+package com.example.alarmpi;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Потоковый разбор ответов сервера через android.util.JsonReader.
+// Ответ не собирается в строку и не превращается в дерево JSONObject:
+// напоминания читаются по одному и отдаются порциями по CHUNK_SIZE,
+// так что память не растёт с размером ответа.
+public class ReminderJsonReader {
+
+    public static final int CHUNK_SIZE = 200;
+
+    public interface ChunkListener {
+        void onChunk(List<Reminder> chunk);
+    }
+
+    private final SimpleDateFormat sdf;
+
+    public ReminderJsonReader(String datePattern) {
+        this.sdf = new SimpleDateFormat(datePattern, Locale.getDefault());
+    }
+
+    // {"cursor": 42, "changes": [{...}, ...], "deleted": ["id", ...]}
+    // Изменённые напоминания уходят в listener порциями; в результате - только удаления и курсор
+    public ChangeSet readChangeSet(InputStream in, long previousCursor, ChunkListener listener) throws IOException {
+        ChangeSet changes = new ChangeSet(previousCursor);
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("cursor".equals(name)) {
+                changes.setCursor(reader.nextLong());
+            } else if ("changes".equals(name)) {
+                readReminderArray(reader, listener);
+            } else if ("deleted".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    changes.getDeletedIds().add(reader.nextString());
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return changes;
+    }
+
+    // [{...}, {...}] - массив напоминаний
+    public void readReminderArray(JsonReader reader, ChunkListener listener) throws IOException {
+        List<Reminder> chunk = new ArrayList<>(CHUNK_SIZE);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            chunk.add(readReminder(reader));
+            if (chunk.size() == CHUNK_SIZE) {
+                listener.onChunk(chunk);
+                chunk = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+        reader.endArray();
+        if (!chunk.isEmpty()) {
+            listener.onChunk(chunk);
+        }
+    }
+
+    // Напоминания расходящихся корзин на сервере (второй шаг сверки, см. ReminderDigest):
+    // [{...}, ...] - сразу в столбцы
+    public ReminderTable readReminderTable(InputStream in) throws IOException {
+        ReminderTable table = new ReminderTable();
+        readReminderArray(new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8)), table::addAll);
+        return table;
+    }
+
+    public Reminder readReminder(JsonReader reader) throws IOException {
+        String id = null;
+        String title = "";
+        String description = "";
+        String dateTime = null;
+        boolean isActive = true;
+        long version = 0;
+        long updatedAt = 0;
+        String recurrence = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "title":
+                    title = reader.nextString();
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    break;
+                case "dateTime":
+                    dateTime = reader.nextString();
+                    break;
+                case "isActive":
+                    isActive = reader.nextBoolean();
+                    break;
+                case "version":
+                    version = reader.nextLong();
+                    break;
+                case "updatedAt":
+                    updatedAt = reader.nextLong();
+                    break;
+                case "recurrence":
+                    recurrence = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (id == null || dateTime == null) {
+            throw new IOException("Напоминание без id или dateTime");
+        }
+        Reminder reminder;
+        try {
+            reminder = new Reminder(id, title, description, sdf.parse(dateTime), isActive);
+        } catch (ParseException e) {
+            throw new IOException("Некорректная дата: " + dateTime, e);
+        }
+        reminder.setVersion(version);
+        reminder.setUpdatedAt(updatedAt);
+        reminder.setRecurrence(parseRecurrence(recurrence));
+        return reminder;
+    }
+
+    // Правило, которое приложение не понимает, не должно ломать всю загрузку
+    static RecurrenceRule parseRecurrence(String text) {
+        try {
+            return RecurrenceRule.parse(text);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // [{"id": ..., "success": true/false, "error": ...}] - в том же порядке, что и операции в запросе
+    public BatchResult readBatchResult(InputStream in, List<ReminderOperation> operations) throws IOException {
+        BatchResult result = new BatchResult();
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        int index = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (index >= operations.size()) {
+                reader.skipValue();
+                continue;
+            }
+            ReminderOperation operation = operations.get(index++);
+            boolean success = false;
+            String error = "Ошибка сервера";
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("success".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+                    success = reader.nextBoolean();
+                } else if ("error".equals(name) && reader.peek() == JsonToken.STRING) {
+                    error = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            result.add(success
+                    ? new BatchResult.ItemResult(operation, true, null)
+                    : new BatchResult.ItemResult(operation, false, error));
+        }
+        reader.endArray();
+
+        // Сервер ответил не на все операции
+        for (int i = index; i < operations.size(); i++) {
+            result.add(new BatchResult.ItemResult(operations.get(i), false, "Нет ответа сервера", true));
+        }
+        return result;
+    }
+
+    // Ответ сверки хэшей (см. ReminderDigest):
+    // {"match": true} или {"nodes": {"3": ["<хэш корзины>", ... 16], ...}} - для
+    // расходящихся узлов хэши их корзин на сервере. Пустая карта - всё совпадает.
+    public Map<Integer, long[]> readDigestResult(InputStream in) throws IOException {
+        Map<Integer, long[]> nodes = new TreeMap<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!"nodes".equals(name) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                int node;
+                try {
+                    node = Integer.parseInt(reader.nextName());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Некорректный номер узла", e);
+                }
+                List<Long> leaves = new ArrayList<>(ReminderDigest.FANOUT);
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    try {
+                        leaves.add(ReminderDigest.parseHex(reader.nextString()));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Некорректный хэш корзины", e);
+                    }
+                }
+                reader.endArray();
+                long[] hashes = new long[leaves.size()];
+                for (int i = 0; i < hashes.length; i++) {
+                    hashes[i] = leaves.get(i);
+                }
+                if (node >= 0 && node < ReminderDigest.FANOUT) {
+                    nodes.put(node, hashes);
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        return nodes;
+    }
+}
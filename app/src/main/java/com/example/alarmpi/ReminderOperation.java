@@ -0,0 +1,66 @@
+package com.example.alarmpi;
+
+import java.util.Objects;
+
+// Одна операция над напоминанием для пакетной отправки на сервер
+public class ReminderOperation {
+    public static final String ACTION_ADD = "add";
+    public static final String ACTION_UPDATE = "update";
+    public static final String ACTION_DELETE = "delete";
+    // Частичное обновление: на сервер уходят только поля из getFields()
+    public static final String ACTION_PATCH = "patch";
+
+    // Поля напоминания для частичного обновления (битовая маска)
+    public static final int FIELD_TITLE = 1;
+    public static final int FIELD_DESCRIPTION = 1 << 1;
+    public static final int FIELD_DATE_TIME = 1 << 2;
+    public static final int FIELD_ACTIVE = 1 << 3;
+    public static final int FIELD_RECURRENCE = 1 << 4;
+    public static final int ALL_FIELDS = FIELD_TITLE | FIELD_DESCRIPTION | FIELD_DATE_TIME | FIELD_ACTIVE
+            | FIELD_RECURRENCE;
+
+    private final Reminder reminder;
+    private final String action;
+    private final int fields;
+
+    public ReminderOperation(Reminder reminder, String action) {
+        this(reminder, action, ALL_FIELDS);
+    }
+
+    public ReminderOperation(Reminder reminder, String action, int fields) {
+        // Храним снимок, чтобы последующие изменения в списке не попали в отправку
+        this.reminder = new Reminder(reminder);
+        this.action = action;
+        this.fields = ACTION_PATCH.equals(action) ? fields & ALL_FIELDS : ALL_FIELDS;
+    }
+
+    public Reminder getReminder() { return reminder; }
+    public String getAction() { return action; }
+    public String getReminderId() { return reminder.getId(); }
+    public int getFields() { return fields; }
+
+    public boolean hasField(int field) {
+        return (fields & field) != 0;
+    }
+
+    // Поля, которыми отличаются два состояния одного напоминания
+    public static int changedFields(Reminder previous, Reminder updated) {
+        int fields = 0;
+        if (!Objects.equals(previous.getTitle(), updated.getTitle())) {
+            fields |= FIELD_TITLE;
+        }
+        if (!Objects.equals(previous.getDescription(), updated.getDescription())) {
+            fields |= FIELD_DESCRIPTION;
+        }
+        if (!Objects.equals(previous.getDateTime(), updated.getDateTime())) {
+            fields |= FIELD_DATE_TIME;
+        }
+        if (previous.isActive() != updated.isActive()) {
+            fields |= FIELD_ACTIVE;
+        }
+        if (!Objects.equals(previous.getRecurrence(), updated.getRecurrence())) {
+            fields |= FIELD_RECURRENCE;
+        }
+        return fields;
+    }
+}
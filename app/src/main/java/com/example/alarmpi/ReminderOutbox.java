@@ -0,0 +1,504 @@
+package com.example.alarmpi;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+// Журнал исходящих операций (outbox).
+// Каждая операция записывается в файл и удаляется только после подтверждения
+// сервером. Запись на диск (с fsync) идёт в фоновом потоке записи по порядку
+// вызовов, так что главный поток не ждёт диска. Файл - это append-only лог из строк JSON:
+//   {"seq": 1, "action": "add", "reminder": {...}}  - новая операция
+//   {"seq": 2, "action": "patch", "fields": 8, ...}  - частичное обновление (маска полей)
+//   {"ack": 1}                                      - операция подтверждена сервером
+// Подтверждённые записи вычищаются перезаписью файла (компактизация), когда их
+// становится не меньше, чем живых.
+// В памяти только номера неподтверждённых операций (битовый набор) и id удаляемых
+// напоминаний; сами операции читаются из файла порциями (readPending), так что
+// тысячи операций для недоступного сервера не держатся в памяти.
+public class ReminderOutbox {
+
+    private static final String TAG = "ReminderOutbox";
+    private static final String FILE_NAME = "outbox.log";
+    // Компактизация не раньше стольких подтверждений
+    private static final int COMPACT_AFTER_ACKS = 100;
+
+    // Журналы по серверам (ServerEndpoints): у каждого своя очередь
+    private static final Map<String, ReminderOutbox> INSTANCES = new HashMap<>();
+
+    public static class Entry {
+        private final long seq;
+        private final ReminderOperation operation;
+
+        Entry(long seq, ReminderOperation operation) {
+            this.seq = seq;
+            this.operation = operation;
+        }
+
+        public long getSeq() { return seq; }
+        public ReminderOperation getOperation() { return operation; }
+    }
+
+    private final File file;
+    // Один поток на все журналы: записи каждого файла идут в порядке вызовов
+    private final Executor diskExecutor;
+    // Неподтверждённые операции: бит seq - base
+    private BitSet pending = new BitSet();
+    private long base = 1;
+    private int pendingCount = 0;
+    // Неподтверждённые удаления: seq -> id напоминания
+    private final Map<Long, String> pendingDeletes = new HashMap<>();
+    private long nextSeq = 1;
+    private int acksSinceCompaction = 0;
+    // Журнал удалённого сервера больше не пишется на диск
+    private boolean deleted = false;
+
+    // Где продолжить readPending (только поток записи): смещение в файле строки,
+    // следующей за операцией readAfterSeq
+    private long readAfterSeq = -1;
+    private long readOffset = 0;
+
+    // Один журнал на сервер и процесс - иначе несколько экземпляров будут писать в один файл.
+    // Журнал основного сервера остаётся в прежнем файле. Первый вызов читает файл -
+    // его делают в потоке записи (OutboxDrainer), а не в главном.
+    public static synchronized ReminderOutbox forEndpoint(Context context, String endpointId,
+                                                          Executor diskExecutor) {
+        ReminderOutbox outbox = INSTANCES.get(endpointId);
+        if (outbox == null) {
+            outbox = new ReminderOutbox(new File(context.getApplicationContext().getFilesDir(),
+                    fileNameOf(endpointId)), diskExecutor);
+            INSTANCES.put(endpointId, outbox);
+        }
+        return outbox;
+    }
+
+    // Сервер удалён - его неотправленные операции больше не нужны
+    public static synchronized void delete(Context context, String endpointId) {
+        ReminderOutbox outbox = INSTANCES.remove(endpointId);
+        File file = new File(context.getApplicationContext().getFilesDir(), fileNameOf(endpointId));
+        if (outbox != null) {
+            synchronized (outbox) {
+                outbox.pending.clear();
+                outbox.pendingCount = 0;
+                outbox.pendingDeletes.clear();
+                outbox.deleted = true;
+            }
+            // После уже начатых записей, иначе они создали бы файл заново
+            outbox.diskExecutor.execute(() -> deleteFile(file));
+        } else {
+            deleteFile(file);
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Не удалось удалить журнал " + file.getName());
+        }
+    }
+
+    private static String fileNameOf(String endpointId) {
+        return ServerEndpoints.PRIMARY_ID.equals(endpointId) ? FILE_NAME : "outbox-" + endpointId + ".log";
+    }
+
+    ReminderOutbox(File file, Executor diskExecutor) {
+        this.file = file;
+        this.diskExecutor = diskExecutor;
+        load();
+    }
+
+    // Записать операцию в журнал. Возвращает её порядковый номер.
+    public synchronized long append(ReminderOperation operation) {
+        List<ReminderOperation> operations = new ArrayList<>();
+        operations.add(operation);
+        return appendAll(operations).get(0).getSeq();
+    }
+
+    // Записать несколько операций одной записью на диск. Номера и список
+    // неподтверждённых обновляются сразу, запись в файл - в фоне.
+    public synchronized List<Entry> appendAll(List<ReminderOperation> operations) {
+        final List<Entry> entries = new ArrayList<>(operations.size());
+        for (ReminderOperation operation : operations) {
+            Entry entry = new Entry(nextSeq++, operation);
+            markPending(entry.getSeq(), operation);
+            entries.add(entry);
+        }
+        // Операции - неизменяемые снимки, их можно сериализовать в потоке записи
+        diskExecutor.execute(() -> {
+            StringBuilder lines = new StringBuilder();
+            try {
+                for (Entry entry : entries) {
+                    lines.append(toJson(entry)).append('\n');
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Ошибка сериализации операции", e);
+            }
+            writeLines(lines.toString());
+        });
+        return entries;
+    }
+
+    // Отметить операции как подтверждённые сервером
+    public synchronized void ack(List<Long> seqs) {
+        StringBuilder lines = new StringBuilder();
+        for (Long seq : seqs) {
+            if (unmarkPending(seq)) {
+                lines.append("{\"ack\":").append(seq).append("}\n");
+                acksSinceCompaction++;
+            }
+        }
+        if (lines.length() == 0) {
+            return;
+        }
+
+        // Мёртвых строк не меньше, чем живых: перезапись окупается
+        if (acksSinceCompaction >= Math.max(COMPACT_AFTER_ACKS, pendingCount) || pendingCount == 0) {
+            compact();
+        } else {
+            final String acks = lines.toString();
+            diskExecutor.execute(() -> writeLines(acks));
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingCount == 0;
+    }
+
+    // Номер последней записанной операции
+    public synchronized long getLastSeq() {
+        return nextSeq - 1;
+    }
+
+    // Есть ли неподтверждённые операции с номером больше seq
+    public synchronized boolean hasPendingAfter(long seq) {
+        return pending.nextSetBit(indexOf(Math.max(seq + 1, base))) >= 0;
+    }
+
+    // Напоминания, удаление которых ещё не подтверждено
+    public synchronized Set<String> getPendingDeletes() {
+        return new HashSet<>(pendingDeletes.values());
+    }
+
+    // Следующие (не больше limit) неподтверждённые операции с номерами больше afterSeq,
+    // в порядке записи. Только в потоке записи: к этому моменту в файле все операции
+    // до upToSeq (getLastSeq() при постановке чтения в очередь). Неподтверждённые
+    // операции до upToSeq, строк которых в файле нет (запись не удалась), снимаются.
+    List<Entry> readPending(long afterSeq, long upToSeq, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        long offset = afterSeq == readAfterSeq ? readOffset : 0;
+        long lastSeq = afterSeq;
+        boolean complete = true;
+        if (file.exists()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                skipFully(in, offset);
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                int length;
+                while (entries.size() < limit && (length = readLine(in, line)) >= 0) {
+                    offset += length;
+                    Entry entry = parseEntry(line);
+                    if (entry != null && entry.getSeq() > afterSeq && isPending(entry.getSeq())) {
+                        entries.add(entry);
+                        lastSeq = entry.getSeq();
+                    }
+                }
+                complete = entries.size() < limit;
+            } catch (IOException e) {
+                Log.e(TAG, "Ошибка чтения журнала", e);
+                readAfterSeq = -1;
+                return entries;
+            }
+        }
+        readAfterSeq = lastSeq;
+        readOffset = offset;
+        if (complete) {
+            dropMissing(afterSeq, upToSeq, entries);
+        }
+        return entries;
+    }
+
+    private synchronized boolean isPending(long seq) {
+        return seq >= base && pending.get(indexOf(seq));
+    }
+
+    // Файл прочитан до конца: кроме found, у операций (afterSeq, upToSeq] строк
+    // в файле нет - отправить их нечего
+    private synchronized void dropMissing(long afterSeq, long upToSeq, List<Entry> found) {
+        int lost = 0;
+        int next = 0;
+        for (long seq = afterSeq + 1; seq <= upToSeq; seq++) {
+            if (next < found.size() && found.get(next).getSeq() == seq) {
+                next++;
+            } else if (unmarkPending(seq)) {
+                lost++;
+            }
+        }
+        if (lost > 0) {
+            Log.e(TAG, "Потеряно операций (нет в журнале): " + lost);
+        }
+    }
+
+    private void markPending(long seq, ReminderOperation operation) {
+        if (pendingCount == 0) {
+            // Пустой набор начинается заново - биты не растут вечно
+            pending.clear();
+            base = seq;
+        }
+        pending.set(indexOf(seq));
+        pendingCount++;
+        if (ReminderOperation.ACTION_DELETE.equals(operation.getAction())) {
+            pendingDeletes.put(seq, operation.getReminderId());
+        }
+    }
+
+    private boolean unmarkPending(long seq) {
+        if (seq < base || !pending.get(indexOf(seq))) {
+            return false;
+        }
+        pending.clear(indexOf(seq));
+        pendingCount--;
+        pendingDeletes.remove(seq);
+        return true;
+    }
+
+    private int indexOf(long seq) {
+        return (int) (seq - base);
+    }
+
+    // Перезапись файла только с неподтверждёнными операциями (вызывается под монитором).
+    // Строки копируются из старого файла в потоке записи после уже поставленных
+    // туда записей; подтверждённые к этому моменту отбрасываются.
+    private void compact() {
+        if (deleted) {
+            return;
+        }
+        acksSinceCompaction = 0;
+        diskExecutor.execute(() -> {
+            if (!file.exists()) {
+                return;
+            }
+            // Пишем во временный файл и атомарно подменяем журнал
+            File tmp = new File(file.getPath() + ".tmp");
+            if (tmp.exists() && !tmp.delete()) {
+                Log.e(TAG, "Не удалось удалить " + tmp);
+            }
+            int kept = 0;
+            long keptBytes = 0;
+            long newReadOffset = -1;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file));
+                 FileOutputStream out = new FileOutputStream(tmp)) {
+                OutputStream buffered = new BufferedOutputStream(out);
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                while (readLine(in, line) >= 0) {
+                    Entry entry = parseEntry(line);
+                    if (entry == null || !isPending(entry.getSeq())) {
+                        continue;
+                    }
+                    if (newReadOffset < 0 && entry.getSeq() > readAfterSeq) {
+                        newReadOffset = keptBytes;
+                    }
+                    line.write('\n');
+                    line.writeTo(buffered);
+                    keptBytes += line.size();
+                    kept++;
+                }
+                buffered.flush();
+                out.getFD().sync();
+            } catch (IOException e) {
+                Log.e(TAG, "Ошибка компактизации журнала", e);
+                return;
+            }
+            synchronized (this) {
+                if (deleted) {
+                    return;
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                Log.e(TAG, "Не удалось заменить журнал");
+                return;
+            }
+            // Место продолжения readPending в новом файле
+            readOffset = newReadOffset >= 0 ? newReadOffset : keptBytes;
+            Log.d(TAG, "Журнал сжат, осталось операций: " + kept);
+        });
+    }
+
+    // Дописать строки в файл; только в потоке записи
+    private void writeLines(String lines) {
+        synchronized (this) {
+            if (deleted) {
+                return;
+            }
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(lines);
+            writer.flush();
+            // Запись должна пережить убийство процесса
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Ошибка записи журнала", e);
+        }
+    }
+
+    // Оборвана ли последняя строка файла (процесс убит посреди записи)
+    private boolean endsWithPartialLine() {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length == 0) {
+                return false;
+            }
+            raf.seek(length - 1);
+            return raf.read() != '\n';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Восстановление состояния из журнала при старте: только номера и удаления,
+    // сами операции остаются в файле
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        int lineCount = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            while (readLine(in, line) >= 0) {
+                lineCount++;
+                if (line.size() == 0) {
+                    continue;
+                }
+                String text = line.toString("UTF-8");
+                try {
+                    JSONObject json = new JSONObject(text);
+                    if (json.has("ack")) {
+                        unmarkPending(json.getLong("ack"));
+                    } else {
+                        Entry entry = fromJson(json);
+                        markPending(entry.getSeq(), entry.getOperation());
+                        nextSeq = Math.max(nextSeq, entry.getSeq() + 1);
+                    }
+                } catch (JSONException e) {
+                    // Недописанная последняя строка после сбоя - пропускаем
+                    Log.w(TAG, "Пропущена повреждённая запись журнала: " + text);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Ошибка чтения журнала", e);
+        }
+
+        Log.d(TAG, "Неотправленных операций в журнале: " + pendingCount);
+        if (endsWithPartialLine()) {
+            // Завершаем оборванную строку, чтобы следующая запись не склеилась с ней
+            diskExecutor.execute(() -> writeLines("\n"));
+        }
+        if (lineCount > pendingCount) {
+            compact();
+        }
+    }
+
+    // Операция из строки журнала; null - подтверждение или повреждённая строка
+    private static Entry parseEntry(ByteArrayOutputStream line) {
+        if (line.size() == 0) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(line.toString("UTF-8"));
+            return json.has("ack") ? null : fromJson(json);
+        } catch (JSONException | IOException e) {
+            return null;
+        }
+    }
+
+    // Прочитать строку (без '\n') в line. Возвращает число прочитанных байт вместе
+    // с '\n' или -1 в конце файла; оборванная последняя строка не читается.
+    private static int readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int length = 0;
+        int b;
+        while ((b = in.read()) >= 0) {
+            length++;
+            if (b == '\n') {
+                return length;
+            }
+            line.write(b);
+        }
+        return -1;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    return;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static String toJson(Entry entry) throws JSONException {
+        Reminder reminder = entry.getOperation().getReminder();
+        JSONObject jsonReminder = new JSONObject();
+        jsonReminder.put("id", reminder.getId());
+        jsonReminder.put("title", reminder.getTitle());
+        jsonReminder.put("description", reminder.getDescription());
+        jsonReminder.put("dateTime", reminder.getDateTime() != null ? reminder.getDateTime().getTime() : 0);
+        jsonReminder.put("isActive", reminder.isActive());
+        if (reminder.isRecurring()) {
+            jsonReminder.put("recurrence", reminder.getRecurrence().toString());
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("seq", entry.getSeq());
+        json.put("action", entry.getOperation().getAction());
+        if (ReminderOperation.ACTION_PATCH.equals(entry.getOperation().getAction())) {
+            json.put("fields", entry.getOperation().getFields());
+        }
+        json.put("reminder", jsonReminder);
+        return json.toString();
+    }
+
+    private static Entry fromJson(JSONObject json) throws JSONException {
+        JSONObject jsonReminder = json.getJSONObject("reminder");
+        Reminder reminder = new Reminder(
+                jsonReminder.getString("id"),
+                jsonReminder.optString("title"),
+                jsonReminder.optString("description"),
+                new Date(jsonReminder.getLong("dateTime")),
+                jsonReminder.optBoolean("isActive", true));
+        reminder.setRecurrence(ReminderJsonReader.parseRecurrence(jsonReminder.optString("recurrence", null)));
+        return new Entry(json.getLong("seq"), new ReminderOperation(reminder, json.getString("action"),
+                json.optInt("fields", ReminderOperation.ALL_FIELDS)));
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.alarmpi;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+// Постраничная загрузка напоминаний для списка.
+// Из базы читаются страницы по PAGE_SIZE в порядке времени срабатывания - только
+// те, что рядом с видимой частью списка. Следующая страница загружается заранее,
+// страницы дальше MAX_PAGE_DISTANCE от текущей выгружаются.
+// Подписчик получает окно (Window): список полной длины, где незагруженные
+// позиции равны null. Все методы вызываются из главного потока.
+// С фильтром (результат поиска - упорядоченные id) окно состоит только из
+// этих напоминаний, и страницы читаются по id.
+public class ReminderPager {
+
+    public static final int PAGE_SIZE = 50;
+    // На таком расстоянии от края страницы начинаем загружать соседнюю
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+    // Сколько страниц держим в памяти по обе стороны от текущей
+    private static final int MAX_PAGE_DISTANCE = 2;
+
+    public interface Listener {
+        void onWindowChanged(Window window);
+    }
+
+    private final ReminderRepository repository;
+    private final Listener listener;
+    private final ReminderRepository.Listener repositoryListener = this::reload;
+
+    private int totalCount = 0;
+    private final Pages pages = new Pages();
+    private int currentPage = 0;
+    // Результат поиска; null - показываются все напоминания
+    private List<String> filter = null;
+    // Растёт при каждом изменении данных: ответы на старые запросы отбрасываются
+    private int generation = 0;
+
+    public ReminderPager(ReminderRepository repository, Listener listener) {
+        this.repository = repository;
+        this.listener = listener;
+        repository.addListener(repositoryListener);
+        reload();
+    }
+
+    // Отписаться от хранилища: владелец (RemindersViewModel) уничтожен
+    public void close() {
+        repository.removeListener(repositoryListener);
+        generation++;
+    }
+
+    // Показывать только напоминания с этими id в этом порядке; null - все.
+    // Пока новые страницы читаются, на экране остаётся прежнее окно.
+    public void setFilter(List<String> ids) {
+        if (Objects.equals(filter, ids)) {
+            return;
+        }
+        filter = ids != null ? Collections.unmodifiableList(new ArrayList<>(ids)) : null;
+        pages.clear();
+        currentPage = 0;
+        reload();
+    }
+
+    public boolean isFiltered() {
+        return filter != null;
+    }
+
+    // Список обратился к позиции (привязка карточки): подгружаем её страницу и соседнюю
+    public void loadAround(int position) {
+        int page = position / PAGE_SIZE;
+        if (page != currentPage) {
+            currentPage = page;
+            evictFarPages();
+        }
+        requestPage(page);
+        int offset = position % PAGE_SIZE;
+        if (offset >= PAGE_SIZE - PREFETCH_DISTANCE) {
+            requestPage(page + 1);
+        } else if (offset < PREFETCH_DISTANCE) {
+            requestPage(page - 1);
+        }
+    }
+
+    private void requestPage(int page) {
+        if (page < 0 || page * PAGE_SIZE >= totalCount || pages.isLoaded(page) || pages.isLoading(page)) {
+            return;
+        }
+        pages.setLoading(page, true);
+        final int requestGeneration = generation;
+        final List<String> ids = filter;
+        // Следующую за загруженной страницу читаем по ключу последней строки, без OFFSET
+        List<Reminder> previous = pages.get(page - 1);
+        final Reminder after = ids == null && previous != null && previous.size() == PAGE_SIZE
+                ? previous.get(PAGE_SIZE - 1) : null;
+        repository.read(db -> after != null
+                ? ReminderRepository.queryPageAfter(db, after, PAGE_SIZE)
+                : queryPage(db, ids, page), result -> {
+            if (requestGeneration != generation) {
+                return; // данные изменились, страницу перечитает reload
+            }
+            pages.setLoading(page, false);
+            if (result == null || Math.abs(page - currentPage) > MAX_PAGE_DISTANCE) {
+                return;
+            }
+            pages.put(page, Collections.unmodifiableList(result));
+            publish();
+        });
+    }
+
+    // Данные изменились: одним запросом перечитываем количество и загруженные страницы
+    private void reload() {
+        final int requestGeneration = ++generation;
+        pages.clearLoading();
+        final int[] wanted = pages.isEmpty() ? new int[]{currentPage} : pages.loadedPages();
+        final List<String> ids = filter;
+        repository.read(db -> {
+            Pages loaded = new Pages();
+            int count = ids != null ? ids.size() : ReminderRepository.queryCount(db);
+            for (int page : wanted) {
+                if (page * PAGE_SIZE < count) {
+                    loaded.put(page, Collections.unmodifiableList(queryPage(db, ids, page)));
+                }
+            }
+            return new Window(count, loaded);
+        }, window -> {
+            if (window == null || requestGeneration != generation) {
+                return;
+            }
+            totalCount = window.size();
+            pages.clear();
+            for (int page = 0; page < window.pagesByIndex.length; page++) {
+                if (window.pagesByIndex[page] != null) {
+                    pages.put(page, window.page(page));
+                }
+            }
+            publish();
+        });
+    }
+
+    // Страница всех напоминаний или результата поиска ids
+    private static List<Reminder> queryPage(SQLiteDatabase db, List<String> ids, int page) {
+        if (ids == null) {
+            return ReminderRepository.queryPage(db, page * PAGE_SIZE, PAGE_SIZE);
+        }
+        // Окно на экране может быть от прежнего фильтра - позиция за концом нового
+        int from = Math.min(ids.size(), page * PAGE_SIZE);
+        return ReminderRepository.queryByIds(db,
+                ids.subList(from, Math.min(ids.size(), from + PAGE_SIZE)));
+    }
+
+    private void evictFarPages() {
+        pages.retainAround(currentPage, MAX_PAGE_DISTANCE);
+    }
+
+    private void publish() {
+        listener.onWindowChanged(new Window(totalCount, pages));
+    }
+
+    // Загруженные и загружаемые страницы по номеру: массив и BitSet вместо Map<Integer, ...>
+    // и Set<Integer>, так что проверки при каждой привязке карточки (loadAround)
+    // не упаковывают номер страницы. Не потокобезопасен.
+    static final class Pages {
+        private List<?>[] loaded = new List<?>[16];
+        private final BitSet loading = new BitSet();
+        private int count = 0;
+
+        boolean isLoaded(int page) {
+            return page >= 0 && page < loaded.length && loaded[page] != null;
+        }
+
+        boolean isLoading(int page) {
+            return page >= 0 && loading.get(page);
+        }
+
+        void setLoading(int page, boolean isLoading) {
+            loading.set(page, isLoading);
+        }
+
+        void clearLoading() {
+            loading.clear();
+        }
+
+        // null - страница не загружена
+        @SuppressWarnings("unchecked")
+        List<Reminder> get(int page) {
+            return isLoaded(page) ? (List<Reminder>) loaded[page] : null;
+        }
+
+        void put(int page, List<Reminder> reminders) {
+            if (page >= loaded.length) {
+                loaded = Arrays.copyOf(loaded, Math.max(page + 1, loaded.length * 2));
+            }
+            if (loaded[page] == null) {
+                count++;
+            }
+            loaded[page] = reminders;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        int[] loadedPages() {
+            int[] pageNumbers = new int[count];
+            int next = 0;
+            for (int page = 0; page < loaded.length; page++) {
+                if (loaded[page] != null) {
+                    pageNumbers[next++] = page;
+                }
+            }
+            return pageNumbers;
+        }
+
+        // Выгрузить страницы дальше distance от current
+        void retainAround(int current, int distance) {
+            for (int page = 0; page < loaded.length; page++) {
+                if (loaded[page] != null && Math.abs(page - current) > distance) {
+                    loaded[page] = null;
+                    count--;
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(loaded, null);
+            count = 0;
+        }
+    }
+
+    // Неизменяемый снимок окна: длина равна числу напоминаний в базе,
+    // на незагруженных позициях null
+    public static class Window extends AbstractList<Reminder> {
+        private final int size;
+        // Страницы по номеру: get() вызывается DiffUtil и при каждой привязке
+        private final List<?>[] pagesByIndex;
+
+        // Снимок страниц pages: дальнейшие изменения pages окно не видит
+        Window(int size, Pages pages) {
+            this.size = size;
+            this.pagesByIndex = new List<?>[(size + PAGE_SIZE - 1) / PAGE_SIZE];
+            for (int page = 0; page < pagesByIndex.length; page++) {
+                pagesByIndex[page] = pages.get(page);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Reminder> page(int page) {
+            return (List<Reminder>) pagesByIndex[page];
+        }
+
+        @Override
+        public Reminder get(int position) {
+            if (position < 0 || position >= size) {
+                throw new IndexOutOfBoundsException("position " + position + ", size " + size);
+            }
+            List<?> page = pagesByIndex[position / PAGE_SIZE];
+            int offset = position % PAGE_SIZE;
+            return page != null && offset < page.size() ? (Reminder) page.get(offset) : null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        // Позиция напоминания среди загруженных страниц, -1 если его там нет
+        public int positionOf(String id) {
+            for (int index = 0; index < pagesByIndex.length; index++) {
+                List<Reminder> page = page(index);
+                if (page == null) {
+                    continue;
+                }
+                for (int i = 0; i < page.size(); i++) {
+                    if (page.get(i).getId().equals(id)) {
+                        return index * PAGE_SIZE + i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        // Загруженные напоминания, без пустых позиций
+        public List<Reminder> getLoaded() {
+            List<Reminder> loaded = new ArrayList<>();
+            for (int index = 0; index < pagesByIndex.length; index++) {
+                if (pagesByIndex[index] != null) {
+                    loaded.addAll(page(index));
+                }
+            }
+            return loaded;
+        }
+    }
+}
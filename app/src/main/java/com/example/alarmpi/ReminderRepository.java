@@ -0,0 +1,476 @@
+package com.example.alarmpi;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Единый источник напоминаний для UI и синхронизации.
+// Данные хранятся только в SQLite (ReminderDatabase): история может насчитывать
+// десятки тысяч напоминаний, поэтому целиком в память они не загружаются.
+// Список читает их страницами через ReminderPager.
+// Все запросы и записи выполняются в одном фоновом потоке в порядке вызовов,
+// результаты и уведомления об изменениях приходят в главный поток.
+public class ReminderRepository {
+
+    private static final String TAG = "ReminderRepository";
+
+    private static ReminderRepository instance;
+
+    // Подписчик узнаёт, что данные изменились, и сам перечитывает нужное
+    public interface Listener {
+        void onRemindersChanged();
+    }
+
+    // Что именно записано - для тех, кто держит свою копию данных (поисковый индекс).
+    // Вызывается в потоке базы сразу после записи, в порядке записей.
+    public interface WriteListener {
+        void onRemindersWritten(List<Reminder> saved, List<String> deletedIds);
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    // Запрос к базе, выполняется в потоке базы
+    interface Query<T> {
+        T run(SQLiteDatabase db);
+    }
+
+    // Порядок отображения: по времени срабатывания, при равенстве - по id
+    public static final Comparator<Reminder> BY_DATE_TIME = (a, b) -> {
+        int result = Long.compare(timeOf(a), timeOf(b));
+        return result != 0 ? result : a.getId().compareTo(b.getId());
+    };
+
+    private static final String ACTIVE_FROM = "(" + ReminderDatabase.COLUMN_DATE_TIME + " >= ? OR "
+            + ReminderDatabase.COLUMN_RECURRENCE + " IS NOT NULL) AND " + ReminderDatabase.COLUMN_IS_ACTIVE + " = 1";
+
+    private static final String ORDER_BY_DATE_TIME =
+            ReminderDatabase.COLUMN_DATE_TIME + ", " + ReminderDatabase.COLUMN_ID;
+
+    private final ReminderDatabase database;
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "ReminderRepository-db"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Маршруты напоминаний, ещё не записанных в базу (маршрут задан до сохранения);
+    // только в потоке базы
+    private final Map<String, String> unsavedRoutes = new HashMap<>();
+
+    private final List<Listener> listeners = new ArrayList<>();
+    private final List<WriteListener> writeListeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean notifyScheduled = new AtomicBoolean(false);
+
+    public static synchronized ReminderRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReminderRepository(new ReminderDatabase(context));
+        }
+        return instance;
+    }
+
+    ReminderRepository(ReminderDatabase database) {
+        this.database = database;
+        // База открывается сразу при старте процесса: при открытии ReminderIds
+        // продолжает отсчёт от уже записанных id, до того как появятся новые
+        dbExecutor.execute(() -> {
+            try {
+                database.getWritableDatabase();
+            } catch (Exception e) {
+                Log.e(TAG, "Ошибка открытия базы", e);
+            }
+        });
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void addWriteListener(WriteListener listener) {
+        writeListeners.add(listener);
+    }
+
+    public void removeWriteListener(WriteListener listener) {
+        writeListeners.remove(listener);
+    }
+
+    // Много записей подряд (например, порции с сервера) дают одно уведомление.
+    // Вызывается из потока базы после записи.
+    private void notifyChanged() {
+        if (!notifyScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        mainHandler.post(() -> {
+            notifyScheduled.set(false);
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.onRemindersChanged();
+            }
+        });
+    }
+
+    // Выполнить запрос в потоке базы и вернуть результат в главный поток
+    <T> void read(Query<T> query, Callback<T> callback) {
+        dbExecutor.execute(() -> {
+            T result = null;
+            try {
+                result = query.run(database.getReadableDatabase());
+            } catch (Exception e) {
+                Log.e(TAG, "Ошибка чтения базы", e);
+            }
+            final T delivered = result;
+            mainHandler.post(() -> callback.onResult(delivered));
+        });
+    }
+
+    // Запрос из другого фонового потока (экспорт в файл): результат через Future,
+    // без главного потока. Порядок с записями тот же - один поток базы.
+    <T> Future<T> readInBackground(Query<T> query) {
+        return dbExecutor.submit(() -> query.run(database.getReadableDatabase()));
+    }
+
+    public void count(Callback<Integer> callback) {
+        read(ReminderRepository::queryCount, callback);
+    }
+
+    public void get(String id, Callback<Reminder> callback) {
+        read(db -> {
+            List<Reminder> found = queryReminders(db, ReminderDatabase.COLUMN_ID + " = ?",
+                    new String[]{id}, null);
+            return found.isEmpty() ? null : found.get(0);
+        }, callback);
+    }
+
+    // Все напоминания в порядке времени срабатывания - только для полной синхронизации.
+    // Десятки тысяч строк читаются сразу в столбцы (ReminderTable), без объекта на строку.
+    public void getAll(Callback<ReminderTable> callback) {
+        read(db -> queryTable(db, null, null), callback);
+    }
+
+    // Ближайшее активное напоминание, срабатывающее не раньше time
+    public void findNextDue(long time, Callback<Reminder> callback) {
+        read(db -> {
+            List<Reminder> once = queryReminders(db,
+                    ReminderDatabase.COLUMN_DATE_TIME + " >= ? AND " + ReminderDatabase.COLUMN_RECURRENCE
+                            + " IS NULL AND " + ReminderDatabase.COLUMN_IS_ACTIVE + " = 1",
+                    new String[]{String.valueOf(time)}, "1");
+            Reminder next = once.isEmpty() ? null : once.get(0);
+            // Повторяющихся немного - ближайшее срабатывание каждого считается по правилу
+            for (Reminder reminder : queryReminders(db, ReminderDatabase.COLUMN_RECURRENCE + " IS NOT NULL AND "
+                    + ReminderDatabase.COLUMN_IS_ACTIVE + " = 1", null, null)) {
+                if (next == null || reminder.nextOccurrence(time) < next.nextOccurrence(time)) {
+                    next = reminder;
+                }
+            }
+            return next;
+        }, callback);
+    }
+
+    // Активные напоминания, которые ещё сработают не раньше time: разовые по времени,
+    // повторяющиеся - все (их ближайшее срабатывание считается по правилу)
+    public void getActiveFrom(long time, Callback<ReminderTable> callback) {
+        read(db -> queryTable(db, ACTIVE_FROM, new String[]{String.valueOf(time)}), callback);
+    }
+
+    // Как записывать напоминания, которые уже есть в базе
+    private enum Merge {
+        // Заменить целиком (правка на телефоне)
+        REPLACE,
+        // Только если версия не старее сохранённой (изменения с сервера)
+        NEWER_ONLY,
+        // Заменить поля, но оставить сохранённые версию и время изменения (импорт из файла)
+        KEEP_VERSION
+    }
+
+    // Сохранить (добавить или обновить) напоминание
+    public void save(Reminder reminder) {
+        writeAsync(Collections.singletonList(reminder), Collections.emptyList(), Merge.REPLACE, null);
+    }
+
+    // Сохранить порцию (импорт из файла) одной транзакцией. У напоминаний, которые
+    // уже есть в базе, остаются сохранённые версия и время изменения - иначе версия 0
+    // проиграла бы серверной копии при следующей синхронизации. onSaved - в главном
+    // потоке после записи: записанные напоминания с этими версиями, null - ошибка.
+    public void saveAll(List<Reminder> reminders, Callback<List<Reminder>> onSaved) {
+        writeAsync(reminders, Collections.emptyList(), Merge.KEEP_VERSION, onSaved);
+    }
+
+    // Сохранить изменения с сервера: более старые версии не затирают новые
+    public void saveFromServer(List<Reminder> reminders) {
+        saveFromServer(reminders, null);
+    }
+
+    // То же; onWritten - в главном потоке после записи, false - запись не удалась
+    public void saveFromServer(List<Reminder> reminders, Callback<Boolean> onWritten) {
+        writeAsync(reminders, Collections.emptyList(), Merge.NEWER_ONLY, succeeded(onWritten));
+    }
+
+    public void delete(String id) {
+        deleteAll(Collections.singletonList(id));
+    }
+
+    public void deleteAll(Collection<String> ids) {
+        deleteAll(ids, null);
+    }
+
+    public void deleteAll(Collection<String> ids, Callback<Boolean> onWritten) {
+        writeAsync(Collections.emptyList(), ids, Merge.REPLACE, succeeded(onWritten));
+    }
+
+    // Маршрут напоминания (ServerEndpoints): id серверов через запятую, null - на все.
+    // Хранится в строке напоминания и удаляется вместе с ней.
+    public void saveRoute(String id, String route) {
+        dbExecutor.execute(() -> {
+            try {
+                ContentValues values = new ContentValues();
+                values.put(ReminderDatabase.COLUMN_ROUTES, route);
+                if (database.getWritableDatabase().update(ReminderDatabase.TABLE_REMINDERS, values,
+                        ReminderDatabase.COLUMN_ID + " = ?", new String[]{id}) == 0) {
+                    // Напоминание ещё не записано - маршрут войдёт в его строку
+                    unsavedRoutes.put(id, route);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Ошибка записи маршрута", e);
+            }
+        });
+    }
+
+    // Все заданные маршруты (id напоминания -> столбец routes), из фонового потока
+    Future<Map<String, String>> readRoutes() {
+        return readInBackground(ReminderRepository::queryRoutes);
+    }
+
+    private static Callback<List<Reminder>> succeeded(Callback<Boolean> callback) {
+        return callback != null ? saved -> callback.onResult(saved != null) : null;
+    }
+
+    // Запись на диск одной транзакцией в потоке базы. onWritten получает записанные
+    // напоминания или null, если транзакция не удалась и ничего не записано.
+    private void writeAsync(List<Reminder> upserts, Collection<String> deletes, Merge merge,
+                            Callback<List<Reminder>> onWritten) {
+        if (upserts.isEmpty() && deletes.isEmpty()) {
+            if (onWritten != null) {
+                mainHandler.post(() -> onWritten.onResult(new ArrayList<>()));
+            }
+            return;
+        }
+        // Копии: вызывающий может поменять объекты до записи
+        final List<Reminder> snapshot = new ArrayList<>(upserts.size());
+        for (Reminder reminder : upserts) {
+            snapshot.add(new Reminder(reminder));
+        }
+        final List<String> deletedIds = new ArrayList<>(deletes);
+
+        dbExecutor.execute(() -> {
+            SQLiteDatabase db = database.getWritableDatabase();
+            boolean succeeded = false;
+            List<Reminder> saved = new ArrayList<>(snapshot.size());
+            List<String> deleted = new ArrayList<>(deletedIds.size());
+            db.beginTransaction();
+            try {
+                ContentValues values = new ContentValues();
+                for (Reminder reminder : snapshot) {
+                    if (merge == Merge.NEWER_ONLY && storedVersion(db, reminder.getId()) > reminder.getVersion()) {
+                        continue;
+                    }
+                    if (merge == Merge.KEEP_VERSION) {
+                        keepStoredVersion(db, reminder);
+                    }
+                    values.clear();
+                    values.put(ReminderDatabase.COLUMN_ID, reminder.getId());
+                    values.put(ReminderDatabase.COLUMN_TITLE, reminder.getTitle());
+                    values.put(ReminderDatabase.COLUMN_DESCRIPTION, reminder.getDescription());
+                    values.put(ReminderDatabase.COLUMN_DATE_TIME, timeOf(reminder));
+                    values.put(ReminderDatabase.COLUMN_IS_ACTIVE, reminder.isActive() ? 1 : 0);
+                    values.put(ReminderDatabase.COLUMN_VERSION, reminder.getVersion());
+                    values.put(ReminderDatabase.COLUMN_UPDATED_AT, reminder.getUpdatedAt());
+                    values.put(ReminderDatabase.COLUMN_RECURRENCE,
+                            reminder.isRecurring() ? reminder.getRecurrence().toString() : null);
+                    // Обновление, а не замена строки: маршрут (routes) остаётся
+                    if (db.update(ReminderDatabase.TABLE_REMINDERS, values, ReminderDatabase.COLUMN_ID + " = ?",
+                            new String[]{reminder.getId()}) == 0) {
+                        values.put(ReminderDatabase.COLUMN_ROUTES, unsavedRoutes.get(reminder.getId()));
+                        db.insertOrThrow(ReminderDatabase.TABLE_REMINDERS, null, values);
+                    }
+                    saved.add(reminder);
+                }
+                for (String id : deletedIds) {
+                    if (db.delete(ReminderDatabase.TABLE_REMINDERS,
+                            ReminderDatabase.COLUMN_ID + " = ?", new String[]{id}) > 0) {
+                        deleted.add(id);
+                    }
+                }
+                db.setTransactionSuccessful();
+                succeeded = true;
+            } catch (Exception e) {
+                Log.e(TAG, "Ошибка записи в базу", e);
+            } finally {
+                db.endTransaction();
+            }
+            if (succeeded) {
+                for (Reminder reminder : saved) {
+                    unsavedRoutes.remove(reminder.getId());
+                }
+                unsavedRoutes.keySet().removeAll(deletedIds);
+            }
+            if (succeeded && (!saved.isEmpty() || !deleted.isEmpty())) {
+                for (WriteListener listener : writeListeners) {
+                    listener.onRemindersWritten(saved, deleted);
+                }
+                notifyChanged();
+            }
+            if (onWritten != null) {
+                final List<Reminder> result = succeeded ? saved : null;
+                mainHandler.post(() -> onWritten.onResult(result));
+            }
+        });
+    }
+
+    // Версия и время изменения из базы, если напоминание там уже есть
+    private static void keepStoredVersion(SQLiteDatabase db, Reminder reminder) {
+        try (Cursor cursor = db.query(ReminderDatabase.TABLE_REMINDERS,
+                new String[]{ReminderDatabase.COLUMN_VERSION, ReminderDatabase.COLUMN_UPDATED_AT},
+                ReminderDatabase.COLUMN_ID + " = ?", new String[]{reminder.getId()}, null, null, null)) {
+            if (cursor.moveToFirst()) {
+                reminder.setVersion(cursor.getLong(0));
+                reminder.setUpdatedAt(cursor.getLong(1));
+            }
+        }
+    }
+
+    // Версия сохранённого напоминания, -1 если его нет
+    private static long storedVersion(SQLiteDatabase db, String id) {
+        try {
+            return DatabaseUtils.longForQuery(db, "SELECT " + ReminderDatabase.COLUMN_VERSION
+                    + " FROM " + ReminderDatabase.TABLE_REMINDERS
+                    + " WHERE " + ReminderDatabase.COLUMN_ID + " = ?", new String[]{id});
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    private static Map<String, String> queryRoutes(SQLiteDatabase db) {
+        Map<String, String> routes = new HashMap<>();
+        try (Cursor cursor = db.query(ReminderDatabase.TABLE_REMINDERS,
+                new String[]{ReminderDatabase.COLUMN_ID, ReminderDatabase.COLUMN_ROUTES},
+                ReminderDatabase.COLUMN_ROUTES + " IS NOT NULL", null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                routes.put(cursor.getString(0), cursor.getString(1));
+            }
+        }
+        return routes;
+    }
+
+    static int queryCount(SQLiteDatabase db) {
+        return (int) DatabaseUtils.queryNumEntries(db, ReminderDatabase.TABLE_REMINDERS);
+    }
+
+    // Страница по номеру строки. OFFSET проходит пропущенные строки по индексу,
+    // поэтому для соседней страницы лучше queryPageAfter.
+    static List<Reminder> queryPage(SQLiteDatabase db, int offset, int limit) {
+        return queryReminders(db, null, null, offset + ", " + limit);
+    }
+
+    // Страница сразу после напоминания after в порядке отображения (keyset)
+    static List<Reminder> queryPageAfter(SQLiteDatabase db, Reminder after, int limit) {
+        String time = String.valueOf(timeOf(after));
+        return queryReminders(db,
+                ReminderDatabase.COLUMN_DATE_TIME + " > ? OR (" + ReminderDatabase.COLUMN_DATE_TIME
+                        + " = ? AND " + ReminderDatabase.COLUMN_ID + " > ?)",
+                new String[]{time, time, after.getId()}, String.valueOf(limit));
+    }
+
+    // Напоминания с этими id в порядке отображения (страница результатов поиска)
+    static List<Reminder> queryByIds(SQLiteDatabase db, List<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        StringBuilder selection = new StringBuilder(ReminderDatabase.COLUMN_ID).append(" IN (?");
+        for (int i = 1; i < ids.size(); i++) {
+            selection.append(",?");
+        }
+        selection.append(')');
+        return queryReminders(db, selection.toString(), ids.toArray(new String[0]), null);
+    }
+
+    private static List<Reminder> queryReminders(SQLiteDatabase db, String selection,
+                                                 String[] selectionArgs, String limit) {
+        List<Reminder> reminders = new ArrayList<>();
+        try (Cursor cursor = db.query(ReminderDatabase.TABLE_REMINDERS, null, selection, selectionArgs,
+                null, null, ORDER_BY_DATE_TIME, limit)) {
+            int idIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_ID);
+            int titleIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_TITLE);
+            int descriptionIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_DESCRIPTION);
+            int dateTimeIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_DATE_TIME);
+            int activeIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_IS_ACTIVE);
+            int versionIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_VERSION);
+            int updatedAtIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_UPDATED_AT);
+            int recurrenceIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_RECURRENCE);
+            while (cursor.moveToNext()) {
+                Reminder reminder = new Reminder(
+                        cursor.getString(idIndex),
+                        cursor.getString(titleIndex),
+                        cursor.getString(descriptionIndex),
+                        new Date(cursor.getLong(dateTimeIndex)),
+                        cursor.getInt(activeIndex) != 0);
+                reminder.setVersion(cursor.getLong(versionIndex));
+                reminder.setUpdatedAt(cursor.getLong(updatedAtIndex));
+                reminder.setRecurrence(ReminderJsonReader.parseRecurrence(cursor.getString(recurrenceIndex)));
+                reminders.add(reminder);
+            }
+        }
+        return reminders;
+    }
+
+    static ReminderTable queryTable(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        try (Cursor cursor = db.query(ReminderDatabase.TABLE_REMINDERS, null, selection, selectionArgs,
+                null, null, ORDER_BY_DATE_TIME)) {
+            ReminderTable table = new ReminderTable(cursor.getCount());
+            int idIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_ID);
+            int titleIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_TITLE);
+            int descriptionIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_DESCRIPTION);
+            int dateTimeIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_DATE_TIME);
+            int activeIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_IS_ACTIVE);
+            int versionIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_VERSION);
+            int updatedAtIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_UPDATED_AT);
+            int recurrenceIndex = cursor.getColumnIndexOrThrow(ReminderDatabase.COLUMN_RECURRENCE);
+            while (cursor.moveToNext()) {
+                table.addRow(cursor.getString(idIndex),
+                        cursor.getString(titleIndex),
+                        cursor.getString(descriptionIndex),
+                        cursor.getLong(dateTimeIndex),
+                        cursor.getInt(activeIndex) != 0,
+                        cursor.getLong(versionIndex),
+                        cursor.getLong(updatedAtIndex),
+                        cursor.getString(recurrenceIndex));
+            }
+            return table;
+        }
+    }
+
+    private static long timeOf(Reminder reminder) {
+        Date dateTime = reminder.getDateTime();
+        return dateTime != null ? dateTime.getTime() : 0;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.alarmpi;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Поиск по напоминаниям для строки поиска над списком.
+// ReminderSearchIndex строится один раз при первом запросе (столбцами из базы)
+// и дальше обновляется по записям хранилища (ReminderRepository.WriteListener).
+// Индекс, его обновления и запросы живут в своём фоновом потоке, главный поток
+// только ставит запрос и получает упорядоченные id. Каждый новый запрос
+// отменяет предыдущие: ещё не начатые пропускаются, начатый прерывается.
+// После изменения данных текущий запрос выполняется заново.
+public class ReminderSearch {
+
+    // ids - результат в порядке списка; null - поиска нет, показывать всё
+    public interface Listener {
+        void onResults(String query, List<String> ids);
+    }
+
+    private final ReminderRepository repository;
+    private final Listener listener;
+    private final ReminderSearchIndex index = new ReminderSearchIndex(); // только в searchExecutor
+    private boolean built = false; // только в searchExecutor
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "ReminderSearch"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ReminderRepository.WriteListener writeListener = this::onRemindersWritten;
+
+    // Растёт с каждым запросом: запросы с меньшим номером отменены
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile String query = "";
+    private boolean started = false;
+
+    public ReminderSearch(ReminderRepository repository, Listener listener) {
+        this.repository = repository;
+        this.listener = listener;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    // Вызывается из главного потока на каждое изменение строки поиска
+    public void search(String text) {
+        String normalized = text != null ? text.trim() : "";
+        if (normalized.equals(query)) {
+            return;
+        }
+        // Сначала текст, потом номер: увидев новый номер, фоновый поток видит и новый текст
+        query = normalized;
+        final int requestGeneration = generation.incrementAndGet();
+        if (normalized.isEmpty()) {
+            listener.onResults(normalized, null);
+            return;
+        }
+        start();
+        searchExecutor.execute(() -> run(normalized, requestGeneration));
+    }
+
+    public void close() {
+        generation.incrementAndGet();
+        repository.removeWriteListener(writeListener);
+        searchExecutor.shutdownNow();
+    }
+
+    // Индекс строится при первом поиске: пока строка поиска пуста, памяти он не занимает
+    private void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        repository.addWriteListener(writeListener);
+        // Таблица читается в потоке базы и передаётся индексу оттуда же - раньше
+        // уведомлений о последующих записях, поэтому ни одна запись не теряется
+        repository.read(db -> {
+            ReminderTable table = ReminderRepository.queryTable(db, null, null);
+            searchExecutor.execute(() -> {
+                index.clear();
+                index.putAll(table);
+                built = true;
+                rerun();
+            });
+            return null;
+        }, ignored -> { });
+    }
+
+    // В потоке базы
+    private void onRemindersWritten(List<Reminder> saved, List<String> deletedIds) {
+        searchExecutor.execute(() -> {
+            for (Reminder reminder : saved) {
+                index.put(reminder);
+            }
+            for (String id : deletedIds) {
+                index.remove(id);
+            }
+            rerun();
+        });
+    }
+
+    // В searchExecutor: данные изменились - повторить текущий запрос
+    private void rerun() {
+        int current = generation.get();
+        String text = query;
+        if (!text.isEmpty()) {
+            run(text, current);
+        }
+    }
+
+    // В searchExecutor
+    private void run(String text, int requestGeneration) {
+        if (!built || requestGeneration != generation.get()) {
+            return; // индекс ещё строится (запрос повторится) или уже набран следующий
+        }
+        final List<String> ids = index.search(text, () -> requestGeneration != generation.get());
+        if (ids == null) {
+            return;
+        }
+        mainHandler.post(() -> {
+            if (requestGeneration == generation.get()) {
+                listener.onResults(text, ids);
+            }
+        });
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.alarmpi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Индекс для поиска по заголовкам и описаниям напоминаний.
+// Текст разбивается на слова (буквы и цифры) в нижнем регистре, "ё" - как "е".
+// Слова лежат в отсортированном словаре слово -> id напоминаний: все слова с
+// префиксом - непрерывный диапазон словаря (как поддерево префиксного дерева),
+// поэтому запрос не просматривает тексты напоминаний.
+// Запрос - слова через пробел; напоминание подходит, если каждое слово запроса -
+// начало какого-нибудь его слова ("пол цв" найдёт "Полить цветы").
+// Индекс обновляется по одному напоминанию при добавлении, изменении и удалении.
+// Не потокобезопасен: ReminderSearch работает с ним из одного потока.
+public class ReminderSearchIndex {
+
+    // Проверка отмены во время запроса: его уже сменил более новый
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+
+    // Как часто длинный запрос проверяет отмену
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    private static class Entry {
+        final String id;
+        final String[] words;
+        final long time;
+
+        Entry(String id, String[] words, long time) {
+            this.id = id;
+            this.words = words;
+            this.time = time;
+        }
+    }
+
+    private final TreeMap<String, Set<String>> postings = new TreeMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Число разных слов в словаре
+    public int getWordCount() {
+        return postings.size();
+    }
+
+    // Добавить напоминание или заменить его слова
+    public void put(String id, String title, String description, long time) {
+        Set<String> words = new LinkedHashSet<>(tokenize(title));
+        words.addAll(tokenize(description));
+        Entry previous = entries.put(id, new Entry(id, words.toArray(new String[0]), time));
+        if (previous != null) {
+            for (String word : previous.words) {
+                if (!words.contains(word)) {
+                    unlink(word, id);
+                }
+            }
+        }
+        for (String word : words) {
+            Set<String> ids = postings.get(word);
+            if (ids == null) {
+                ids = new HashSet<>();
+                postings.put(word, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    public void put(Reminder reminder) {
+        put(reminder.getId(), reminder.getTitle(), reminder.getDescription(), ReminderDueQueue.timeOf(reminder));
+    }
+
+    // Заполнить заново строками таблицы (первое построение)
+    public void putAll(ReminderTable table) {
+        for (int row = 0; row < table.size(); row++) {
+            put(table.getId(row), table.getTitle(row), table.getDescription(row), table.getTime(row));
+        }
+    }
+
+    public void remove(String id) {
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            for (String word : previous.words) {
+                unlink(word, id);
+            }
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+        entries.clear();
+    }
+
+    // id подходящих напоминаний в порядке списка (время, затем id).
+    // Пустой запрос - пустой результат; null - запрос отменён.
+    public List<String> search(String query, Cancellation cancellation) {
+        List<String> words = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Кандидатов даёт самое длинное слово (обычно самое редкое),
+        // остальные слова проверяются по словам кандидата
+        String first = words.get(0);
+        for (String word : words) {
+            if (word.length() > first.length()) {
+                first = word;
+            }
+        }
+        words.remove(first);
+
+        Set<String> candidates = new HashSet<>();
+        int steps = 0;
+        for (Set<String> ids : withPrefix(first).values()) {
+            candidates.addAll(ids);
+            if (++steps % CANCEL_CHECK_INTERVAL == 0 && cancellation.isCancelled()) {
+                return null;
+            }
+        }
+
+        List<Entry> matched = new ArrayList<>();
+        for (String id : candidates) {
+            if (++steps % CANCEL_CHECK_INTERVAL == 0 && cancellation.isCancelled()) {
+                return null;
+            }
+            Entry entry = entries.get(id);
+            if (matchesAll(entry, words)) {
+                matched.add(entry);
+            }
+        }
+        if (cancellation.isCancelled()) {
+            return null;
+        }
+        matched.sort((a, b) -> {
+            int order = Long.compare(a.time, b.time);
+            return order != 0 ? order : a.id.compareTo(b.id);
+        });
+        List<String> result = new ArrayList<>(matched.size());
+        for (Entry entry : matched) {
+            result.add(entry.id);
+        }
+        return result;
+    }
+
+    // Слова текста для индекса и запроса
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private NavigableMap<String, Set<String>> withPrefix(String prefix) {
+        return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static boolean matchesAll(Entry entry, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            boolean found = false;
+            for (String word : entry.words) {
+                if (word.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void unlink(String word, String id) {
+        Set<String> ids = postings.get(word);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            postings.remove(word);
+        }
+    }
+}
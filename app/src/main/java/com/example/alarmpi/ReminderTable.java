@@ -0,0 +1,281 @@
+package com.example.alarmpi;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+// Напоминания по столбцам (struct of arrays) для больших наборов: полная
+// синхронизация, очередь срабатываний. Вместо объекта Reminder с Date и
+// строками на каждую строку - примитивные массивы:
+//   id         - long (десятичные id, ReminderIds), прочие строки - в пуле
+//   время      - long[] миллисекунд, активность - BitSet
+//   заголовок, описание и правило повторения - индексы в общем StringPool
+// Поиск по id идёт через LongIntMap без упаковки ключей.
+// Как List<Reminder> таблица отдаёт каждую строку новым объектом Reminder,
+// собранным из столбцов (строки при этом общие с пулом). Строки плотные:
+// удаление переносит последнюю строку на место удалённой. Не потокобезопасна.
+public class ReminderTable extends AbstractList<Reminder> {
+
+    private long[] ids;
+    private int[] textIds; // StringPool.NULL - id числовой и лежит в ids
+    private long[] times;
+    private long[] versions;
+    private long[] updatedAts;
+    private int[] titles;
+    private int[] descriptions;
+    private int[] recurrences;
+    private final BitSet active = new BitSet();
+    private int size = 0;
+
+    private final StringPool strings = new StringPool();
+    private final LongIntMap numericIndex;
+    // Нечисловые id редки (записи, созданные не приложением) - обычная карта
+    private final Map<String, Integer> textIndex = new HashMap<>();
+
+    public ReminderTable() {
+        this(16);
+    }
+
+    public ReminderTable(int expectedSize) {
+        int capacity = Math.max(4, expectedSize);
+        ids = new long[capacity];
+        textIds = new int[capacity];
+        times = new long[capacity];
+        versions = new long[capacity];
+        updatedAts = new long[capacity];
+        titles = new int[capacity];
+        descriptions = new int[capacity];
+        recurrences = new int[capacity];
+        numericIndex = new LongIntMap(expectedSize);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Строка с этим id или -1
+    public int rowOf(String id) {
+        long value = ReminderIds.parse(id);
+        if (value >= 0) {
+            return numericIndex.get(value);
+        }
+        Integer row = textIndex.get(id);
+        return row != null ? row : -1;
+    }
+
+    // Добавить строку; id должен быть новым для таблицы. Возвращает номер строки.
+    public int addRow(String id, String title, String description, long time, boolean isActive,
+                      long version, long updatedAt, String recurrence) {
+        if (rowOf(id) != -1) {
+            throw new IllegalArgumentException("Повторный id " + id);
+        }
+        if (size == ids.length) {
+            grow();
+        }
+        int row = size++;
+        long value = ReminderIds.parse(id);
+        if (value >= 0) {
+            ids[row] = value;
+            textIds[row] = StringPool.NULL;
+            numericIndex.put(value, row);
+        } else {
+            ids[row] = 0;
+            textIds[row] = strings.acquire(id);
+            textIndex.put(id, row);
+        }
+        titles[row] = StringPool.NULL;
+        descriptions[row] = StringPool.NULL;
+        recurrences[row] = StringPool.NULL;
+        setRow(row, title, description, time, isActive, version, updatedAt, recurrence);
+        return row;
+    }
+
+    public int addRow(Reminder reminder) {
+        return addRow(reminder.getId(), reminder.getTitle(), reminder.getDescription(),
+                ReminderDueQueue.timeOf(reminder), reminder.isActive(),
+                reminder.getVersion(), reminder.getUpdatedAt(), recurrenceOf(reminder));
+    }
+
+    // Скопировать строку другой таблицы, не собирая объект Reminder
+    public int addRow(ReminderTable source, int row) {
+        return addRow(source.getId(row), source.getTitle(row), source.getDescription(row),
+                source.getTime(row), source.isActive(row), source.getVersion(row), source.getUpdatedAt(row),
+                source.getRecurrenceText(row));
+    }
+
+    // Заменить данные строки (id остаётся)
+    public void setRow(int row, Reminder reminder) {
+        checkRow(row);
+        setRow(row, reminder.getTitle(), reminder.getDescription(), ReminderDueQueue.timeOf(reminder),
+                reminder.isActive(), reminder.getVersion(), reminder.getUpdatedAt(), recurrenceOf(reminder));
+    }
+
+    private void setRow(int row, String title, String description, long time, boolean isActive,
+                        long version, long updatedAt, String recurrence) {
+        // Сначала берём новые строки, потом отпускаем старые: при том же тексте индекс сохраняется
+        int newTitle = strings.acquire(title);
+        int newDescription = strings.acquire(description);
+        int newRecurrence = strings.acquire(recurrence);
+        strings.release(titles[row]);
+        strings.release(descriptions[row]);
+        strings.release(recurrences[row]);
+        titles[row] = newTitle;
+        descriptions[row] = newDescription;
+        recurrences[row] = newRecurrence;
+        times[row] = time;
+        versions[row] = version;
+        updatedAts[row] = updatedAt;
+        active.set(row, isActive);
+    }
+
+    // Удалить строку. На её место переезжает последняя строка; возвращается
+    // прежний номер переехавшей строки или -1, если удалена последняя.
+    public int removeRow(int row) {
+        checkRow(row);
+        if (textIds[row] == StringPool.NULL) {
+            numericIndex.remove(ids[row]);
+        } else {
+            textIndex.remove(strings.get(textIds[row]));
+            strings.release(textIds[row]);
+        }
+        strings.release(titles[row]);
+        strings.release(descriptions[row]);
+        strings.release(recurrences[row]);
+
+        int last = --size;
+        if (row == last) {
+            active.clear(last);
+            return -1;
+        }
+        ids[row] = ids[last];
+        textIds[row] = textIds[last];
+        times[row] = times[last];
+        versions[row] = versions[last];
+        updatedAts[row] = updatedAts[last];
+        titles[row] = titles[last];
+        descriptions[row] = descriptions[last];
+        recurrences[row] = recurrences[last];
+        active.set(row, active.get(last));
+        active.clear(last);
+        if (textIds[row] == StringPool.NULL) {
+            numericIndex.put(ids[row], row);
+        } else {
+            textIndex.put(strings.get(textIds[row]), row);
+        }
+        return last;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        active.clear();
+        strings.clear();
+        numericIndex.clear();
+        textIndex.clear();
+    }
+
+    public String getId(int row) {
+        checkRow(row);
+        return textIds[row] == StringPool.NULL ? Long.toString(ids[row]) : strings.get(textIds[row]);
+    }
+
+    public String getTitle(int row) {
+        checkRow(row);
+        return strings.get(titles[row]);
+    }
+
+    public String getDescription(int row) {
+        checkRow(row);
+        return strings.get(descriptions[row]);
+    }
+
+    // Правило повторения; null - разовое
+    public RecurrenceRule getRecurrence(int row) {
+        checkRow(row);
+        return ReminderJsonReader.parseRecurrence(strings.get(recurrences[row]));
+    }
+
+    // Правило повторения строкой (RecurrenceRule.toString) без разбора; null - разовое
+    public String getRecurrenceText(int row) {
+        checkRow(row);
+        return strings.get(recurrences[row]);
+    }
+
+    // Ближайшее срабатывание не раньше from (см. Reminder.nextOccurrence)
+    public long nextOccurrence(int row, long from) {
+        RecurrenceRule rule = getRecurrence(row);
+        if (rule == null) {
+            return times[row] >= from ? times[row] : -1;
+        }
+        return rule.nextFrom(times[row], from);
+    }
+
+    public long getTime(int row) {
+        checkRow(row);
+        return times[row];
+    }
+
+    public boolean isActive(int row) {
+        checkRow(row);
+        return active.get(row);
+    }
+
+    public long getVersion(int row) {
+        checkRow(row);
+        return versions[row];
+    }
+
+    public long getUpdatedAt(int row) {
+        checkRow(row);
+        return updatedAts[row];
+    }
+
+    // Число разных строк (заголовков, описаний, нечисловых id) в пуле
+    public int getPooledStringCount() {
+        return strings.size();
+    }
+
+    // Строка как отдельный Reminder: его можно менять, таблица не изменится
+    @Override
+    public Reminder get(int row) {
+        checkRow(row);
+        Reminder reminder = new Reminder(getId(row), strings.get(titles[row]), strings.get(descriptions[row]),
+                new Date(times[row]), active.get(row));
+        reminder.setVersion(versions[row]);
+        reminder.setUpdatedAt(updatedAts[row]);
+        reminder.setRecurrence(getRecurrence(row));
+        return reminder;
+    }
+
+    @Override
+    public boolean add(Reminder reminder) {
+        addRow(reminder);
+        return true;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+        }
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        textIds = Arrays.copyOf(textIds, capacity);
+        times = Arrays.copyOf(times, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        updatedAts = Arrays.copyOf(updatedAts, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        recurrences = Arrays.copyOf(recurrences, capacity);
+    }
+
+    private static String recurrenceOf(Reminder reminder) {
+        return reminder.isRecurring() ? reminder.getRecurrence().toString() : null;
+    }
+}
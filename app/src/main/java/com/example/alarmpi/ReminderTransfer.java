@@ -0,0 +1,354 @@
+package com.example.alarmpi;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Импорт напоминаний из файла (.ics, .csv) и экспорт в файл.
+// Файл читается потоком (ReminderFileFormat) в своём фоновом потоке, порции по
+// ReminderJsonReader.CHUNK_SIZE записываются в базу одной транзакцией каждая -
+// список обновляется один раз на порцию - и одной записью в журнал отправки
+// каждого сервера (ApiService.sendReminders). Читающий поток не уходит дальше
+// MAX_CHUNKS_IN_FLIGHT порций от базы, так что память не зависит от размера файла.
+// Экспорт читает базу страницами по ключу и пишет их сразу в файл.
+// Прогресс и результат приходят в главный поток. Одна операция за раз.
+public class ReminderTransfer {
+
+    private static final String TAG = "ReminderTransfer";
+    private static final int MAX_CHUNKS_IN_FLIGHT = 2;
+
+    // Состояние операции для экрана
+    public static class Progress {
+        private final boolean export;
+        private final int processed;
+        private final int percent;
+        private final int skipped;
+        private final boolean finished;
+        private final String error;
+        private boolean reported = false;
+
+        Progress(boolean export, int processed, int percent, int skipped, boolean finished, String error) {
+            this.export = export;
+            this.processed = processed;
+            this.percent = percent;
+            this.skipped = skipped;
+            this.finished = finished;
+            this.error = error;
+        }
+
+        public boolean isExport() { return export; }
+        public int getProcessed() { return processed; }
+        // 0..100; -1 - размер файла неизвестен
+        public int getPercent() { return percent; }
+        public int getSkipped() { return skipped; }
+        public boolean isFinished() { return finished; }
+        public String getError() { return error; }
+
+        // Итог показывается один раз, даже если экран пересоздан
+        public boolean markReported() {
+            boolean first = !reported;
+            reported = true;
+            return first;
+        }
+    }
+
+    public interface Listener {
+        void onProgress(Progress progress);
+    }
+
+    private final Context context;
+    private final ReminderRepository repository;
+    private final Listener listener;
+    private final ExecutorService transferExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "ReminderTransfer"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile boolean cancelled = false;
+    // Порция импорта не записалась в базу - импорт прекращается
+    private volatile boolean writeFailed = false;
+    private boolean running = false;
+    // Сохранено в базу при импорте - только в главном потоке
+    private int imported = 0;
+
+    public ReminderTransfer(Context context, ReminderRepository repository, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.repository = repository;
+        this.listener = listener;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public void close() {
+        cancelled = true;
+        transferExecutor.shutdownNow();
+    }
+
+    // Формат по имени или типу файла; null - не поддерживается
+    public static ReminderFileFormat formatFor(String name, String mimeType) {
+        String lower = name != null ? name.toLowerCase(Locale.ROOT) : "";
+        if (lower.endsWith(".ics") || lower.endsWith(".ical") || "text/calendar".equals(mimeType)) {
+            return new IcsReminderFormat();
+        }
+        if (lower.endsWith(".csv") || "text/csv".equals(mimeType) || "text/comma-separated-values".equals(mimeType)) {
+            return new CsvReminderFormat();
+        }
+        return null;
+    }
+
+    public void importFrom(Uri uri) {
+        if (running) {
+            return;
+        }
+        running = true;
+        cancelled = false;
+        writeFailed = false;
+        imported = 0;
+        transferExecutor.execute(() -> {
+            ContentResolver resolver = context.getContentResolver();
+            String name = null;
+            long size = -1;
+            try (Cursor cursor = resolver.query(uri, null, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                    int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+                    name = nameIndex >= 0 ? cursor.getString(nameIndex) : null;
+                    size = sizeIndex >= 0 && !cursor.isNull(sizeIndex) ? cursor.getLong(sizeIndex) : -1;
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Нет сведений о файле " + uri, e);
+            }
+
+            final Semaphore inFlight = new Semaphore(MAX_CHUNKS_IN_FLIGHT);
+            final long totalBytes = size;
+            final ApiService apiService = new ApiService(context);
+            int skipped = 0;
+            String error = null;
+            try (CountingInputStream in = new CountingInputStream(new BufferedInputStream(
+                    resolver.openInputStream(uri)))) {
+                ReminderFileFormat format = formatFor(name, resolver.getType(uri));
+                if (format == null) {
+                    format = sniff(in);
+                }
+                skipped = format.read(new InputStreamReader(in, StandardCharsets.UTF_8), chunk -> {
+                    try {
+                        inFlight.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancelledException();
+                    }
+                    if (cancelled || writeFailed) {
+                        inFlight.release();
+                        throw new CancelledException();
+                    }
+                    final int percent = percentOf(in.getCount(), totalBytes);
+                    // Одна транзакция и одно обновление списка на порцию
+                    mainHandler.post(() -> repository.saveAll(chunk, saved -> {
+                        inFlight.release();
+                        if (saved == null) {
+                            // Порция не записана - дальше не читаем
+                            writeFailed = true;
+                            return;
+                        }
+                        imported += saved.size();
+                        // На серверы - только записанное, с версиями из базы
+                        apiService.sendReminders(saved, ReminderOperation.ACTION_ADD);
+                        publish(new Progress(false, imported, percent, 0, false, null));
+                    }));
+                });
+            } catch (CancelledException | InterruptedIOException e) {
+                error = "Импорт отменён";
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Ошибка импорта " + uri, e);
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+            // При любом исходе дожидаемся записи уже отданных базе порций: итог
+            // считает их все, а будильники планируются и для них
+            inFlight.acquireUninterruptibly(MAX_CHUNKS_IN_FLIGHT);
+            if (writeFailed) {
+                error = "Ошибка записи в базу";
+            }
+            final int skippedCount = skipped;
+            final String message = error;
+            mainHandler.post(() -> {
+                ReminderAlarmScheduler.getInstance(context).reload();
+                finish(new Progress(false, imported, message == null ? 100 : -1, skippedCount, true, message));
+            });
+        });
+    }
+
+    public void exportTo(Uri uri, ReminderFileFormat format) {
+        if (running) {
+            return;
+        }
+        running = true;
+        cancelled = false;
+        transferExecutor.execute(() -> {
+            int written = 0;
+            String error = null;
+            try (OutputStream out = context.getContentResolver().openOutputStream(uri, "wt");
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                int total = repository.readInBackground(ReminderRepository::queryCount).get();
+                format.writeHeader(writer);
+                Reminder after = null;
+                while (true) {
+                    if (cancelled) {
+                        throw new CancelledException();
+                    }
+                    final Reminder last = after;
+                    // Страница по ключу последней записанной строки - без OFFSET
+                    List<Reminder> page = repository.readInBackground(db -> last != null
+                            ? ReminderRepository.queryPageAfter(db, last, ReminderJsonReader.CHUNK_SIZE)
+                            : ReminderRepository.queryPage(db, 0, ReminderJsonReader.CHUNK_SIZE)).get();
+                    for (Reminder reminder : page) {
+                        format.write(writer, reminder);
+                    }
+                    written += page.size();
+                    final int progress = written;
+                    mainHandler.post(() -> publish(new Progress(true, progress,
+                            percentOf(progress, Math.max(total, progress)), 0, false, null)));
+                    if (page.size() < ReminderJsonReader.CHUNK_SIZE) {
+                        break;
+                    }
+                    after = page.get(page.size() - 1);
+                }
+                format.writeFooter(writer);
+            } catch (CancelledException | InterruptedException e) {
+                error = "Экспорт отменён";
+            } catch (IOException | ExecutionException | RuntimeException e) {
+                Log.e(TAG, "Ошибка экспорта " + uri, e);
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+            if (error != null) {
+                // Недописанный календарь или таблицу не должны случайно отправить дальше
+                deleteDocument(uri);
+            }
+            final int count = written;
+            final String message = error;
+            mainHandler.post(() -> finish(new Progress(true, count, message == null ? 100 : -1, 0, true, message)));
+        });
+    }
+
+    private void deleteDocument(Uri uri) {
+        try {
+            if (!DocumentsContract.deleteDocument(context.getContentResolver(), uri)) {
+                Log.w(TAG, "Не удалось удалить недописанный файл " + uri);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Не удалось удалить недописанный файл " + uri, e);
+        }
+    }
+
+    private void publish(Progress progress) {
+        if (running) {
+            listener.onProgress(progress);
+        }
+    }
+
+    private void finish(Progress progress) {
+        running = false;
+        listener.onProgress(progress);
+    }
+
+    private static int percentOf(long done, long total) {
+        return total > 0 ? (int) Math.min(100, done * 100 / total) : -1;
+    }
+
+    // Формат по началу файла, если имя и тип ничего не сказали
+    private static ReminderFileFormat sniff(InputStream in) throws IOException {
+        in.mark(64);
+        byte[] start = new byte[64];
+        int read = in.read(start);
+        in.reset();
+        String text = read > 0 ? new String(start, 0, read, StandardCharsets.UTF_8) : "";
+        if (text.replace("\uFEFF", "").trim().toUpperCase(Locale.ROOT).startsWith("BEGIN:VCALENDAR")) {
+            return new IcsReminderFormat();
+        }
+        return new CsvReminderFormat();
+    }
+
+    // Прерывание чтения файла из ChunkListener (отмена пользователем)
+    private static class CancelledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    // Сколько байт файла уже прочитано - для процента
+    private static class CountingInputStream extends FilterInputStream {
+        private volatile long count = 0;
+        private long markCount = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public synchronized void mark(int limit) {
+            super.mark(limit);
+            markCount = count;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            super.reset();
+            count = markCount;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.alarmpi;
+
+import android.app.Application;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+// Состояние экрана списка, которое переживает пересоздание MainActivity
+// (поворот, смена темы или языка). Здесь живут загруженные страницы списка,
+// выбранное напоминание, строка поиска с её индексом, импорт и экспорт файла
+// и первичная загрузка с сервера: новая Activity
+// подписывается на готовое окно и не перечитывает базу, не повторяет запросы.
+// Ссылок на Activity и её View здесь нет - только Application.
+public class RemindersViewModel extends AndroidViewModel {
+
+    private static final String TAG = "RemindersViewModel";
+
+    private final ReminderRepository repository;
+    private final ReminderPager pager;
+    private final MutableLiveData<ReminderPager.Window> window = new MutableLiveData<>();
+    private final ReminderSearch search;
+    private final ReminderTransfer transfer;
+    private final MutableLiveData<ReminderTransfer.Progress> transferProgress = new MutableLiveData<>();
+
+    private String selectedId;
+    private boolean initialSyncStarted = false;
+
+    public RemindersViewModel(@NonNull Application application) {
+        super(application);
+        repository = ReminderRepository.getInstance(application);
+        pager = new ReminderPager(repository, window::setValue);
+        // Результат поиска становится фильтром окна: адаптер получает тот же Window
+        search = new ReminderSearch(repository, (query, ids) -> pager.setFilter(ids));
+        transfer = new ReminderTransfer(application, repository, transferProgress::setValue);
+    }
+
+    public ReminderRepository getRepository() {
+        return repository;
+    }
+
+    public ReminderPager getPager() {
+        return pager;
+    }
+
+    // Окно списка; новый подписчик сразу получает последнее
+    public LiveData<ReminderPager.Window> getWindow() {
+        return window;
+    }
+
+    // Строка поиска изменилась; пустая - показать все напоминания
+    public void search(String text) {
+        search.search(text);
+    }
+
+    public String getSearchQuery() {
+        return search.getQuery();
+    }
+
+    // Импорт или экспорт продолжается при повороте экрана; false - уже идёт другой
+    public boolean importFrom(Uri uri) {
+        if (transfer.isRunning()) {
+            return false;
+        }
+        transfer.importFrom(uri);
+        return true;
+    }
+
+    public boolean exportTo(Uri uri, ReminderFileFormat format) {
+        if (transfer.isRunning()) {
+            return false;
+        }
+        transfer.exportTo(uri, format);
+        return true;
+    }
+
+    public void cancelTransfer() {
+        transfer.cancel();
+    }
+
+    // Прогресс импорта или экспорта; null - ничего не запускалось
+    public LiveData<ReminderTransfer.Progress> getTransferProgress() {
+        return transferProgress;
+    }
+
+    public String getSelectedId() {
+        return selectedId;
+    }
+
+    public void setSelectedId(String id) {
+        selectedId = id;
+    }
+
+    // Напоминание из загруженных страниц; null - его страница не загружена
+    public Reminder findReminder(String id) {
+        ReminderPager.Window current = window.getValue();
+        if (id == null || current == null) {
+            return null;
+        }
+        int position = current.positionOf(id);
+        return position != -1 ? current.get(position) : null;
+    }
+
+    // Первичная загрузка изменений с сервера - один раз за жизнь экрана, а не на каждый поворот
+    public void startInitialSync() {
+        if (initialSyncStarted) {
+            return;
+        }
+        initialSyncStarted = true;
+        final ApiService apiService = new ApiService(getApplication());
+        // Подключаемся к сохранённому серверу сразу; если адрес устарел - поиск идёт в фоне
+        ServerDiscovery.getInstance(getApplication()).refreshIfStale();
+        // Список читает сохранённые напоминания страницами; с сервера - только изменения
+        repository.count(count -> {
+            if (count != null && count == 0) {
+                // Локальная база пуста (первый запуск или очистка данных) - нужен полный список
+                apiService.resetSyncCursor();
+            }
+            apiService.pullChanges(new ApiService.PullCallback() {
+                @Override
+                public void onComplete(ChangeSet changes) {
+                    // Изменения уже в хранилище - окно списка обновится само
+                }
+
+                @Override
+                public void onError(String message) {
+                    Log.e(TAG, "Не удалось загрузить изменения: " + message);
+                }
+            });
+        });
+    }
+
+    @Override
+    protected void onCleared() {
+        transfer.close();
+        search.close();
+        pager.close();
+    }
+}
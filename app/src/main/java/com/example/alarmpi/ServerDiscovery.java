@@ -0,0 +1,403 @@
+package com.example.alarmpi;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.nsd.NsdManager;
+import android.net.nsd.NsdServiceInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+// Поиск серверов alarmPi в локальной сети.
+// Кандидаты собираются одновременно через DNS-SD (служба _alarmpi._tcp) и
+// широковещательный UDP-запрос (DiscoveryBeacon) и проверяются параллельно
+// по мере нахождения (EndpointProber). Адрес сервера сохраняется вместе со временем
+// ответа, так что при запуске приложение сразу подключается к нему. Если сохранённый
+// адрес устарел или сервер перестал отвечать, поиск запускается в фоне - отправка
+// продолжается по старому адресу. Отвечающий сервер не меняется на более быстрый:
+// у него курсор синхронизации и очередь операций; самый быстрый из найденных
+// заменяет только недоступный.
+// Сам поиск меняет только адрес, который он же и нашёл: выбранный пользователем
+// не трогается, а устройства из списка дополнительных (ServerEndpoints) основным
+// не становятся - иначе они получали бы каждую операцию дважды.
+public class ServerDiscovery {
+
+    private static final String TAG = "ServerDiscovery";
+
+    private static final String PREFERENCES_NAME = "ServerDiscovery";
+    private static final String CACHED_URL_KEY = "url";
+    private static final String CACHED_RTT_KEY = "rtt_ms";
+    private static final String CHECKED_AT_KEY = "checked_at";
+    // Сохранённый адрес найден поиском (true) или выбран пользователем
+    private static final String DISCOVERED_KEY = "discovered";
+
+    private static final String SERVICE_TYPE = "_alarmpi._tcp.";
+    // TXT-запись службы с путём API (по умолчанию /api/reminders)
+    private static final String PATH_ATTRIBUTE = "path";
+    private static final long DISCOVERY_WINDOW_MS = 2000;
+    private static final int PROBE_TIMEOUT_MS = 1500;
+    // Сохранённый адрес перепроверяется не реже раза в сутки
+    private static final long STALE_AFTER_MS = 24 * 60 * 60 * 1000;
+    // Фоновый поиск не чаще раза в минуту, даже если сервер недоступен
+    private static final long MIN_REFRESH_INTERVAL_MS = 60 * 1000;
+
+    public interface Callback {
+        // Доступные серверы, быстрые первыми, кроме уже настроенных дополнительных
+        // (пусто - ничего не найдено). Главный поток.
+        void onDiscovered(List<EndpointProber.Result> servers);
+    }
+
+    private static ServerDiscovery instance;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final NsdManager nsdManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean running = false;
+    private long lastStartedAt = 0;
+    private final List<Callback> callbacks = new ArrayList<>();
+
+    public static synchronized ServerDiscovery getInstance(Context context) {
+        if (instance == null) {
+            instance = new ServerDiscovery(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ServerDiscovery(Context context) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
+    }
+
+    // Время ответа сохранённого сервера при последней проверке; -1 - неизвестно
+    public long getCachedRttMs() {
+        String url = new ApiService(context).getServerUrl();
+        return url.equals(preferences.getString(CACHED_URL_KEY, null))
+                ? preferences.getLong(CACHED_RTT_KEY, -1) : -1;
+    }
+
+    // Адрес выбран вручную или найден - считается проверенным сейчас.
+    // rttMs < 0 - время ответа не измерялось (прежний замер того же адреса сохраняется).
+    // discovered - адрес предложен поиском, и следующий поиск может его заменить.
+    public void remember(String url, long rttMs, boolean discovered) {
+        if (rttMs < 0 && url.equals(preferences.getString(CACHED_URL_KEY, null))) {
+            rttMs = preferences.getLong(CACHED_RTT_KEY, -1);
+        }
+        preferences.edit()
+                .putString(CACHED_URL_KEY, url)
+                .putLong(CACHED_RTT_KEY, rttMs)
+                .putLong(CHECKED_AT_KEY, System.currentTimeMillis())
+                .putBoolean(DISCOVERED_KEY, discovered)
+                .apply();
+    }
+
+    // Можно ли заменить адрес сервера без спроса: его ещё не выбирали или нашёл поиск
+    private boolean mayReplace(String url) {
+        String cached = preferences.getString(CACHED_URL_KEY, null);
+        return cached == null || (cached.equals(url) && preferences.getBoolean(DISCOVERED_KEY, false));
+    }
+
+    // Запустить поиск в фоне, если сохранённый адрес устарел или сервер не отвечает.
+    // Адрес, выбранный пользователем, не перепроверяется - заменить его поиск не может.
+    public synchronized void refreshIfStale() {
+        if (running || System.currentTimeMillis() - lastStartedAt < MIN_REFRESH_INTERVAL_MS) {
+            return;
+        }
+        String url = new ApiService(context).getServerUrl();
+        if (!mayReplace(url)) {
+            return;
+        }
+        boolean stale = !url.equals(preferences.getString(CACHED_URL_KEY, null))
+                || System.currentTimeMillis() - preferences.getLong(CHECKED_AT_KEY, 0) > STALE_AFTER_MS
+                || ApiService.breakerFor(url).getState() == CircuitBreaker.State.OPEN;
+        if (stale) {
+            Log.d(TAG, "Сохранённый адрес сервера устарел - поиск в фоне");
+            discover(null);
+        }
+    }
+
+    // Найти серверы и, если текущий не отвечает, переключиться на самый быстрый -
+    // когда адрес можно менять (mayReplace).
+    // Повторный вызов во время поиска получает результат того же поиска.
+    public synchronized void discover(Callback callback) {
+        if (callback != null) {
+            callbacks.add(callback);
+        }
+        if (running) {
+            return;
+        }
+        running = true;
+        lastStartedAt = System.currentTimeMillis();
+
+        final EndpointProber prober = new EndpointProber(PROBE_TIMEOUT_MS);
+        // Текущий адрес тоже кандидат: если он отвечает быстрее всех, остаёмся на нём
+        prober.probe(new ApiService(context).getServerUrl());
+        final NsdSearch nsdSearch = nsdManager != null ? new NsdSearch(prober) : null;
+        if (nsdSearch != null) {
+            nsdSearch.start();
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                DiscoveryBeacon.search(InetAddress.getByName("255.255.255.255"), DiscoveryBeacon.PORT,
+                        DISCOVERY_WINDOW_MS, prober::probe);
+            } catch (IOException e) {
+                // Нет Wi-Fi или широковещание запрещено - остаётся DNS-SD
+                Log.w(TAG, "Широковещательный поиск недоступен: " + e.getMessage());
+                sleepQuietly(DISCOVERY_WINDOW_MS);
+            }
+            if (nsdSearch != null) {
+                nsdSearch.stop();
+            }
+            List<EndpointProber.Result> servers =
+                    prober.awaitRanked((long) PROBE_TIMEOUT_MS * EndpointProber.PROBES_PER_ENDPOINT);
+            mainHandler.post(() -> finish(servers));
+        }, "ServerDiscovery");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void finish(List<EndpointProber.Result> found) {
+        List<Callback> waiting;
+        synchronized (this) {
+            running = false;
+            waiting = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        // Дополнительные устройства уже получают свои операции - основным их не делаем
+        Set<String> additional = new HashSet<>();
+        for (ServerEndpoints.Endpoint endpoint : ServerEndpoints.getInstance(context).getAdditional()) {
+            additional.add(endpoint.getUrl());
+        }
+        List<EndpointProber.Result> servers = new ArrayList<>(found.size());
+        for (EndpointProber.Result server : found) {
+            if (!additional.contains(server.getUrl())) {
+                servers.add(server);
+            }
+        }
+
+        ApiService apiService = new ApiService(context);
+        String current = apiService.getServerUrl();
+        EndpointProber.Result currentResult = null;
+        for (EndpointProber.Result server : servers) {
+            if (server.getUrl().equals(current)) {
+                currentResult = server;
+            }
+        }
+
+        if (currentResult != null) {
+            // Текущий сервер отвечает - остаёмся на нём, даже если нашёлся более быстрый
+            Log.d(TAG, "Сервер " + current + " доступен (" + currentResult.getRttMs() + " мс)");
+            remember(current, currentResult.getRttMs(), mayReplace(current));
+        } else if (!servers.isEmpty()) {
+            EndpointProber.Result best = servers.get(0);
+            Log.d(TAG, "Сервер " + current + " не отвечает, найдено серверов: " + servers.size()
+                    + ", лучший " + best.getUrl() + " (" + best.getRttMs() + " мс)");
+            if (mayReplace(current)) {
+                remember(best.getUrl(), best.getRttMs(), true);
+                apiService.switchServer(best.getUrl());
+                // Операции, ждавшие недоступный сервер, уходят на найденный
+                apiService.resumePendingSends();
+            } else {
+                Log.d(TAG, "Адрес сервера выбран вручную - найденный " + best.getUrl() + " не подставляется");
+            }
+        } else {
+            Log.d(TAG, "Серверы в сети не найдены");
+        }
+        for (Callback callback : waiting) {
+            callback.onDiscovered(servers);
+        }
+    }
+
+    private static void sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Поиск службы через DNS-SD. С Android 14 адрес каждой найденной службы
+    // узнаётся своей подпиской (registerServiceInfoCallback) параллельно; раньше
+    // NsdManager не разрешает несколько служб одновременно - они разрешаются по одной.
+    private class NsdSearch implements NsdManager.DiscoveryListener {
+        private final EndpointProber prober;
+        private final Queue<NsdServiceInfo> toResolve = new ArrayDeque<>();
+        private final List<NsdManager.ServiceInfoCallback> infoCallbacks = new ArrayList<>();
+        private boolean resolving = false;
+        private boolean started = false;
+
+        NsdSearch(EndpointProber prober) {
+            this.prober = prober;
+        }
+
+        void start() {
+            try {
+                nsdManager.discoverServices(SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, this);
+                started = true;
+            } catch (RuntimeException e) {
+                Log.w(TAG, "DNS-SD недоступен: " + e.getMessage());
+            }
+        }
+
+        synchronized void stop() {
+            toResolve.clear();
+            for (NsdManager.ServiceInfoCallback callback : infoCallbacks) {
+                unregister(callback);
+            }
+            infoCallbacks.clear();
+            if (started) {
+                started = false;
+                try {
+                    nsdManager.stopServiceDiscovery(this);
+                } catch (RuntimeException e) {
+                    // поиск уже остановлен
+                }
+            }
+        }
+
+        @Override
+        public synchronized void onServiceFound(NsdServiceInfo service) {
+            if (!started) {
+                return;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+                watch(service);
+            } else {
+                toResolve.add(service);
+                resolveNext();
+            }
+        }
+
+        // Android 14+: адреса службы приходят в onServiceUpdated; первого хватает
+        @RequiresApi(Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
+        private void watch(NsdServiceInfo service) {
+            NsdManager.ServiceInfoCallback callback = new NsdManager.ServiceInfoCallback() {
+                @Override
+                public void onServiceUpdated(NsdServiceInfo info) {
+                    List<InetAddress> addresses = info.getHostAddresses();
+                    if (!addresses.isEmpty()) {
+                        prober.probe(urlOf(info, addresses.get(0)));
+                        synchronized (NsdSearch.this) {
+                            if (infoCallbacks.remove(this)) {
+                                unregister(this);
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                public void onServiceInfoCallbackRegistrationFailed(int errorCode) {
+                    synchronized (NsdSearch.this) {
+                        infoCallbacks.remove(this);
+                    }
+                }
+
+                @Override
+                public void onServiceLost() {
+                }
+
+                @Override
+                public void onServiceInfoCallbackUnregistered() {
+                }
+            };
+            try {
+                nsdManager.registerServiceInfoCallback(service, Runnable::run, callback);
+                infoCallbacks.add(callback);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Не удалось узнать адрес службы " + service.getServiceName() + ": " + e.getMessage());
+            }
+        }
+
+        private void unregister(NsdManager.ServiceInfoCallback callback) {
+            try {
+                nsdManager.unregisterServiceInfoCallback(callback);
+            } catch (RuntimeException e) {
+                // подписка уже снята
+            }
+        }
+
+        // До Android 14; вызывается под монитором
+        private void resolveNext() {
+            if (resolving || toResolve.isEmpty() || !started) {
+                return;
+            }
+            resolving = true;
+            resolveLegacy(toResolve.poll());
+        }
+
+        // Устаревшие с Android 14 resolveService и getHost - только для старых версий
+        @SuppressWarnings("deprecation")
+        private void resolveLegacy(NsdServiceInfo service) {
+            nsdManager.resolveService(service, new NsdManager.ResolveListener() {
+                @Override
+                public void onResolveFailed(NsdServiceInfo service, int errorCode) {
+                    resolved(null);
+                }
+
+                @Override
+                public void onServiceResolved(NsdServiceInfo service) {
+                    resolved(service.getHost() != null ? urlOf(service, service.getHost()) : null);
+                }
+            });
+        }
+
+        private synchronized void resolved(String url) {
+            resolving = false;
+            if (url != null) {
+                prober.probe(url);
+            }
+            resolveNext();
+        }
+
+        private String urlOf(NsdServiceInfo service, InetAddress host) {
+            String path = DiscoveryBeacon.DEFAULT_PATH;
+            Map<String, byte[]> attributes = service.getAttributes();
+            byte[] value = attributes != null ? attributes.get(PATH_ATTRIBUTE) : null;
+            if (value != null && value.length > 0 && value[0] == '/') {
+                path = new String(value, StandardCharsets.UTF_8);
+            }
+            return DiscoveryBeacon.httpUrl(host, service.getPort(), path);
+        }
+
+        @Override
+        public void onServiceLost(NsdServiceInfo service) {
+        }
+
+        @Override
+        public void onDiscoveryStarted(String serviceType) {
+        }
+
+        @Override
+        public void onDiscoveryStopped(String serviceType) {
+        }
+
+        @Override
+        public void onStartDiscoveryFailed(String serviceType, int errorCode) {
+            Log.w(TAG, "Не удалось начать поиск DNS-SD: " + errorCode);
+            synchronized (this) {
+                started = false;
+            }
+        }
+
+        @Override
+        public void onStopDiscoveryFailed(String serviceType, int errorCode) {
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.alarmpi;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Серверы (устройства Raspberry Pi), которые получают напоминания, и маршруты
+// напоминаний по ним. Основной сервер - адрес из настроек ApiService: с него
+// загружается список и приходят события. Дополнительные хранятся JSON-массивом
+// [{"id": ..., "name": "Кухня", "url": ...}]. Маршрут напоминания - набор id
+// серверов, основной входит в любой; без маршрута напоминание уходит на все.
+// Маршрут хранится в строке напоминания в базе (ReminderDatabase.COLUMN_ROUTES) и
+// удаляется вместе с ней; здесь - его копия в памяти.
+public class ServerEndpoints {
+
+    private static final String TAG = "ServerEndpoints";
+
+    public static final String PRIMARY_ID = "main";
+
+    private static final String PREFERENCES_NAME = "ServerEndpoints";
+    private static final String DEVICES_KEY = "devices";
+
+    // Один сервер: id постоянен, имя и адрес можно менять
+    public static class Endpoint {
+        private final String id;
+        private final String name;
+        private final String url;
+
+        public Endpoint(String id, String name, String url) {
+            this.id = id;
+            this.name = name;
+            this.url = url;
+        }
+
+        public String getId() { return id; }
+        public String getName() { return name; }
+        public String getUrl() { return url; }
+    }
+
+    private static ServerEndpoints instance;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final ReminderRepository repository;
+    private List<Endpoint> additional;
+    // Маршруты из базы: читаются в потоке базы при создании, до первого обращения
+    private final Future<Map<String, String>> routesLoad;
+    // null, пока не дождались routesLoad
+    private Map<String, Set<String>> routes;
+    // Напоминания, удалённые до этого (их маршруты могли попасть в routesLoad)
+    private final Set<String> deletedBeforeLoad = new HashSet<>();
+
+    public static synchronized ServerEndpoints getInstance(Context context) {
+        if (instance == null) {
+            instance = new ServerEndpoints(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ServerEndpoints(Context context) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.additional = load();
+        this.repository = ReminderRepository.getInstance(context);
+        this.routesLoad = repository.readRoutes();
+        // Строка удалена вместе с маршрутом - убираем и копию (в потоке базы)
+        repository.addWriteListener((saved, deletedIds) -> {
+            if (!deletedIds.isEmpty()) {
+                dropRoutes(deletedIds);
+            }
+        });
+    }
+
+    public Endpoint getPrimary() {
+        return new Endpoint(PRIMARY_ID, "Основной", new ApiService(context).getServerUrl());
+    }
+
+    // Все серверы, основной первым
+    public synchronized List<Endpoint> getAll() {
+        List<Endpoint> all = new ArrayList<>(additional.size() + 1);
+        all.add(getPrimary());
+        all.addAll(additional);
+        return all;
+    }
+
+    public synchronized List<Endpoint> getAdditional() {
+        return new ArrayList<>(additional);
+    }
+
+    // null - сервер удалён
+    public synchronized Endpoint get(String id) {
+        if (PRIMARY_ID.equals(id)) {
+            return getPrimary();
+        }
+        for (Endpoint endpoint : additional) {
+            if (endpoint.getId().equals(id)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    // Заменить список дополнительных серверов. Очереди удалённых серверов сбрасываются.
+    public void setAdditional(List<Endpoint> endpoints) {
+        Set<String> removed = new HashSet<>();
+        synchronized (this) {
+            for (Endpoint endpoint : additional) {
+                removed.add(endpoint.getId());
+            }
+            for (Endpoint endpoint : endpoints) {
+                removed.remove(endpoint.getId());
+            }
+            additional = new ArrayList<>(endpoints);
+            save();
+        }
+        for (String id : removed) {
+            OutboxDrainer.removeEndpoint(context, id);
+        }
+    }
+
+    // Разбор строк "Имя URL" (или только URL) из настроек. Сервер сохраняет id,
+    // а вместе с ним очередь неотправленных операций, если у него остался прежний
+    // адрес (переименован) или прежнее имя (сменил адрес). Каждый id достаётся
+    // одной строке: у одноимённых серверов разные id и разные очереди.
+    public synchronized List<Endpoint> parse(String text) {
+        List<String[]> lines = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            line = line.trim();
+            int space = line.lastIndexOf(' ');
+            String url = space >= 0 ? line.substring(space + 1) : line;
+            if (!url.startsWith("http://") && !url.startsWith("https://")) {
+                continue;
+            }
+            String name = space >= 0 ? line.substring(0, space).trim() : hostOf(url);
+            lines.add(new String[]{name, url});
+        }
+
+        String[] ids = new String[lines.size()];
+        Set<String> taken = new HashSet<>();
+        // Сначала по адресу, затем оставшиеся - по имени
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < lines.size(); i++) {
+                if (ids[i] != null) {
+                    continue;
+                }
+                for (Endpoint existing : additional) {
+                    String key = pass == 0 ? existing.getUrl() : existing.getName();
+                    if (key.equals(lines.get(i)[pass == 0 ? 1 : 0]) && taken.add(existing.getId())) {
+                        ids[i] = existing.getId();
+                        break;
+                    }
+                }
+            }
+        }
+
+        List<Endpoint> endpoints = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String id = ids[i] != null ? ids[i] : UUID.randomUUID().toString();
+            endpoints.add(new Endpoint(id, lines.get(i)[0], lines.get(i)[1]));
+        }
+        return endpoints;
+    }
+
+    // Обратное к parse(): по строке на сервер
+    public synchronized String format() {
+        StringBuilder text = new StringBuilder();
+        for (Endpoint endpoint : additional) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(endpoint.getName()).append(' ').append(endpoint.getUrl());
+        }
+        return text.toString();
+    }
+
+    // Серверы, на которые уходит напоминание. Основной - всегда: с него загружается
+    // список и приходят события, и удаление с него удалило бы напоминание на телефоне.
+    public synchronized List<Endpoint> getTargets(String reminderId) {
+        Set<String> ids = routes().get(reminderId);
+        List<Endpoint> all = getAll();
+        if (ids == null || ids.isEmpty()) {
+            return all;
+        }
+        List<Endpoint> targets = new ArrayList<>();
+        for (Endpoint endpoint : all) {
+            if (PRIMARY_ID.equals(endpoint.getId()) || ids.contains(endpoint.getId())) {
+                targets.add(endpoint);
+            }
+        }
+        return targets;
+    }
+
+    // Уходит ли напоминание на сервер endpointId - то же, что getTargets, без списка
+    public synchronized boolean isTarget(String reminderId, String endpointId) {
+        if (PRIMARY_ID.equals(endpointId)) {
+            return true;
+        }
+        Set<String> ids = routes().get(reminderId);
+        return ids == null || ids.isEmpty() || ids.contains(endpointId);
+    }
+
+    // Маршрут напоминания: основной сервер и дополнительные endpointIds;
+    // пустой или null - на все серверы
+    public synchronized void setTargets(String reminderId, Collection<String> endpointIds) {
+        Set<String> ids = endpointIds != null ? new HashSet<>(endpointIds) : new HashSet<>();
+        ids.add(PRIMARY_ID);
+        if (endpointIds == null || endpointIds.isEmpty() || ids.size() > additional.size()) {
+            routes().remove(reminderId);
+            repository.saveRoute(reminderId, null);
+        } else {
+            routes().put(reminderId, ids);
+            repository.saveRoute(reminderId, String.join(",", ids));
+        }
+    }
+
+    // Маршруты; первое обращение дожидается чтения из базы - как прежде чтения файла
+    // SharedPreferences. Не из потока базы: чтение стоит в его очереди. Под монитором.
+    private Map<String, Set<String>> routes() {
+        if (routes == null) {
+            Map<String, Set<String>> loaded = new HashMap<>();
+            try {
+                for (Map.Entry<String, String> entry : routesLoad.get().entrySet()) {
+                    loaded.put(entry.getKey(), new HashSet<>(Arrays.asList(entry.getValue().split(","))));
+                }
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Ошибка чтения маршрутов", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return loaded;
+            }
+            loaded.keySet().removeAll(deletedBeforeLoad);
+            deletedBeforeLoad.clear();
+            routes = loaded;
+        }
+        return routes;
+    }
+
+    private synchronized void dropRoutes(List<String> reminderIds) {
+        if (routes != null) {
+            routes.keySet().removeAll(reminderIds);
+        } else {
+            deletedBeforeLoad.addAll(reminderIds);
+        }
+    }
+
+    private static String hostOf(String url) {
+        int start = url.indexOf("://") + 3;
+        int end = url.indexOf('/', start);
+        return end >= 0 ? url.substring(start, end) : url.substring(start);
+    }
+
+    private List<Endpoint> load() {
+        List<Endpoint> endpoints = new ArrayList<>();
+        String json = preferences.getString(DEVICES_KEY, null);
+        if (json == null) {
+            return endpoints;
+        }
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject device = array.getJSONObject(i);
+                endpoints.add(new Endpoint(device.getString("id"), device.getString("name"),
+                        device.getString("url")));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Повреждён список серверов", e);
+        }
+        return endpoints;
+    }
+
+    private void save() {
+        JSONArray array = new JSONArray();
+        try {
+            for (Endpoint endpoint : additional) {
+                JSONObject device = new JSONObject();
+                device.put("id", endpoint.getId());
+                device.put("name", endpoint.getName());
+                device.put("url", endpoint.getUrl());
+                array.put(device);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Ошибка сохранения списка серверов", e);
+            return;
+        }
+        preferences.edit().putString(DEVICES_KEY, array.toString()).apply();
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.alarmpi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Постоянная подписка на события сервера (Server-Sent Events, text/event-stream).
+// Одно долгое GET-соединение в отдельном потоке; сервер пишет события по мере
+// изменений и комментарии-пульс (": ping"), чтобы соединение не считалось зависшим.
+//   id: 43
+//   event: reminder
+//   data: {"id": ..., "title": ..., "version": ...}
+// id события - курсор изменений сервера (тот же, что в /changes?since=).
+// При обрыве поток переподключается с задержкой и заголовком Last-Event-ID,
+// и сервер досылает всё, что было после последнего полученного события.
+public class ServerEventStream {
+
+    // Одно событие потока
+    public static class Event {
+        private final String id;
+        private final String type;
+        private final String data;
+
+        Event(String id, String type, String data) {
+            this.id = id;
+            this.type = type;
+            this.data = data;
+        }
+
+        // Последний id, объявленный сервером (может быть унаследован от прошлых событий)
+        public String getId() { return id; }
+        public String getType() { return type; }
+        public String getData() { return data; }
+    }
+
+    // Вызывается из потока подписки
+    public interface Listener {
+        void onConnected();
+        void onEvent(Event event);
+        void onDisconnected(Exception error);
+    }
+
+    static final String DEFAULT_EVENT_TYPE = "message";
+    static final int CONNECT_TIMEOUT_MS = 5000;
+    // Сервер шлёт пульс чаще; молчание дольше - соединение потеряно
+    static final int HEARTBEAT_TIMEOUT_MS = 60 * 1000;
+    static final long INITIAL_RETRY_MS = 1000;
+    static final long MAX_RETRY_MS = 60 * 1000;
+
+    private final String url;
+    private final Listener listener;
+    private final Random random = new Random();
+
+    private volatile boolean running = false;
+    private volatile String lastEventId;
+    private volatile long retryMs = INITIAL_RETRY_MS;
+    private Thread thread;
+    private HttpURLConnection connection;
+
+    public ServerEventStream(String url, String lastEventId, Listener listener) {
+        this.url = url;
+        this.lastEventId = lastEventId;
+        this.listener = listener;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "ServerEventStream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Закрыть соединение и не переподключаться
+    public void stop() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = thread;
+            thread = null;
+            if (connection != null) {
+                connection.disconnect(); // прерывает блокирующее чтение
+            }
+        }
+        if (stopping != null) {
+            stopping.interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Поток ещё обслуживает подписку (после stop() и нового start() старый поток завершается)
+    private synchronized boolean isActive() {
+        return running && thread == Thread.currentThread();
+    }
+
+    private void run() {
+        int failedAttempts = 0;
+        while (isActive()) {
+            boolean received = false;
+            Exception error = null;
+            try {
+                received = connectAndRead();
+            } catch (StreamClosedException e) {
+                // 204 или ошибка клиента: сервер просит больше не подключаться
+                synchronized (this) {
+                    if (!isActive()) {
+                        return;
+                    }
+                    running = false;
+                    thread = null;
+                }
+                listener.onDisconnected(e);
+                return;
+            } catch (IOException e) {
+                error = e;
+            }
+            if (!isActive()) {
+                return;
+            }
+            listener.onDisconnected(error);
+            failedAttempts = received ? 1 : failedAttempts + 1;
+            try {
+                Thread.sleep(nextDelay(failedAttempts));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Одно подключение. Возвращает true, если успели получить хотя бы одно событие
+    private boolean connectAndRead() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        synchronized (this) {
+            if (!isActive()) {
+                return false;
+            }
+            connection = conn;
+        }
+        boolean received = false;
+        Parser parser = new Parser(lastEventId);
+        try {
+            conn.setRequestMethod("GET");
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(HEARTBEAT_TIMEOUT_MS);
+            conn.setUseCaches(false);
+            conn.setRequestProperty("Accept", "text/event-stream");
+            conn.setRequestProperty("Cache-Control", "no-cache");
+            if (lastEventId != null && !lastEventId.isEmpty()) {
+                conn.setRequestProperty("Last-Event-ID", lastEventId);
+            }
+
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NO_CONTENT
+                    || (code >= 400 && code < 500 && code != 408 && code != 429)) {
+                throw new StreamClosedException("Сервер закрыл подписку: " + code);
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Ошибка сервера: " + code);
+            }
+            listener.onConnected();
+
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+                Event event;
+                while (isActive() && (event = parser.next(reader)) != null) {
+                    lastEventId = event.getId();
+                    received = true;
+                    listener.onEvent(event);
+                }
+            }
+            return received;
+        } catch (IOException e) {
+            if (received && !(e instanceof StreamClosedException)) {
+                // Обрыв после событий - не считаем серией неудач
+                return true;
+            }
+            throw e;
+        } finally {
+            if (parser.getRetryMs() > 0) {
+                retryMs = parser.getRetryMs();
+            }
+            synchronized (this) {
+                if (connection == conn) {
+                    connection = null;
+                }
+            }
+            conn.disconnect();
+        }
+    }
+
+    // Задержка перед переподключением: retry от сервера, дальше удвоение с разбросом
+    private long nextDelay(int failedAttempts) {
+        int shift = Math.min(Math.max(failedAttempts - 1, 0), 16);
+        long delay = Math.min(MAX_RETRY_MS, retryMs << shift);
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (half + 1));
+    }
+
+    private static class StreamClosedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StreamClosedException(String message) {
+            super(message);
+        }
+    }
+
+    // Разбор text/event-stream по строкам (формат из спецификации HTML EventSource)
+    static class Parser {
+        private String lastEventId;
+        private long retryMs = -1;
+
+        Parser(String lastEventId) {
+            this.lastEventId = lastEventId;
+        }
+
+        long getRetryMs() {
+            return retryMs;
+        }
+
+        // Следующее событие; null - поток закончился
+        Event next(BufferedReader reader) throws IOException {
+            StringBuilder data = null;
+            String type = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    // Пустая строка завершает событие; событие без data не доставляется
+                    if (data != null) {
+                        return new Event(lastEventId, type != null ? type : DEFAULT_EVENT_TYPE, data.toString());
+                    }
+                    type = null;
+                    continue;
+                }
+                if (line.charAt(0) == ':') {
+                    continue; // комментарий (пульс)
+                }
+                int colon = line.indexOf(':');
+                String field = colon >= 0 ? line.substring(0, colon) : line;
+                String value = colon >= 0 ? line.substring(colon + 1) : "";
+                if (value.startsWith(" ")) {
+                    value = value.substring(1);
+                }
+                switch (field) {
+                    case "data":
+                        if (data == null) {
+                            data = new StringBuilder(value);
+                        } else {
+                            data.append('\n').append(value);
+                        }
+                        break;
+                    case "event":
+                        type = value;
+                        break;
+                    case "id":
+                        if (value.indexOf('\0') < 0) {
+                            lastEventId = value;
+                        }
+                        break;
+                    case "retry":
+                        try {
+                            retryMs = Long.parseLong(value);
+                        } catch (NumberFormatException ignored) {
+                            // по спецификации поле игнорируется
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            // Недописанное событие в конце потока отбрасывается
+            return null;
+        }
+    }
+}
@@ -13,14 +13,19 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.DialogFragment;
 
 public class ServerSettingsDialog extends DialogFragment {
 
     private EditText serverUrlEditText;
+    private EditText additionalServersEditText;
     private TextView connectionStatusTextView;
     private Button testConnectionButton;
+    private Button findServerButton;
     private ApiService apiService;
+    // Адрес, подставленный поиском; null - поиск не запускали
+    private String discoveredUrl;
 
     @NonNull
     @Override
@@ -34,13 +39,23 @@ public class ServerSettingsDialog extends DialogFragment {
 
         // Находим элементы
         serverUrlEditText = view.findViewById(R.id.serverUrlEditText);
+        additionalServersEditText = view.findViewById(R.id.additionalServersEditText);
         connectionStatusTextView = view.findViewById(R.id.connectionStatusTextView);
         testConnectionButton = view.findViewById(R.id.testConnectionButton);
+        findServerButton = view.findViewById(R.id.findServerButton);
         Button cancelButton = view.findViewById(R.id.cancelButton);
         Button saveButton = view.findViewById(R.id.saveButton);
 
         // Загружаем текущие настройки
         serverUrlEditText.setText(apiService.getServerUrl());
+        additionalServersEditText.setText(ServerEndpoints.getInstance(requireContext()).format());
+        long rttMs = ServerDiscovery.getInstance(requireContext()).getCachedRttMs();
+        if (rttMs >= 0) {
+            connectionStatusTextView.setText("Статус: сервер отвечал за " + rttMs + " мс");
+        }
+
+        // Обработчик кнопки поиска
+        findServerButton.setOnClickListener(v -> findServer());
 
         // Обработчик кнопки тестирования
         testConnectionButton.setOnClickListener(v -> testConnection());
@@ -55,6 +70,44 @@ public class ServerSettingsDialog extends DialogFragment {
         return builder.create();
     }
 
+    // Поиск серверов в сети: самый быстрый подставляется в поле адреса
+    private void findServer() {
+        connectionStatusTextView.setText("Поиск сервера в сети...");
+        findServerButton.setEnabled(false);
+
+        ServerDiscovery.getInstance(requireContext()).discover(servers -> {
+            if (!isAdded()) {
+                return; // диалог уже закрыт
+            }
+            findServerButton.setEnabled(true);
+            if (servers.isEmpty()) {
+                connectionStatusTextView.setText("Серверы в сети не найдены");
+                connectionStatusTextView.setTextColor(
+                        ContextCompat.getColor(requireContext(), android.R.color.holo_red_dark));
+                return;
+            }
+            EndpointProber.Result best = servers.get(0);
+            serverUrlEditText.setText(best.getUrl());
+            discoveredUrl = best.getUrl();
+            // Остальные найденные устройства - в список дополнительных, если их там ещё нет
+            StringBuilder additional = new StringBuilder(additionalServersEditText.getText().toString().trim());
+            for (int i = 1; i < servers.size(); i++) {
+                String url = servers.get(i).getUrl();
+                if (additional.indexOf(url) < 0) {
+                    if (additional.length() > 0) {
+                        additional.append('\n');
+                    }
+                    additional.append(url);
+                }
+            }
+            additionalServersEditText.setText(additional.toString());
+            connectionStatusTextView.setText("Найдено серверов: " + servers.size()
+                    + ". Самый быстрый отвечает за " + best.getRttMs() + " мс");
+            connectionStatusTextView.setTextColor(
+                    ContextCompat.getColor(requireContext(), android.R.color.holo_green_dark));
+        });
+    }
+
     private void testConnection() {
         String url = serverUrlEditText.getText().toString().trim();
         if (url.isEmpty()) {
@@ -65,11 +118,8 @@ public class ServerSettingsDialog extends DialogFragment {
         connectionStatusTextView.setText("Проверка соединения...");
         testConnectionButton.setEnabled(false);
 
-        // Временно устанавливаем URL для теста
-        ApiService testApiService = new ApiService(requireContext());
-        testApiService.setServerUrl(url);
-
-        testApiService.testConnection(new ApiService.ConnectionTestCallback() {
+        // Проверяется введённый адрес; сохранённый меняется только кнопкой сохранения
+        apiService.testConnection(url, new ApiService.ConnectionTestCallback() {
             @Override
             public void onConnectionResult(boolean success, String message) {
                 connectionStatusTextView.setText(message);
@@ -77,10 +127,10 @@ public class ServerSettingsDialog extends DialogFragment {
 
                 if (success) {
                     connectionStatusTextView.setTextColor(
-                            getResources().getColor(android.R.color.holo_green_dark));
+                            ContextCompat.getColor(requireContext(), android.R.color.holo_green_dark));
                 } else {
                     connectionStatusTextView.setTextColor(
-                            getResources().getColor(android.R.color.holo_red_dark));
+                            ContextCompat.getColor(requireContext(), android.R.color.holo_red_dark));
                 }
             }
         });
@@ -94,8 +144,15 @@ public class ServerSettingsDialog extends DialogFragment {
             return;
         }
 
-        // Сохраняем настройки
-        apiService.setServerUrl(url);
+        // Сохраняем настройки. Другой сервер - синхронизация с ним начинается заново
+        apiService.switchServer(url);
+        ServerEndpoints endpoints = ServerEndpoints.getInstance(requireContext());
+        endpoints.setAdditional(endpoints.parse(additionalServersEditText.getText().toString()));
+        // Выбранный вручную адрес не нужно сразу искать заново, и поиск его не заменит;
+        // принятый из поиска - может, если устройство сменит адрес
+        ServerDiscovery.getInstance(requireContext()).remember(url, -1, url.equals(discoveredUrl));
+        // Подписка на события переходит на новый сервер
+        apiService.subscribeToChanges();
         Toast.makeText(getContext(), "Настройки сохранены", Toast.LENGTH_SHORT).show();
         dismiss();
     }
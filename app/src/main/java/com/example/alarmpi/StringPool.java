@@ -0,0 +1,76 @@
+package com.example.alarmpi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Пул строк со счётчиком ссылок: одинаковые заголовки и описания ("Таблетки",
+// "Полить цветы") хранятся одним экземпляром, а строка адресуется индексом int.
+// Когда ссылок не остаётся, индекс освобождается и занимается следующей новой строкой.
+// Не потокобезопасен.
+public class StringPool {
+
+    // Индекс для null
+    public static final int NULL = -1;
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private String[] strings = new String[16];
+    private int[] refs = new int[16];
+    private int[] free = new int[16];
+    private int freeCount = 0;
+    private int used = 0;
+
+    // Индекс строки; каждый вызов добавляет ссылку, которую снимает release
+    public int acquire(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer existing = indexes.get(value);
+        if (existing != null) {
+            refs[existing]++;
+            return existing;
+        }
+        int index;
+        if (freeCount > 0) {
+            index = free[--freeCount];
+        } else {
+            if (used == strings.length) {
+                strings = Arrays.copyOf(strings, used * 2);
+                refs = Arrays.copyOf(refs, used * 2);
+            }
+            index = used++;
+        }
+        strings[index] = value;
+        refs[index] = 1;
+        indexes.put(value, index);
+        return index;
+    }
+
+    public void release(int index) {
+        if (index == NULL || --refs[index] > 0) {
+            return;
+        }
+        indexes.remove(strings[index]);
+        strings[index] = null;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = index;
+    }
+
+    public String get(int index) {
+        return index == NULL ? null : strings[index];
+    }
+
+    // Число разных строк в пуле
+    public int size() {
+        return indexes.size();
+    }
+
+    public void clear() {
+        indexes.clear();
+        Arrays.fill(strings, 0, used, null);
+        used = 0;
+        freeCount = 0;
+    }
+}
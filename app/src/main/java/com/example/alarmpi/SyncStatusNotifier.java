@@ -0,0 +1,120 @@
+package com.example.alarmpi;
+
+import android.Manifest;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.widget.Toast;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Одно уведомление о состоянии синхронизации вместо сообщения на каждую ошибку.
+// Пока серверы недоступны, уведомление обновляется без звука; сервер пропадает
+// из него после первой успешной отправки, а когда недоступных не осталось,
+// уведомление снимается. Без разрешения на уведомления - одно всплывающее
+// сообщение на серию ошибок. Вызывается из главного потока.
+public class SyncStatusNotifier {
+
+    private static final String CHANNEL_ID = "sync_status";
+    private static final int NOTIFICATION_ID = 1;
+
+    private static SyncStatusNotifier instance;
+
+    private final Context context;
+    // Недоступные серверы (id из ServerEndpoints) -> число неотправленных операций
+    private final Map<String, Integer> failing = new LinkedHashMap<>();
+    private String lastError;
+
+    public static synchronized SyncStatusNotifier getInstance(Context context) {
+        if (instance == null) {
+            instance = new SyncStatusNotifier(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SyncStatusNotifier(Context context) {
+        this.context = context;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    "Синхронизация с сервером", NotificationManager.IMPORTANCE_LOW);
+            context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+    }
+
+    // Изменения не отправлены на сервер endpointId: pendingCount ждут в его журнале
+    public void reportFailure(String endpointId, int pendingCount, String error) {
+        boolean first = failing.isEmpty();
+        failing.put(endpointId, pendingCount);
+        lastError = error;
+        show(first);
+    }
+
+    // Отправка на сервер прошла - убираем его из уведомления об ошибках
+    public void reportSuccess(String endpointId) {
+        if (failing.remove(endpointId) == null) {
+            return;
+        }
+        if (failing.isEmpty()) {
+            NotificationManagerCompat.from(context).cancel(NOTIFICATION_ID);
+        } else {
+            show(false);
+        }
+    }
+
+    private void show(boolean first) {
+        if (!canNotify()) {
+            if (first) {
+                Toast.makeText(context, "Сервер недоступен, изменения будут отправлены позже",
+                        Toast.LENGTH_LONG).show();
+            }
+            return;
+        }
+        int pendingCount = 0;
+        for (int count : failing.values()) {
+            pendingCount += count;
+        }
+        String text = lastError;
+        if (failing.size() > 1) {
+            // Несколько серверов - перечисляем недоступные
+            List<String> names = new ArrayList<>();
+            ServerEndpoints endpoints = ServerEndpoints.getInstance(context);
+            for (String id : failing.keySet()) {
+                ServerEndpoints.Endpoint endpoint = endpoints.get(id);
+                names.add(endpoint != null ? endpoint.getName() : id);
+            }
+            text = "Недоступны: " + String.join(", ", names);
+        }
+        PendingIntent openApp = PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class), PendingIntent.FLAG_IMMUTABLE);
+        NotificationManagerCompat.from(context).notify(NOTIFICATION_ID,
+                new NotificationCompat.Builder(context, CHANNEL_ID)
+                        .setSmallIcon(android.R.drawable.stat_notify_sync_noanim)
+                        .setContentTitle("Не отправлено изменений: " + pendingCount)
+                        .setContentText(text)
+                        .setCategory(NotificationCompat.CATEGORY_STATUS)
+                        .setPriority(NotificationCompat.PRIORITY_LOW)
+                        .setOnlyAlertOnce(true)
+                        .setContentIntent(openApp)
+                        .build());
+    }
+
+    private boolean canNotify() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
+        return NotificationManagerCompat.from(context).areNotificationsEnabled();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Предохранитель: размыкание после ошибок подряд, пробный запрос
+ * и таймаут по сглаженному времени ответа с отступом после таймаутов.
+ */
+public class CircuitBreakerTest {
+
+    private long now = 0;
+    private final CircuitBreaker breaker = new CircuitBreaker(5000, () -> now);
+
+    @Test
+    public void opensAfterConsecutiveFailures_andFailsFast() {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.INITIAL_OPEN_MS, breaker.getRetryAfterMs());
+    }
+
+    @Test
+    public void halfOpen_allowsSingleProbe_successCloses() {
+        open();
+        now += CircuitBreaker.INITIAL_OPEN_MS;
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess(50);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void failedProbe_reopensWithLongerPause() {
+        open();
+        now += CircuitBreaker.INITIAL_OPEN_MS;
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2 * CircuitBreaker.INITIAL_OPEN_MS, breaker.getRetryAfterMs());
+    }
+
+    @Test
+    public void timeout_followsObservedRtt() {
+        assertEquals(5000, breaker.getTimeoutMs());
+        for (int i = 0; i < 20; i++) {
+            breaker.onSuccess(100);
+        }
+        assertEquals(CircuitBreaker.MIN_TIMEOUT_MS, breaker.getTimeoutMs());
+        for (int i = 0; i < 20; i++) {
+            breaker.onSuccess(3000);
+        }
+        int timeout = breaker.getTimeoutMs();
+        assertTrue(timeout > 3000 && timeout <= CircuitBreaker.MAX_TIMEOUT_MS);
+    }
+
+    @Test
+    public void timeouts_backOffUntilSuccess() {
+        for (int i = 0; i < 20; i++) {
+            breaker.onSuccess(50);
+        }
+        assertEquals(CircuitBreaker.MIN_TIMEOUT_MS, breaker.getTimeoutMs());
+
+        // Большой пакет дольше мелких запросов: таймауты подряд удваивают ожидание
+        int previous = breaker.getTimeoutMs();
+        for (int i = 0; i < 3; i++) {
+            breaker.tryAcquire();
+            breaker.onFailure(true);
+            int timeout = breaker.getTimeoutMs();
+            assertEquals(Math.min(CircuitBreaker.MAX_TIMEOUT_MS, previous * 2), timeout);
+            previous = timeout;
+        }
+        for (int i = 0; i < 10; i++) {
+            breaker.onFailure(true);
+        }
+        assertEquals(CircuitBreaker.MAX_TIMEOUT_MS, breaker.getTimeoutMs());
+
+        // Пробный запрос получает отступивший таймаут, успех его сбрасывает
+        now += CircuitBreaker.MAX_OPEN_MS;
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(50);
+        assertEquals(CircuitBreaker.MIN_TIMEOUT_MS, breaker.getTimeoutMs());
+    }
+
+    @Test
+    public void timeout_growsWithBodySize() {
+        for (int i = 0; i < 20; i++) {
+            breaker.onSuccess(50);
+        }
+        assertEquals(CircuitBreaker.MIN_TIMEOUT_MS, breaker.getTimeoutMs(0));
+        assertEquals(CircuitBreaker.MIN_TIMEOUT_MS + 128 * CircuitBreaker.BODY_ALLOWANCE_MS_PER_KB,
+                breaker.getTimeoutMs(128 * 1024));
+        assertEquals(CircuitBreaker.MAX_TIMEOUT_MS, breaker.getTimeoutMs(10 * 1024 * 1024));
+    }
+
+    private void open() {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            breaker.tryAcquire();
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
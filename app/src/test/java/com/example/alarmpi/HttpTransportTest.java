@@ -0,0 +1,166 @@
+package com.example.alarmpi;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Проверка переиспользования соединений HttpTransport и замер пропускной
+ * способности на локальном сервере-заглушке.
+ */
+public class HttpTransportTest {
+
+    private static final int REQUESTS = 200;
+    private static final byte[] RESPONSE = "[{\"success\":true}]".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private String url;
+    private String echoUrl;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicInteger receivedBytes = new AtomicInteger();
+
+    @Before
+    public void startServer() throws Exception {
+        // Без TCP_NODELAY заглушка добавляет ~40 мс (Nagle + delayed ACK) к каждому keep-alive запросу
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/reminders", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(RESPONSE);
+            }
+        });
+        // Эхо с поддержкой gzip в обе стороны; считает байты, пришедшие по сети
+        server.createContext("/api/echo", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] raw = exchange.getRequestBody().readAllBytes();
+            receivedBytes.set(raw.length);
+            boolean gzipped = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            byte[] body = gzipped ? new GZIPInputStream(new java.io.ByteArrayInputStream(raw)).readAllBytes() : raw;
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(body);
+                }
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Accept-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        // Ответ без тела, но с Content-Encoding: gzip
+        server.createContext("/api/empty", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/reminders/batch";
+        echoUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/echo";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void sequentialRequests_reuseOneConnection() throws Exception {
+        HttpTransport transport = new HttpTransport();
+        byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 50; i++) {
+            HttpTransport.Response response = transport.post(url, body, "application/json", 2000);
+            assertTrue(response.isOk());
+            assertEquals("[{\"success\":true}]", response.getBodyAsString());
+        }
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void gzip_requestAndResponseRoundTrip() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            json.append("{\"id\":\"").append(i).append("\",\"title\":\"Полить цветы\",\"action\":\"update\"},");
+        }
+        byte[] body = json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+        HttpTransport transport = new HttpTransport();
+
+        for (int i = 0; i < 3; i++) {
+            byte[] echoed = transport.execute("POST", echoUrl, body, "application/json", true, "application/json", 2000,
+                    (head, in) -> {
+                        assertEquals("gzip", head.getHeader("accept-encoding"));
+                        return HttpTransport.readFully(in);
+                    });
+            assertArrayEquals(body, echoed);
+            assertTrue(receivedBytes.get() < body.length / 4);
+        }
+        // Сжатые ответы дочитываются до конца - соединение переиспользуется
+        assertEquals(1, clientPorts.size());
+
+        // Маленькое тело уходит как есть
+        byte[] small = "[]".getBytes(StandardCharsets.UTF_8);
+        transport.execute("POST", echoUrl, small, "application/json", true, "application/json", 2000,
+                (head, in) -> HttpTransport.readFully(in));
+        assertEquals(small.length, receivedBytes.get());
+    }
+
+    @Test
+    public void gzip_emptyResponseBodyIsNotAnError() throws Exception {
+        String emptyUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/empty";
+        HttpTransport.Response response = new HttpTransport().get(emptyUrl, 2000);
+        assertTrue(response.isOk());
+        assertEquals(0, response.getBody().length);
+    }
+
+    @Test
+    public void throughput_pooledVsUndrained() throws Exception {
+        byte[] body = "[{\"id\":\"1\",\"action\":\"update\"}]".getBytes(StandardCharsets.UTF_8);
+
+        // Старая схема: ответ не дочитывается, соединение не возвращается в пул
+        clientPorts.clear();
+        for (int i = 0; i < REQUESTS; i++) {
+            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            OutputStream os = conn.getOutputStream();
+            os.write(body);
+            os.close();
+            assertEquals(200, conn.getResponseCode());
+        }
+        int undrainedConnections = clientPorts.size();
+
+        clientPorts.clear();
+        HttpTransport transport = new HttpTransport();
+        for (int i = 0; i < REQUESTS; i++) {
+            assertTrue(transport.post(url, body, "application/json", 2000).isOk());
+        }
+        int pooledConnections = clientPorts.size();
+
+        assertTrue(pooledConnections < undrainedConnections);
+    }
+}
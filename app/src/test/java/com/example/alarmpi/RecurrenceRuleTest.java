@@ -0,0 +1,136 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Правила повторения: следующее срабатывание без перебора прошедших,
+ * текстовая форма и то, что повторяющееся напоминание остаётся одной записью.
+ */
+public class RecurrenceRuleTest {
+
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static long at(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(BERLIN, Locale.ROOT);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void hourly_nextFrom() {
+        RecurrenceRule rule = RecurrenceRule.everyHours(3);
+        long start = at(2026, 1, 1, 9, 0);
+        assertEquals(start, rule.nextFrom(start, start - 1, BERLIN));
+        assertEquals(start, rule.nextFrom(start, start, BERLIN));
+        assertEquals(start + 3 * HOUR, rule.nextFrom(start, start + 1, BERLIN));
+        assertEquals(start + 300 * HOUR, rule.nextFrom(start, start + 299 * HOUR, BERLIN));
+    }
+
+    @Test
+    public void daily_keepsLocalTimeAcrossDst() {
+        RecurrenceRule rule = RecurrenceRule.everyDays(1);
+        long start = at(2026, 3, 20, 8, 30);
+        // 29 марта в Берлине переход на летнее время - в сутках 23 часа
+        assertEquals(at(2026, 3, 30, 8, 30), rule.nextFrom(start, at(2026, 3, 30, 7, 0), BERLIN));
+        assertEquals(at(2026, 10, 26, 8, 30), rule.nextFrom(start, at(2026, 10, 25, 9, 0), BERLIN));
+
+        RecurrenceRule everyOther = RecurrenceRule.everyDays(2);
+        assertEquals(at(2026, 3, 22, 8, 30), everyOther.nextFrom(start, at(2026, 3, 21, 0, 0), BERLIN));
+    }
+
+    @Test
+    public void weekly_byDayWithInterval() {
+        // Понедельник 5 января 2026, по понедельникам и пятницам раз в две недели
+        RecurrenceRule rule = RecurrenceRule.weekly(RecurrenceRule.MONDAY | RecurrenceRule.MONDAY << 4, 2);
+        long start = at(2026, 1, 5, 7, 0);
+        List<Long> times = rule.upcoming(start, start, 5, BERLIN);
+        assertEquals(Long.valueOf(at(2026, 1, 5, 7, 0)), times.get(0));
+        assertEquals(Long.valueOf(at(2026, 1, 9, 7, 0)), times.get(1));
+        assertEquals(Long.valueOf(at(2026, 1, 19, 7, 0)), times.get(2));
+        assertEquals(Long.valueOf(at(2026, 1, 23, 7, 0)), times.get(3));
+        assertEquals(Long.valueOf(at(2026, 2, 2, 7, 0)), times.get(4));
+
+        RecurrenceRule weekdays = RecurrenceRule.weekly(RecurrenceRule.WEEKDAYS, 1);
+        // Из субботы - в понедельник
+        assertEquals(at(2026, 1, 12, 7, 0), weekdays.nextFrom(start, at(2026, 1, 10, 12, 0), BERLIN));
+    }
+
+    @Test
+    public void parse_roundTrip() {
+        RecurrenceRule[] rules = {
+                RecurrenceRule.everyHours(1),
+                RecurrenceRule.everyDays(3),
+                RecurrenceRule.weekly(RecurrenceRule.WEEKEND, 1),
+                RecurrenceRule.weekly(RecurrenceRule.MONDAY | RecurrenceRule.MONDAY << 4, 2)
+        };
+        for (RecurrenceRule rule : rules) {
+            assertEquals(rule, RecurrenceRule.parse(rule.toString()));
+        }
+        assertEquals("FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,FR", rules[3].toString());
+        assertEquals(RecurrenceRule.everyDays(1), RecurrenceRule.parse("freq=daily;wkst=mo"));
+        assertNull(RecurrenceRule.parse(" "));
+        assertNull(ReminderJsonReader.parseRecurrence("FREQ=MONTHLY"));
+        assertEquals("по будням", RecurrenceRule.weekly(RecurrenceRule.WEEKDAYS, 1).describe());
+    }
+
+    @Test
+    public void yearOfDailyOccurrences_isOneQueueEntry() {
+        long start = at(2026, 1, 1, 8, 0);
+        Reminder reminder = new Reminder("1700000000001", "Таблетки", null, new Date(start), true);
+        reminder.setRecurrence(RecurrenceRule.everyDays(1));
+        Reminder once = new Reminder("1700000000002", "Разовое", null, new Date(start + 90 * 24 * HOUR), true);
+
+        ReminderDueQueue queue = new ReminderDueQueue();
+        queue.put(reminder, start);
+        queue.put(once, start);
+
+        int fired = 0;
+        long time = start;
+        for (int day = 0; day < 365; day++) {
+            List<Reminder> due = queue.pollDue(time);
+            fired += due.size();
+            time += 24 * HOUR;
+        }
+
+        // 365 срабатываний повторяющегося и одно разового, в очереди осталась одна запись
+        assertEquals(366, fired);
+        assertEquals(1, queue.size());
+        assertEquals(reminder.getId(), queue.peek().getId());
+        assertTrue(queue.getDueTime(reminder.getId()) >= time - 24 * HOUR);
+
+        List<Long> upcoming = reminder.getRecurrence().upcoming(start, start, 365, TimeZone.getDefault());
+        assertEquals(365, upcoming.size());
+    }
+
+    @Test
+    public void codecs_carryRecurrence() throws Exception {
+        Reminder reminder = new Reminder("1700000000003", "Тренировка", "Зал", new Date(at(2026, 1, 5, 19, 0)), true);
+        reminder.setRecurrence(RecurrenceRule.weekly(RecurrenceRule.MONDAY | RecurrenceRule.MONDAY << 3, 1));
+        List<ReminderOperation> sent = Collections.singletonList(
+                new ReminderOperation(reminder, ReminderOperation.ACTION_ADD));
+
+        BinaryReminderCodec binary = new BinaryReminderCodec();
+        Reminder decoded = binary.decodeBatch(new ByteArrayInputStream(binary.encodeBatch(sent)))
+                .get(0).getReminder();
+        assertEquals(reminder.getRecurrence(), decoded.getRecurrence());
+        assertEquals(reminder.getDateTime(), decoded.getDateTime());
+
+        String json = new String(new JsonReminderCodec("yyyy-MM-dd'T'HH:mm:ss").encodeBatch(sent),
+                StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"recurrence\":\"FREQ=WEEKLY;BYDAY=MO,TH\""));
+        assertTrue(json, json.contains("\"nextDateTime\":"));
+    }
+}
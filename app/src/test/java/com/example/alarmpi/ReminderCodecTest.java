@@ -0,0 +1,117 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Двоичный формат обмена: разбор того, что закодировано, и сравнение
+ * размера и времени кодирования пакета с JSON.
+ */
+public class ReminderCodecTest {
+
+    private static final int BULK_SIZE = 5000;
+
+    private final BinaryReminderCodec binary = new BinaryReminderCodec();
+
+    private static List<ReminderOperation> operations(int count) {
+        List<ReminderOperation> operations = new ArrayList<>(count);
+        long base = 1_760_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            Reminder reminder = new Reminder(String.valueOf(base + i), "Полить цветы " + i,
+                    "Фикус в спальне и кактусы на кухне, \"не забыть\" удобрение", new Date(base + i * 60_000L), i % 3 != 0);
+            reminder.setVersion(i);
+            String action = i % 10 == 0 ? ReminderOperation.ACTION_ADD : ReminderOperation.ACTION_UPDATE;
+            operations.add(new ReminderOperation(reminder, action));
+        }
+        return operations;
+    }
+
+    @Test
+    public void batch_roundTrip() throws Exception {
+        Reminder withNull = new Reminder("42", "Без описания", null, new Date(123_456_789L), false);
+        List<ReminderOperation> sent = new ArrayList<>(operations(3));
+        sent.add(new ReminderOperation(withNull, ReminderOperation.ACTION_DELETE));
+
+        List<ReminderOperation> received = binary.decodeBatch(new ByteArrayInputStream(binary.encodeBatch(sent)));
+
+        assertEquals(sent.size(), received.size());
+        for (int i = 0; i < sent.size(); i++) {
+            Reminder expected = sent.get(i).getReminder();
+            Reminder actual = received.get(i).getReminder();
+            assertEquals(sent.get(i).getAction(), received.get(i).getAction());
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getDateTime(), actual.getDateTime());
+            assertEquals(expected.isActive(), actual.isActive());
+            assertEquals(expected.getVersion(), actual.getVersion());
+        }
+    }
+
+    @Test
+    public void batchResult_roundTrip_missingItemsAreRetryable() throws Exception {
+        List<ReminderOperation> sent = operations(3);
+        BatchResult serverResult = new BatchResult();
+        serverResult.add(new BatchResult.ItemResult(sent.get(0), true, null));
+        serverResult.add(new BatchResult.ItemResult(sent.get(1), false, "Нет места"));
+
+        BatchResult result = binary.decodeBatchResult(
+                new ByteArrayInputStream(binary.encodeBatchResult(serverResult)), sent);
+
+        assertEquals(3, result.getItems().size());
+        assertTrue(result.getItems().get(0).isSuccess());
+        assertEquals("Нет места", result.getItems().get(1).getError());
+        assertFalse(result.getItems().get(1).isRetryable());
+        assertTrue(result.getItems().get(2).isRetryable());
+    }
+
+    @Test
+    public void changeSet_roundTrip_inChunks() throws Exception {
+        List<Reminder> changed = new ArrayList<>();
+        for (ReminderOperation operation : operations(ReminderJsonReader.CHUNK_SIZE + 10)) {
+            operation.getReminder().setUpdatedAt(7);
+            changed.add(operation.getReminder());
+        }
+        byte[] encoded = binary.encodeChangeSet(99, changed, Arrays.asList("1", "2"));
+
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<Reminder> received = new ArrayList<>();
+        ChangeSet changes = binary.decodeChangeSet(new ByteArrayInputStream(encoded), 0, chunk -> {
+            chunkSizes.add(chunk.size());
+            received.addAll(chunk);
+        });
+
+        assertEquals(99, changes.getCursor());
+        assertEquals(Arrays.asList("1", "2"), changes.getDeletedIds());
+        assertEquals(Arrays.asList(ReminderJsonReader.CHUNK_SIZE, 10), chunkSizes);
+        assertEquals(changed.get(5).getTitle(), received.get(5).getTitle());
+        assertEquals(7, received.get(5).getUpdatedAt());
+    }
+
+    @Test
+    public void emptyChangeSet() throws Exception {
+        byte[] encoded = binary.encodeChangeSet(5, Collections.emptyList(), Collections.emptyList());
+        ChangeSet changes = binary.decodeChangeSet(new ByteArrayInputStream(encoded), 0, chunk -> fail());
+        assertEquals(5, changes.getCursor());
+        assertTrue(changes.getDeletedIds().isEmpty());
+    }
+
+    @Test
+    public void bulkBatch_binaryIsSmallerThanJson() throws Exception {
+        List<ReminderOperation> bulk = operations(BULK_SIZE);
+        JsonReminderCodec json = new JsonReminderCodec("yyyy-MM-dd HH:mm:ss");
+
+        byte[] jsonBytes = json.encodeBatch(bulk);
+        byte[] binaryBytes = binary.encodeBatch(bulk);
+        assertEquals(BULK_SIZE, binary.decodeBatch(new ByteArrayInputStream(binaryBytes)).size());
+        assertTrue(binaryBytes.length < jsonBytes.length);
+    }
+}
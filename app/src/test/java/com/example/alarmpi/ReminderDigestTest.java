@@ -0,0 +1,130 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Дерево хэшей для сверки: совпадающие наборы дают один небольшой запрос,
+ * изменение одного напоминания находится в одной корзине, а напоминание,
+ * которое есть только на сервере, не отправляется повторно.
+ */
+public class ReminderDigestTest {
+
+    private static final int COUNT = 10_000;
+
+    private static ReminderTable reminders() {
+        ReminderTable reminders = new ReminderTable(COUNT);
+        long base = 1_760_000_000_000L;
+        for (int i = 0; i < COUNT; i++) {
+            reminders.add(new Reminder(String.valueOf(base + i), "Напоминание " + i, "Описание " + i,
+                    new Date(base + i * 60_000L), i % 2 == 0));
+        }
+        return reminders;
+    }
+
+    // Хэши корзин узла - так их вернул бы сервер
+    private static long[] leavesOf(ReminderDigest digest, int node) {
+        long[] leaves = new long[ReminderDigest.FANOUT];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = digest.getLeaf(node * ReminderDigest.FANOUT + i);
+        }
+        return leaves;
+    }
+
+    @Test
+    public void sameRemindersInAnyOrder_sameDigest() {
+        ReminderTable phone = reminders();
+        List<Reminder> shuffled = new ArrayList<>(reminders());
+        Collections.shuffle(shuffled);
+        ReminderTable server = new ReminderTable(COUNT);
+        server.addAll(shuffled);
+
+        ReminderDigest phoneDigest = ReminderDigest.of(phone);
+        ReminderDigest serverDigest = ReminderDigest.of(server);
+        String request = phoneDigest.toRequestJson();
+
+        assertEquals(serverDigest.getRoot(), phoneDigest.getRoot());
+        assertEquals(serverDigest.toRequestJson(), request);
+        assertTrue(request.getBytes(StandardCharsets.UTF_8).length < 512);
+    }
+
+    @Test
+    public void oneChangedReminder_oneDifferingBucket() {
+        ReminderTable phone = reminders();
+        ReminderDigest serverDigest = ReminderDigest.of(reminders());
+        Reminder changed = phone.get(1234);
+        changed.setActive(!changed.isActive());
+        phone.setRow(1234, changed);
+        ReminderDigest phoneDigest = ReminderDigest.of(phone);
+
+        assertNotEquals(serverDigest.getRoot(), phoneDigest.getRoot());
+        List<Integer> differing = new ArrayList<>();
+        for (int node = 0; node < ReminderDigest.FANOUT; node++) {
+            if (phoneDigest.getNode(node) != serverDigest.getNode(node)) {
+                differing.addAll(phoneDigest.differingLeaves(node, leavesOf(serverDigest, node)));
+            }
+        }
+        assertEquals(1, differing.size());
+        Set<Integer> leaves = new HashSet<>(differing);
+        List<Reminder> bucket = phoneDigest.getBuckets(leaves);
+        assertTrue(bucket.stream().anyMatch(reminder -> reminder.getId().equals(changed.getId())));
+        // 10 000 напоминаний на 256 корзин - отправляются десятки, а не все
+        assertTrue(bucket.size() < COUNT / 100);
+
+        // Сервер прислал свою корзину - уходит только изменённое напоминание
+        ReminderTable serverBucket = new ReminderTable();
+        for (Reminder reminder : serverDigest.getBuckets(leaves)) {
+            serverBucket.add(reminder);
+        }
+        List<Reminder> sent = phoneDigest.differingFrom(leaves, serverBucket);
+        assertEquals(1, sent.size());
+        assertEquals(changed.getId(), sent.get(0).getId());
+        assertTrue(phoneDigest.missingRows(serverBucket).isEmpty());
+    }
+
+    @Test
+    public void serverOnlyReminder_isFoundAndNotResent() {
+        ReminderTable phone = reminders();
+        ReminderTable server = reminders();
+        server.add(new Reminder("1770000000000", "Только на сервере", null, new Date(1_770_000_000_000L), true));
+        ReminderDigest phoneDigest = ReminderDigest.of(phone);
+        ReminderDigest serverDigest = ReminderDigest.of(server);
+
+        Set<Integer> leaves = new HashSet<>();
+        for (int node = 0; node < ReminderDigest.FANOUT; node++) {
+            leaves.addAll(phoneDigest.differingLeaves(node, leavesOf(serverDigest, node)));
+        }
+        assertEquals(1, leaves.size());
+        ReminderTable serverBucket = new ReminderTable();
+        for (Reminder reminder : serverDigest.getBuckets(leaves)) {
+            serverBucket.add(reminder);
+        }
+
+        // Телефону отправлять нечего: расходится только напоминание сервера
+        assertTrue(phoneDigest.differingFrom(leaves, serverBucket).isEmpty());
+        List<Integer> missing = phoneDigest.missingRows(serverBucket);
+        assertEquals(1, missing.size());
+        assertEquals("1770000000000", serverBucket.getId(missing.get(0)));
+    }
+
+    @Test
+    public void secondsPrecision_matchesServerDates() {
+        ReminderTable exact = new ReminderTable();
+        exact.add(new Reminder("1", "t", "d", new Date(1_760_000_000_000L), true));
+        ReminderTable withMillis = new ReminderTable();
+        withMillis.add(new Reminder("1", "t", "d", new Date(1_760_000_000_999L), true));
+        ReminderDigest digest = new ReminderDigest(exact);
+        assertEquals(digest.hashOf(exact, 0), digest.hashOf(withMillis, 0));
+        assertEquals("00000000000000ff", ReminderDigest.toHex(255));
+        assertEquals(-1L, ReminderDigest.parseHex(ReminderDigest.toHex(-1L)));
+    }
+}
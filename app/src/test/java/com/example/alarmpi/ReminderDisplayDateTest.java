@@ -0,0 +1,130 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Кэш строки даты, которую ReminderAdapter показывает в карточке:
+ * повторная привязка не должна форматировать дату и выделять память -
+ * как и поиск страницы окна (ReminderPager) для позиции карточки.
+ */
+public class ReminderDisplayDateTest {
+
+    private static final int CALLS = 100_000;
+
+    private final SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.ROOT);
+
+    @Test
+    public void repeatedCalls_returnSameString() {
+        Reminder reminder = new Reminder("1", "Тест", "", new Date(0), true);
+        String first = reminder.getDisplayDateTime(format, Locale.ROOT);
+        assertSame(first, reminder.getDisplayDateTime(format, Locale.ROOT));
+    }
+
+    @Test
+    public void dateOrLocaleChange_recomputes() {
+        Reminder reminder = new Reminder("1", "Тест", "", new Date(0), true);
+        String first = reminder.getDisplayDateTime(format, Locale.ROOT);
+
+        reminder.setDateTime(new Date(60_000));
+        String moved = reminder.getDisplayDateTime(format, Locale.ROOT);
+        assertNotEquals(first, moved);
+
+        String otherLocale = reminder.getDisplayDateTime(format, Locale.GERMANY);
+        assertNotSame(moved, otherLocale);
+    }
+
+    @Test
+    public void steadyStateBind_allocatesNothing() {
+        Reminder reminder = new Reminder("1", "Тест", "", new Date(0), true);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // Прогрев, чтобы JIT не попал в замер
+        for (int i = 0; i < CALLS; i++) {
+            reminder.getDisplayDateTime(format, Locale.ROOT);
+        }
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < CALLS; i++) {
+            reminder.getDisplayDateTime(format, Locale.ROOT);
+        }
+        long cached = threads.getThreadAllocatedBytes(thread) - before;
+
+        // Без кэша: так раньше выглядела каждая привязка карточки
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < CALLS; i++) {
+            new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.ROOT).format(reminder.getDateTime());
+        }
+        long uncached = threads.getThreadAllocatedBytes(thread) - before;
+
+        // Небольшой допуск на служебные выделения самого замера
+        assertTrue(cached < 1024);
+        assertTrue(uncached > cached);
+    }
+
+    @Test
+    public void steadyStateBind_pageLookupsAllocateNothing() {
+        // Далеко в списке: номера страниц за пределами кэша Integer.valueOf
+        int firstPage = 300;
+        int size = (firstPage + 3) * ReminderPager.PAGE_SIZE;
+        ReminderPager.Pages pages = new ReminderPager.Pages();
+        for (int page = firstPage; page < firstPage + 3; page++) {
+            List<Reminder> reminders = new ArrayList<>(ReminderPager.PAGE_SIZE);
+            for (int i = 0; i < ReminderPager.PAGE_SIZE; i++) {
+                reminders.add(new Reminder(String.valueOf(page * ReminderPager.PAGE_SIZE + i), "Тест", "",
+                        new Date(60_000L * i), true));
+            }
+            pages.put(page, reminders);
+        }
+        pages.setLoading(firstPage + 3, true);
+        ReminderPager.Window window = new ReminderPager.Window(size, pages);
+        int from = firstPage * ReminderPager.PAGE_SIZE;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // Прогрев: JIT и кэш строк дат
+        int found = bindAll(pages, window, from, size);
+        assertEquals(size - from, found);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 20; i++) {
+            bindAll(pages, window, from, size);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(allocated < 1024);
+    }
+
+    // То, что делает привязка карточки: проверки страницы и соседней, как в
+    // ReminderPager.requestPage, напоминание из окна и строка даты
+    private int bindAll(ReminderPager.Pages pages, ReminderPager.Window window, int from, int to) {
+        int found = 0;
+        for (int position = from; position < to; position++) {
+            int page = position / ReminderPager.PAGE_SIZE;
+            if (!isRequested(pages, page) || !isRequested(pages, page + 1)) {
+                continue;
+            }
+            Reminder reminder = window.get(position);
+            if (reminder != null && reminder.getDisplayDateTime(format, Locale.ROOT) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // Загружена или загружается - requestPage ничего не запрашивает
+    private static boolean isRequested(ReminderPager.Pages pages, int page) {
+        return pages.isLoaded(page) || pages.isLoading(page);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Очередь срабатываний: порядок по времени, изменение и удаление по id.
+ */
+public class ReminderDueQueueTest {
+
+    private static Reminder reminder(String id, long time) {
+        return new Reminder(id, "Напоминание " + id, "", new Date(time), true);
+    }
+
+    @Test
+    public void peek_returnsEarliest() {
+        ReminderDueQueue queue = new ReminderDueQueue();
+        queue.put(reminder("a", 300));
+        queue.put(reminder("b", 100));
+        queue.put(reminder("c", 200));
+        assertEquals("b", queue.peek().getId());
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void put_existingId_movesReminder() {
+        ReminderDueQueue queue = new ReminderDueQueue();
+        queue.put(reminder("a", 100));
+        queue.put(reminder("b", 200));
+        queue.put(reminder("a", 300));
+        assertEquals(2, queue.size());
+        assertEquals("b", queue.poll().getId());
+        assertEquals("a", queue.poll().getId());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void remove_keepsOrder() {
+        ReminderDueQueue queue = new ReminderDueQueue();
+        for (int i = 0; i < 10; i++) {
+            queue.put(reminder(String.valueOf(i), i * 10));
+        }
+        assertTrue(queue.remove("0"));
+        assertTrue(queue.remove("5"));
+        assertFalse(queue.remove("5"));
+        List<Reminder> due = queue.pollDue(60);
+        assertEquals(5, due.size());
+        assertEquals("1", due.get(0).getId());
+        assertEquals("7", queue.peek().getId());
+    }
+
+    @Test
+    public void randomOperations_matchSortedMap() {
+        Random random = new Random(42);
+        ReminderDueQueue queue = new ReminderDueQueue();
+        TreeMap<String, Long> expected = new TreeMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            String id = String.valueOf(random.nextInt(500));
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(id) != null, queue.remove(id));
+            } else {
+                long time = random.nextInt(1_000_000);
+                expected.put(id, time);
+                queue.put(reminder(id, time));
+            }
+        }
+        List<Long> times = new ArrayList<>();
+        Reminder next;
+        while ((next = queue.poll()) != null) {
+            assertEquals(expected.remove(next.getId()), Long.valueOf(next.getDateTime().getTime()));
+            times.add(next.getDateTime().getTime());
+        }
+        assertTrue(expected.isEmpty());
+        for (int i = 1; i < times.size(); i++) {
+            assertTrue(times.get(i - 1) <= times.get(i));
+        }
+    }
+}
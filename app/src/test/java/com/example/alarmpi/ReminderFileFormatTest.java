@@ -0,0 +1,226 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Импорт и экспорт файлов: разбор iCalendar и CSV, обратимость экспорта
+ * и потоковое чтение большого календаря порциями.
+ */
+public class ReminderFileFormatTest {
+
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+    private static final int EVENT_COUNT = 20_000;
+
+    private static long at(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(zone, Locale.ROOT);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    private static List<Reminder> readAll(ReminderFileFormat format, Reader in, int[] skipped) throws IOException {
+        List<Reminder> reminders = new ArrayList<>();
+        int result = format.read(in, reminders::addAll);
+        if (skipped != null) {
+            skipped[0] = result;
+        }
+        return reminders;
+    }
+
+    @Test
+    public void ics_readsEventsAndSkipsNestedAndCancelled() throws Exception {
+        String ics = "BEGIN:VCALENDAR\r\n"
+                + "VERSION:2.0\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "UID:abc@example.com\r\n"
+                + "DTSTART;TZID=Europe/Berlin:20260105T070000\r\n"
+                + "SUMMARY:Полить цветы\\, фикус\r\n"
+                + "DESCRIPTION:Первая строка\\nвторая строка очень длинная и потому перенесена по \r\n"
+                + " правилам RFC 5545\r\n"
+                + "RRULE:FREQ=DAILY;BYDAY=MO,TU,WE,TH,FR\r\n"
+                + "BEGIN:VALARM\r\n"
+                + "DESCRIPTION:Это не описание события\r\n"
+                + "END:VALARM\r\n"
+                + "END:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "DTSTART;VALUE=DATE:20260301\r\n"
+                + "SUMMARY:День рождения\r\n"
+                + "RRULE:FREQ=YEARLY\r\n"
+                + "END:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "DTSTART:20260110T120000Z\r\n"
+                + "SUMMARY:Отменено\r\n"
+                + "STATUS:CANCELLED\r\n"
+                + "END:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "SUMMARY:Без даты\r\n"
+                + "END:VEVENT\r\n"
+                + "END:VCALENDAR\r\n";
+        int[] skipped = new int[1];
+        List<Reminder> reminders = readAll(new IcsReminderFormat(BERLIN), new StringReader(ics), skipped);
+
+        assertEquals(2, reminders.size());
+        assertEquals(2, skipped[0]);
+        Reminder first = reminders.get(0);
+        assertEquals("Полить цветы, фикус", first.getTitle());
+        assertEquals("Первая строка\nвторая строка очень длинная и потому перенесена по правилам RFC 5545",
+                first.getDescription());
+        assertEquals(at(BERLIN, 2026, 1, 5, 7, 0), first.getDateTime().getTime());
+        assertEquals(RecurrenceRule.weekly(RecurrenceRule.WEEKDAYS, 1), first.getRecurrence());
+        assertTrue(first.isActive());
+
+        // Дата без времени - утро; ежегодный повтор не поддерживается - событие разовое
+        Reminder second = reminders.get(1);
+        assertEquals(at(BERLIN, 2026, 3, 1, 9, 0), second.getDateTime().getTime());
+        assertNull(second.getRecurrence());
+    }
+
+    @Test
+    public void ics_exportRoundTripKeepsIds() throws Exception {
+        IcsReminderFormat format = new IcsReminderFormat(BERLIN);
+        List<Reminder> source = sample();
+        StringWriter out = new StringWriter();
+        format.writeHeader(out);
+        for (Reminder reminder : source) {
+            format.write(out, reminder);
+        }
+        format.writeFooter(out);
+
+        for (String line : out.toString().split("\r\n")) {
+            assertTrue(line, line.getBytes("UTF-8").length <= 75);
+        }
+        assertSameReminders(source, readAll(format, new StringReader(out.toString()), null));
+    }
+
+    @Test
+    public void csv_exportRoundTrip() throws Exception {
+        CsvReminderFormat format = new CsvReminderFormat(BERLIN);
+        List<Reminder> source = sample();
+        StringWriter out = new StringWriter();
+        format.writeHeader(out);
+        for (Reminder reminder : source) {
+            format.write(out, reminder);
+        }
+        format.writeFooter(out);
+
+        assertTrue(out.toString().startsWith("﻿id,title,description,dateTime,isActive,recurrence\r\n"));
+        assertSameReminders(source, readAll(format, new StringReader(out.toString()), null));
+    }
+
+    @Test
+    public void csv_readsSemicolonsAndRussianHeaders() throws Exception {
+        String csv = "Дата;Заголовок;Описание;Повтор\n"
+                + "05.01.2026 07:30;Таблетки;\"После еды; \"\"белые\"\"\";FREQ=DAILY\n"
+                + "\n"
+                + "не дата;Пропустить;;\n"
+                + "2026-01-06 18:00;Тренировка;;\n";
+        int[] skipped = new int[1];
+        List<Reminder> reminders = readAll(new CsvReminderFormat(BERLIN), new StringReader(csv), skipped);
+
+        assertEquals(2, reminders.size());
+        assertEquals(1, skipped[0]);
+        assertEquals("После еды; \"белые\"", reminders.get(0).getDescription());
+        assertEquals(at(BERLIN, 2026, 1, 5, 7, 30), reminders.get(0).getDateTime().getTime());
+        assertEquals(RecurrenceRule.everyDays(1), reminders.get(0).getRecurrence());
+        assertNull(reminders.get(1).getDescription());
+        assertEquals(at(BERLIN, 2026, 1, 6, 18, 0), reminders.get(1).getDateTime().getTime());
+    }
+
+    @Test
+    public void largeCalendar_isReadInChunks() throws Exception {
+        final int[] chunks = new int[1];
+        final int[] total = new int[1];
+        final int[] largestChunk = new int[1];
+        int skipped = new IcsReminderFormat(BERLIN).read(new GeneratedCalendar(EVENT_COUNT), chunk -> {
+            chunks[0]++;
+            total[0] += chunk.size();
+            largestChunk[0] = Math.max(largestChunk[0], chunk.size());
+        });
+
+        assertEquals(0, skipped);
+        assertEquals(EVENT_COUNT, total[0]);
+        assertEquals(ReminderJsonReader.CHUNK_SIZE, largestChunk[0]);
+        assertEquals((EVENT_COUNT + ReminderJsonReader.CHUNK_SIZE - 1) / ReminderJsonReader.CHUNK_SIZE, chunks[0]);
+    }
+
+    private static List<Reminder> sample() {
+        Reminder once = new Reminder("1760000000001", "Позвонить маме", "Спросить про \"дачу\", рецепт\nи билеты",
+                new Date(at(BERLIN, 2026, 2, 1, 10, 15)), true);
+        Reminder off = new Reminder("1760000000002", "Выключенное; с точкой с запятой", null,
+                new Date(at(BERLIN, 2026, 2, 2, 8, 0)), false);
+        Reminder weekly = new Reminder("1760000000003", "Тренировка", "Зал",
+                new Date(at(BERLIN, 2026, 2, 3, 19, 0)), true);
+        weekly.setRecurrence(RecurrenceRule.weekly(RecurrenceRule.MONDAY << 1 | RecurrenceRule.MONDAY << 3, 2));
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            longText.append("Очень длинное описание ").append(i).append(' ');
+        }
+        Reminder folded = new Reminder("1760000000004", "Длинное", longText.toString().trim(),
+                new Date(at(BERLIN, 2026, 2, 4, 6, 45)), true);
+        return Arrays.asList(once, off, weekly, folded);
+    }
+
+    private static void assertSameReminders(List<Reminder> expected, List<Reminder> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Reminder a = expected.get(i);
+            Reminder b = actual.get(i);
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.getTitle(), b.getTitle());
+            assertEquals(a.getDescription(), b.getDescription());
+            assertEquals(a.getDateTime(), b.getDateTime());
+            assertEquals(a.isActive(), b.isActive());
+            assertEquals(a.getRecurrence(), b.getRecurrence());
+        }
+    }
+
+    // Календарь, который порождается по мере чтения: в памяти только текущее событие
+    private static class GeneratedCalendar extends Reader {
+        private final int count;
+        private int next = -1;
+        private String current = "BEGIN:VCALENDAR\r\nVERSION:2.0\r\n";
+        private int offset = 0;
+
+        GeneratedCalendar(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) {
+            while (offset == current.length()) {
+                if (next >= count) {
+                    return -1;
+                }
+                next++;
+                offset = 0;
+                current = next == count ? "END:VCALENDAR\r\n"
+                        : String.format(Locale.ROOT, "BEGIN:VEVENT\r\nUID:%d@example.com\r\n"
+                                + "DTSTART:2026%02d%02dT%02d0000Z\r\nSUMMARY:Событие %d\r\n"
+                                + "DESCRIPTION:Импорт из календаря\\, номер %d\r\nEND:VEVENT\r\n",
+                        next, next % 12 + 1, next % 28 + 1, next % 24, next, next);
+            }
+            int n = Math.min(len, current.length() - offset);
+            current.getChars(offset, offset + n, buffer, off);
+            offset += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Частичные обновления: разница полей, слияние ожидающих правок,
+ * размер переключения активности по сравнению с полной записью и ближайшее
+ * срабатывание при переносе даты повторяющегося напоминания в обоих форматах.
+ */
+public class ReminderPatchTest {
+
+    private static Reminder reminder() {
+        Reminder reminder = new Reminder("3f2b9c4e-8a1d-4d6f-9b7e-2c5a1e0d4f88", "Полить цветы",
+                "Фикус в спальне и кактусы на кухне, не забыть удобрение", new Date(1_760_000_000_000L), true);
+        reminder.setVersion(12);
+        return reminder;
+    }
+
+    @Test
+    public void changedFields_onlyDifferingFields() {
+        Reminder before = reminder();
+        Reminder after = new Reminder(before);
+        assertEquals(0, ReminderOperation.changedFields(before, after));
+
+        after.setActive(false);
+        after.setTitle("Полить цветы вечером");
+        assertEquals(ReminderOperation.FIELD_ACTIVE | ReminderOperation.FIELD_TITLE,
+                ReminderOperation.changedFields(before, after));
+    }
+
+    @Test
+    public void coalesce_pendingPatchesMergeFields() {
+        Reminder first = reminder();
+        first.setActive(false);
+        Reminder second = new Reminder(first);
+        second.setTitle("Полить цветы вечером");
+
+        ReminderOperation merged = KeyedSendScheduler.coalesce(
+                new ReminderOperation(first, ReminderOperation.ACTION_PATCH, ReminderOperation.FIELD_ACTIVE),
+                new ReminderOperation(second, ReminderOperation.ACTION_PATCH, ReminderOperation.FIELD_TITLE));
+
+        assertEquals(ReminderOperation.ACTION_PATCH, merged.getAction());
+        assertEquals(ReminderOperation.FIELD_ACTIVE | ReminderOperation.FIELD_TITLE, merged.getFields());
+        assertFalse(merged.getReminder().isActive());
+        assertEquals("Полить цветы вечером", merged.getReminder().getTitle());
+    }
+
+    @Test
+    public void coalesce_patchAfterAddOrUpdateStaysFull() {
+        Reminder changed = reminder();
+        changed.setActive(false);
+        ReminderOperation patch = new ReminderOperation(changed, ReminderOperation.ACTION_PATCH,
+                ReminderOperation.FIELD_ACTIVE);
+
+        ReminderOperation afterAdd = KeyedSendScheduler.coalesce(
+                new ReminderOperation(reminder(), ReminderOperation.ACTION_ADD), patch);
+        assertEquals(ReminderOperation.ACTION_ADD, afterAdd.getAction());
+        assertEquals(ReminderOperation.ALL_FIELDS, afterAdd.getFields());
+        assertFalse(afterAdd.getReminder().isActive());
+
+        ReminderOperation afterUpdate = KeyedSendScheduler.coalesce(
+                new ReminderOperation(reminder(), ReminderOperation.ACTION_UPDATE), patch);
+        assertEquals(ReminderOperation.ACTION_UPDATE, afterUpdate.getAction());
+        assertEquals(ReminderOperation.ALL_FIELDS, afterUpdate.getFields());
+    }
+
+    @Test
+    public void binary_togglePatchRoundTripAndSize() throws Exception {
+        BinaryReminderCodec codec = new BinaryReminderCodec();
+        Reminder toggled = reminder();
+        toggled.setActive(false);
+        List<ReminderOperation> patch = Collections.singletonList(
+                new ReminderOperation(toggled, ReminderOperation.ACTION_PATCH, ReminderOperation.FIELD_ACTIVE));
+        List<ReminderOperation> full = Collections.singletonList(
+                new ReminderOperation(toggled, ReminderOperation.ACTION_UPDATE));
+
+        byte[] patchBytes = codec.encodeBatch(patch);
+        byte[] fullBytes = codec.encodeBatch(full);
+        // Кроме id остаются байт действия, маска, значение и версия
+        int idLength = toggled.getId().getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(patchBytes.length <= idLength + 8);
+        assertTrue(patchBytes.length < fullBytes.length / 2);
+
+        ReminderOperation received = codec.decodeBatch(new ByteArrayInputStream(patchBytes)).get(0);
+        assertEquals(ReminderOperation.ACTION_PATCH, received.getAction());
+        assertEquals(ReminderOperation.FIELD_ACTIVE, received.getFields());
+        assertEquals(toggled.getId(), received.getReminderId());
+        assertFalse(received.getReminder().isActive());
+        assertNull(received.getReminder().getTitle());
+        assertEquals(12, received.getReminder().getVersion());
+    }
+
+    @Test
+    public void binary_datePatchOfRecurringReminderCarriesNextOccurrence() throws Exception {
+        BinaryReminderCodec codec = new BinaryReminderCodec();
+        Reminder moved = reminder();
+        moved.setDateTime(new Date(1_760_003_600_000L));
+        Reminder recurring = new Reminder(moved);
+        recurring.setRecurrence(RecurrenceRule.everyDays(1));
+        Reminder toggled = reminder();
+        toggled.setActive(false);
+
+        byte[] oneOff = codec.encodeBatch(Collections.singletonList(new ReminderOperation(moved,
+                ReminderOperation.ACTION_PATCH, ReminderOperation.FIELD_DATE_TIME)));
+        // За переносом даты повторяющегося напоминания - ещё одна операция: разбор не должен сбиться
+        byte[] bytes = codec.encodeBatch(Arrays.asList(
+                new ReminderOperation(recurring, ReminderOperation.ACTION_PATCH, ReminderOperation.FIELD_DATE_TIME),
+                new ReminderOperation(toggled, ReminderOperation.ACTION_PATCH, ReminderOperation.FIELD_ACTIVE)));
+        byte[] recurringOnly = codec.encodeBatch(Collections.singletonList(new ReminderOperation(recurring,
+                ReminderOperation.ACTION_PATCH, ReminderOperation.FIELD_DATE_TIME)));
+        // Ближайшее срабатывание - varint миллисекунд вместо нуля у разового
+        assertTrue(recurringOnly.length > oneOff.length + 4);
+
+        List<ReminderOperation> received = codec.decodeBatch(new ByteArrayInputStream(bytes));
+        assertEquals(2, received.size());
+        assertEquals(ReminderOperation.FIELD_DATE_TIME, received.get(0).getFields());
+        assertEquals(moved.getDateTime(), received.get(0).getReminder().getDateTime());
+        assertEquals(12, received.get(0).getReminder().getVersion());
+        assertEquals(toggled.getId(), received.get(1).getReminderId());
+        assertFalse(received.get(1).getReminder().isActive());
+        assertEquals(12, received.get(1).getReminder().getVersion());
+
+        ReminderOperation single = codec.decodeBatch(new ByteArrayInputStream(oneOff)).get(0);
+        assertEquals(moved.getDateTime(), single.getReminder().getDateTime());
+        assertEquals(12, single.getReminder().getVersion());
+    }
+
+    @Test
+    public void json_datePatchOfRecurringReminderCarriesNextOccurrence() throws Exception {
+        JsonReminderCodec codec = new JsonReminderCodec("yyyy-MM-dd'T'HH:mm:ss");
+        Reminder moved = reminder();
+        moved.setDateTime(new Date(1_760_003_600_000L));
+        String oneOff = new String(codec.encodeBatch(Collections.singletonList(new ReminderOperation(moved,
+                ReminderOperation.ACTION_PATCH, ReminderOperation.FIELD_DATE_TIME))), StandardCharsets.UTF_8);
+        assertFalse(oneOff, oneOff.contains("nextDateTime"));
+
+        moved.setRecurrence(RecurrenceRule.everyDays(1));
+        String recurring = new String(codec.encodeBatch(Collections.singletonList(new ReminderOperation(moved,
+                ReminderOperation.ACTION_PATCH, ReminderOperation.FIELD_DATE_TIME))), StandardCharsets.UTF_8);
+        assertTrue(recurring, recurring.startsWith("[{\"id\":\"" + moved.getId() + "\",\"dateTime\":"));
+        assertTrue(recurring, recurring.contains(",\"nextDateTime\":"));
+        assertTrue(recurring, recurring.endsWith(",\"action\":\"patch\"}]"));
+        assertFalse(recurring, recurring.contains("\"recurrence\""));
+        assertFalse(recurring, recurring.contains("\"title\""));
+    }
+
+    @Test
+    public void json_patchContainsOnlyChangedFields() throws Exception {
+        Reminder toggled = reminder();
+        toggled.setActive(false);
+        String json = new String(new JsonReminderCodec("yyyy-MM-dd'T'HH:mm:ss").encodeBatch(
+                Collections.singletonList(new ReminderOperation(toggled, ReminderOperation.ACTION_PATCH,
+                        ReminderOperation.FIELD_ACTIVE))), StandardCharsets.UTF_8);
+
+        assertEquals("[{\"id\":\"" + toggled.getId() + "\",\"isActive\":false,\"action\":\"patch\"}]", json);
+    }
+}
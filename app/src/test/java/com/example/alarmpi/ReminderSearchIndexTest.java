@@ -0,0 +1,109 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Поиск по словам: префиксы, обновление индекса по одному напоминанию,
+ * порядок как в списке и отмена устаревшего запроса.
+ */
+public class ReminderSearchIndexTest {
+
+    private static final int COUNT = 20_000;
+    private static final ReminderSearchIndex.Cancellation NEVER = () -> false;
+
+    @Test
+    public void tokenize_lowercasesAndSplits() {
+        assertEquals(Arrays.asList("полить", "цветы", "в", "10", "00"),
+                ReminderSearchIndex.tokenize("Полить ЦВЕТЫ, в 10:00!"));
+        assertEquals(Collections.singletonList("елка"), ReminderSearchIndex.tokenize("Ёлка"));
+        assertTrue(ReminderSearchIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void search_matchesEveryWordPrefix() {
+        ReminderSearchIndex index = new ReminderSearchIndex();
+        index.put("1", "Полить цветы", "Фикус в спальне", 300);
+        index.put("2", "Позвонить маме", null, 100);
+        index.put("3", "Купить цветы", "и торт", 200);
+
+        assertEquals(Arrays.asList("2", "1"), index.search("по", NEVER));
+        assertEquals(Arrays.asList("3", "1"), index.search("цвет", NEVER));
+        assertEquals(Collections.singletonList("1"), index.search("цв фик", NEVER));
+        assertEquals(Collections.singletonList("3"), index.search("ТОРТ куп", NEVER));
+        assertTrue(index.search("цветы мама", NEVER).isEmpty());
+        assertTrue(index.search("  ", NEVER).isEmpty());
+    }
+
+    @Test
+    public void updateAndRemove_keepIndexCurrent() {
+        ReminderSearchIndex index = new ReminderSearchIndex();
+        index.put("1", "Полить цветы", null, 100);
+        index.put("2", "Полить огород", null, 200);
+        index.put("1", "Тренировка", null, 100);
+
+        assertEquals(Collections.singletonList("2"), index.search("пол", NEVER));
+        assertEquals(Collections.singletonList("1"), index.search("трен", NEVER));
+        assertTrue(index.search("цвет", NEVER).isEmpty());
+
+        index.remove("2");
+        assertTrue(index.search("пол", NEVER).isEmpty());
+        assertEquals(1, index.size());
+        assertEquals(1, index.getWordCount());
+    }
+
+    @Test
+    public void cancelledQuery_returnsNull() {
+        ReminderSearchIndex index = new ReminderSearchIndex();
+        for (int i = 0; i < 5_000; i++) {
+            index.put(String.valueOf(i), "Напоминание " + i, null, i);
+        }
+        assertNull(index.search("нап", () -> true));
+        assertEquals(5_000, index.search("нап", NEVER).size());
+    }
+
+    @Test
+    public void largeIndex_findsWhatScanningTextsFinds() {
+        String[] titles = {"Таблетки", "Полить цветы", "Позвонить маме", "Тренировка", "Оплатить счёт"};
+        List<String[]> texts = new ArrayList<>();
+        ReminderSearchIndex index = new ReminderSearchIndex();
+        for (int i = 0; i < COUNT; i++) {
+            String title = titles[i % titles.length] + " " + i;
+            String description = "Заметка номер " + (i * 7919 % COUNT);
+            texts.add(new String[]{title, description});
+            index.put(String.valueOf(i), title, description, i);
+        }
+
+        String[] queries = {"п", "по", "пол", "поли", "полит", "полить", "полить 1", "полить 12"};
+        for (String query : queries) {
+            assertEquals(query, scan(texts, query), index.search(query, NEVER).size());
+        }
+    }
+
+    // Так искал бы простой фильтр: каждый текст в нижний регистр на каждое нажатие
+    private static int scan(List<String[]> texts, String query) {
+        List<String> words = ReminderSearchIndex.tokenize(query);
+        int found = 0;
+        for (String[] text : texts) {
+            String haystack = " " + (text[0] + " " + text[1]).toLowerCase(Locale.ROOT).replace('ё', 'е');
+            boolean all = true;
+            for (String word : words) {
+                if (!haystack.contains(" " + word)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.alarmpi;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Хранение по столбцам: id, индексы без упаковки, пул строк и удаление с переносом строки.
+ */
+public class ReminderTableTest {
+
+    private static final int COUNT = 50_000;
+
+    @Test
+    public void ids_areUniqueAndIncreasing() {
+        long previous = 0;
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            long id = ReminderIds.next();
+            assertTrue(id > previous);
+            assertTrue(seen.add(id));
+            previous = id;
+        }
+    }
+
+    @Test
+    public void ids_continueAfterSeededMaximum() {
+        // В базе есть id из будущего (часы переведены назад после его создания)
+        long existing = System.currentTimeMillis() + 60 * 60 * 1000L;
+        ReminderIds.seed(existing);
+        assertEquals(existing + 1, ReminderIds.next());
+        // Меньший id из базы отсчёт не откатывает
+        ReminderIds.seed(1);
+        assertEquals(existing + 2, ReminderIds.next());
+    }
+
+    @Test
+    public void parse_acceptsOnlyCanonicalDecimal() {
+        assertEquals(1700000000123L, ReminderIds.parse("1700000000123"));
+        assertEquals(0, ReminderIds.parse("0"));
+        assertEquals(-1, ReminderIds.parse("007"));
+        assertEquals(-1, ReminderIds.parse("abc"));
+        assertEquals(-1, ReminderIds.parse(""));
+        assertEquals(-1, ReminderIds.parse("-5"));
+    }
+
+    @Test
+    public void longIntMap_matchesHashMap() {
+        Random random = new Random(7);
+        LongIntMap map = new LongIntMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) * 1_000L;
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed != null ? removed : LongIntMap.MISSING, map.remove(key));
+            } else {
+                expected.put(key, i);
+                map.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void stringPool_sharesAndReleases() {
+        StringPool pool = new StringPool();
+        int a = pool.acquire(new String("Таблетки"));
+        int b = pool.acquire(new String("Таблетки"));
+        assertEquals(a, b);
+        assertEquals(StringPool.NULL, pool.acquire(null));
+        pool.release(a);
+        assertEquals("Таблетки", pool.get(b));
+        pool.release(b);
+        assertEquals(0, pool.size());
+        // Освобождённый индекс занимает следующая строка
+        assertEquals(a, pool.acquire("Полить цветы"));
+    }
+
+    @Test
+    public void table_roundTripsReminders() {
+        ReminderTable table = new ReminderTable();
+        Reminder numeric = new Reminder("1700000000001", "Заголовок", null, new Date(5000), false);
+        numeric.setVersion(3);
+        numeric.setUpdatedAt(77);
+        Reminder text = new Reminder("srv-42", "Другой", "Описание", new Date(6000), true);
+        table.add(numeric);
+        table.add(text);
+
+        Reminder first = table.get(table.rowOf("1700000000001"));
+        assertEquals("1700000000001", first.getId());
+        assertEquals("Заголовок", first.getTitle());
+        assertNull(first.getDescription());
+        assertEquals(5000, first.getDateTime().getTime());
+        assertFalse(first.isActive());
+        assertEquals(3, first.getVersion());
+        assertEquals(77, first.getUpdatedAt());
+        assertEquals("srv-42", table.get(table.rowOf("srv-42")).getId());
+        assertEquals(-1, table.rowOf("1"));
+
+        try {
+            table.add(text);
+            fail("повторный id");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void removeRow_movesLastRowAndKeepsIndex() {
+        ReminderTable table = new ReminderTable();
+        Random random = new Random(3);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            String id = i % 10 == 0 ? "text-" + i : String.valueOf(1_700_000_000_000L + i);
+            table.addRow(id, "Напоминание " + (i % 7), null, i, i % 2 == 0, 0, 0, null);
+            ids.add(id);
+        }
+        while (!ids.isEmpty()) {
+            String id = ids.remove(random.nextInt(ids.size()));
+            table.removeRow(table.rowOf(id));
+            assertEquals(-1, table.rowOf(id));
+            for (int j = 0; j < Math.min(ids.size(), 20); j++) {
+                String other = ids.get(j);
+                assertEquals(other, table.getId(table.rowOf(other)));
+            }
+        }
+        assertEquals(0, table.size());
+        assertEquals(0, table.getPooledStringCount());
+    }
+
+    @Test
+    public void largeTable_poolsRepeatedStrings() {
+        String[] titles = {"Таблетки", "Полить цветы", "Позвонить маме", "Тренировка"};
+        ReminderTable table = new ReminderTable(COUNT);
+        long firstId = ReminderIds.next();
+        for (int i = 0; i < COUNT; i++) {
+            // Строки из базы приходят новыми экземплярами - пул сводит их к одному
+            table.addRow(String.valueOf(firstId + i), new String(titles[i % titles.length]), null,
+                    firstId + i * 60_000L, true, 0, 0, null);
+        }
+        assertEquals(COUNT, table.size());
+        assertEquals(titles.length, table.getPooledStringCount());
+        assertEquals(String.valueOf(firstId + 12_345), table.getId(table.rowOf(String.valueOf(firstId + 12_345))));
+
+        ReminderDueQueue queue = new ReminderDueQueue();
+        queue.putAll(table);
+        assertEquals(String.valueOf(firstId), queue.peek().getId());
+    }
+}
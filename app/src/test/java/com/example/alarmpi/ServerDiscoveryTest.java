@@ -0,0 +1,130 @@
+package com.example.alarmpi;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Поиск сервера: ответы на широковещательный запрос и выбор самого
+ * быстрого из параллельно проверенных адресов.
+ */
+public class ServerDiscoveryTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    @After
+    public void stopServers() {
+        for (HttpServer server : servers) {
+            server.stop(0);
+        }
+    }
+
+    // Заглушка сервера, отвечающая с задержкой
+    private String startServer(long delayMs) throws Exception {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/reminders", exchange -> {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException ignored) {
+                // отвечаем сразу
+            }
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/reminders";
+    }
+
+    private static String deadUrl() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "http://127.0.0.1:" + socket.getLocalPort() + "/api/reminders";
+        }
+    }
+
+    @Test
+    public void prober_ranksByRttAndDropsUnreachable() throws Exception {
+        String slow = startServer(150);
+        String fast = startServer(0);
+        String dead = deadUrl();
+
+        EndpointProber prober = new EndpointProber(1000);
+        long start = System.nanoTime();
+        prober.probe(slow);
+        prober.probe(dead);
+        prober.probe(fast);
+        prober.probe(fast);
+        List<EndpointProber.Result> ranked = prober.awaitRanked(3000);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(2, ranked.size());
+        assertEquals(fast, ranked.get(0).getUrl());
+        assertEquals(slow, ranked.get(1).getUrl());
+        assertTrue(ranked.get(1).getRttMs() >= 150);
+        // Проверки идут параллельно: дольше двух запросов к медленному, но не сумма всех
+        assertTrue(elapsedMs < 150 * EndpointProber.PROBES_PER_ENDPOINT + 500);
+    }
+
+    @Test
+    public void beacon_collectsRepliesFromResponders() throws Exception {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        try (DatagramSocket responder = new DatagramSocket(0, loopback)) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[64];
+                try {
+                    DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                    responder.receive(request);
+                    String text = new String(request.getData(), 0, request.getLength(), StandardCharsets.US_ASCII);
+                    if (DiscoveryBeacon.REQUEST.equals(text)) {
+                        for (String reply : new String[]{"hello", "ALARMPI 5000", "ALARMPI 8080 /pi/api"}) {
+                            byte[] bytes = reply.getBytes(StandardCharsets.UTF_8);
+                            responder.send(new DatagramPacket(bytes, bytes.length, request.getSocketAddress()));
+                        }
+                    }
+                } catch (Exception ignored) {
+                    // тест проверит, что ответов нет
+                }
+            });
+            thread.start();
+
+            List<String> found = Collections.synchronizedList(new ArrayList<>());
+            DiscoveryBeacon.search(loopback, responder.getLocalPort(), 300, found::add);
+            thread.join();
+
+            assertEquals(2, found.size());
+            assertEquals("http://127.0.0.1:5000" + DiscoveryBeacon.DEFAULT_PATH, found.get(0));
+            assertEquals("http://127.0.0.1:8080/pi/api", found.get(1));
+        }
+    }
+
+    @Test
+    public void beacon_parseReply() throws Exception {
+        InetAddress v6 = InetAddress.getByName("fe80::1%1");
+        assertEquals("http://[fe80:0:0:0:0:0:0:1]:5000/api/reminders", DiscoveryBeacon.parseReply(v6, "ALARMPI 5000"));
+        assertNull(DiscoveryBeacon.parseReply(v6, "ALARMPI 99999"));
+        assertNull(DiscoveryBeacon.parseReply(v6, "OTHER 5000"));
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.alarmpi;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Подписка на события сервера: разбор text/event-stream, порядок событий
+ * и продолжение с Last-Event-ID после обрыва на локальном сервере-заглушке.
+ */
+public class ServerEventStreamTest {
+
+    private static final int EVENTS = 6;
+    // После стольких событий заглушка обрывает первое соединение
+    private static final int EVENTS_BEFORE_DROP = 3;
+
+    private HttpServer server;
+    private String url;
+    private final List<String> lastEventIds = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @Before
+    public void startServer() throws Exception {
+        // Настройки сервера читаются один раз на JVM - как в HttpTransportTest, без Nagle
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/reminders/events", exchange -> {
+            int connection = connections.incrementAndGet();
+            String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            lastEventIds.add(lastEventId);
+            int from = lastEventId != null ? Integer.parseInt(lastEventId) + 1 : 1;
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream os = exchange.getResponseBody();
+            write(os, "retry: 50\n: ping\n\n");
+            for (int id = from; id <= EVENTS; id++) {
+                write(os, "id: " + id + "\nevent: reminder\ndata: {\"id\": \"r" + id + "\",\n"
+                        + "data:  \"version\": " + id + "}\n\n");
+                if (connection == 1 && id == EVENTS_BEFORE_DROP) {
+                    // Обрыв посреди следующего события: недописанное событие не доставляется
+                    write(os, "id: 99\nevent: reminder\ndata: {\"id\": \"lost\"");
+                    exchange.close();
+                    return;
+                }
+            }
+            // Дальше только пульс, пока клиент не отключится
+            try {
+                while (true) {
+                    Thread.sleep(100);
+                    write(os, ": ping\n\n");
+                }
+            } catch (Exception e) {
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/reminders/events";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private static void write(OutputStream os, String text) throws java.io.IOException {
+        os.write(text.getBytes(StandardCharsets.UTF_8));
+        os.flush();
+    }
+
+    @Test
+    public void parser_multilineDataCommentsAndIdInheritance() throws Exception {
+        BufferedReader reader = new BufferedReader(new StringReader(
+                ": comment\n"
+                        + "retry: 2500\n"
+                        + "id: 7\n"
+                        + "data: first\n"
+                        + "data:second\n"
+                        + "\n"
+                        + "event: deleted\n"
+                        + "data: r1\n"
+                        + "\n"
+                        + "event: ignored\n"
+                        + "\n"
+                        + "data: tail")); // без пустой строки - не доставляется
+        ServerEventStream.Parser parser = new ServerEventStream.Parser("3");
+
+        ServerEventStream.Event first = parser.next(reader);
+        assertEquals("7", first.getId());
+        assertEquals(ServerEventStream.DEFAULT_EVENT_TYPE, first.getType());
+        assertEquals("first\nsecond", first.getData());
+        assertEquals(2500, parser.getRetryMs());
+
+        ServerEventStream.Event second = parser.next(reader);
+        assertEquals("7", second.getId());
+        assertEquals("deleted", second.getType());
+        assertEquals("r1", second.getData());
+
+        assertNull(parser.next(reader));
+    }
+
+    @Test
+    public void stream_deliversInOrderAndResumesAfterDrop() throws Exception {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(EVENTS);
+        AtomicInteger disconnects = new AtomicInteger();
+        ServerEventStream stream = new ServerEventStream(url, null, new ServerEventStream.Listener() {
+            @Override
+            public void onConnected() {
+            }
+
+            @Override
+            public void onEvent(ServerEventStream.Event event) {
+                assertEquals("reminder", event.getType());
+                assertTrue(event.getData().contains("\"r" + event.getId() + "\""));
+                received.add(event.getId());
+                done.countDown();
+            }
+
+            @Override
+            public void onDisconnected(Exception error) {
+                disconnects.incrementAndGet();
+            }
+        });
+        stream.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        stream.stop();
+
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6"), received);
+        assertEquals(Arrays.asList(null, "3"), lastEventIds);
+        assertEquals(1, disconnects.get());
+        assertEquals("6", stream.getLastEventId());
+        assertFalse(stream.isRunning());
+    }
+}